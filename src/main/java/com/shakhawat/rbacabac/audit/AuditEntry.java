@@ -0,0 +1,16 @@
+package com.shakhawat.rbacabac.audit;
+
+/**
+ * One audited decision as handed to the sinks. {@code subjectId} and {@code resourceId} are -1 when absent.
+ */
+public record AuditEntry(
+        long occurredAt,
+        long subjectId,
+        String action,
+        String resourceType,
+        long resourceId,
+        boolean permitted,
+        String policyId,
+        long latencyNanos
+) {
+}
@@ -0,0 +1,48 @@
+package com.shakhawat.rbacabac.audit;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Bulk-inserts audit batches into {@code authz_audit}. Consumer thread only.
+ */
+final class AuditJdbcSink {
+
+    private static final String CREATE_TABLE = """
+            CREATE TABLE IF NOT EXISTS authz_audit (
+                id BIGSERIAL PRIMARY KEY,
+                occurred_at TIMESTAMP NOT NULL,
+                subject_id BIGINT NOT NULL,
+                action VARCHAR(64) NOT NULL,
+                resource_type VARCHAR(255) NOT NULL,
+                resource_id BIGINT NOT NULL,
+                permitted BOOLEAN NOT NULL,
+                policy_id VARCHAR(255),
+                latency_micros BIGINT NOT NULL
+            )""";
+
+    private static final String INSERT = "INSERT INTO authz_audit (occurred_at, subject_id, action, resource_type, " +
+            "resource_id, permitted, policy_id, latency_micros) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    AuditJdbcSink(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        jdbcTemplate.execute(CREATE_TABLE);
+    }
+
+    void write(List<AuditEntry> entries) {
+        jdbcTemplate.batchUpdate(INSERT, entries, entries.size(), (ps, entry) -> {
+            ps.setTimestamp(1, new Timestamp(entry.occurredAt()));
+            ps.setLong(2, entry.subjectId());
+            ps.setString(3, entry.action());
+            ps.setString(4, entry.resourceType());
+            ps.setLong(5, entry.resourceId());
+            ps.setBoolean(6, entry.permitted());
+            ps.setString(7, entry.policyId());
+            ps.setLong(8, entry.latencyNanos() / 1000);
+        });
+    }
+}
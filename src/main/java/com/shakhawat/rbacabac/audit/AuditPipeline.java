@@ -0,0 +1,223 @@
+package com.shakhawat.rbacabac.audit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Audit trail for authorization decisions. {@link #record} only fills a preallocated ring buffer
+ * slot; a single background thread drains the buffer in batches into memory-mapped segment files
+ * and, if enabled, the {@code authz_audit} table. When the buffer is full the configured
+ * {@link AuditProperties.BackPressure} decides whether the caller waits or the event is dropped;
+ * drops are counted in {@code authz.audit.dropped}. If the consumer fails, the batch in hand is
+ * counted as dropped and the consumer is restarted with a new segment after a backoff; in the
+ * meantime {@code authz.audit.consumer.healthy} is 0 and the buffer fills up and drops as usual.
+ */
+@Slf4j
+@Component
+public class AuditPipeline implements SmartLifecycle {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MIN_RESTART_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_RESTART_BACKOFF_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final AuditProperties properties;
+    private final ObjectProvider<JdbcTemplate> jdbcTemplate;
+    private final AuditRingBuffer ringBuffer;
+    private final long maxWaitNanos;
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder sinkFailures = new LongAdder();
+    private final LongAdder consumerFailures = new LongAdder();
+
+    private volatile boolean running;
+    private volatile boolean consumerHealthy = true;
+    private Thread consumer;
+
+    public AuditPipeline(AuditProperties properties, ObjectProvider<JdbcTemplate> jdbcTemplate, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.jdbcTemplate = jdbcTemplate;
+        this.ringBuffer = new AuditRingBuffer(properties.getBufferSize());
+        this.maxWaitNanos = properties.getMaxWait().toNanos();
+
+        FunctionCounter.builder("authz.audit.recorded", recorded, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("authz.audit.dropped", dropped, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("authz.audit.written", written, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("authz.audit.sink.failures", sinkFailures, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("authz.audit.consumer.failures", consumerFailures, LongAdder::sum).register(meterRegistry);
+        Gauge.builder("authz.audit.backlog", ringBuffer, AuditRingBuffer::backlog).register(meterRegistry);
+        Gauge.builder("authz.audit.consumer.healthy", this, pipeline -> pipeline.isConsumerHealthy() ? 1 : 0)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records one decision. Never blocks longer than {@code audit.max-wait} and never throws.
+     * Pass -1 for an unknown subject or resource id.
+     */
+    public void record(long subjectId, String action, String resourceType, long resourceId,
+                       boolean permitted, String policyId, long latencyNanos) {
+        if (!running) {
+            return;
+        }
+
+        var sequence = ringBuffer.tryClaim();
+        if (sequence < 0 && properties.getBackPressure() == AuditProperties.BackPressure.WAIT) {
+            var deadline = System.nanoTime() + maxWaitNanos;
+            while (sequence < 0 && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+                sequence = ringBuffer.tryClaim();
+            }
+        }
+        if (sequence < 0) {
+            dropped.increment();
+            return;
+        }
+
+        var slot = ringBuffer.slot(sequence);
+        slot.occurredAt = System.currentTimeMillis();
+        slot.subjectId = subjectId;
+        slot.action = action;
+        slot.resourceType = resourceType;
+        slot.resourceId = resourceId;
+        slot.permitted = permitted;
+        slot.policyId = policyId;
+        slot.latencyNanos = latencyNanos;
+        ringBuffer.publish(sequence);
+        recorded.increment();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * False from a consumer failure until the restarted consumer has written a batch again.
+     */
+    public boolean isConsumerHealthy() {
+        return consumerHealthy;
+    }
+
+    @Override
+    public void start() {
+        if (!properties.isEnabled() || running) {
+            return;
+        }
+        var sink = properties.getJdbc().isEnabled() ? new AuditJdbcSink(jdbcTemplate.getObject()) : null;
+
+        running = true;
+        consumer = Thread.ofPlatform().name("authz-audit").daemon().unstarted(() -> superviseConsumer(sink));
+        consumer.start();
+        log.info("Authorization audit started (buffer {}, back-pressure {}, directory {}, jdbc {})",
+                ringBuffer.capacity(), properties.getBackPressure(), properties.getDirectory(), sink != null);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Authorization audit stopped ({} written, {} dropped)", written.sum(), dropped.sum());
+    }
+
+    // Starts before and stops after the web server, so in-flight requests are still audited
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void superviseConsumer(AuditJdbcSink sink) {
+        var backoffNanos = MIN_RESTART_BACKOFF_NANOS;
+        while (true) {
+            var writer = new AuditSegmentWriter(properties.getDirectory(), properties.getSegmentSize().toBytes(),
+                    properties.getMaxSegments());
+            try (writer) {
+                consume(writer, sink);
+                return;
+            } catch (RuntimeException e) {
+                consumerHealthy = false;
+                consumerFailures.increment();
+                if (!running) {
+                    // Stopping anyway: whatever is left will not be written
+                    dropped.add(ringBuffer.backlog());
+                    log.error("Authorization audit consumer failed while stopping", e);
+                    return;
+                }
+                log.error("Authorization audit consumer failed, restarting in {} ms",
+                        TimeUnit.NANOSECONDS.toMillis(backoffNanos), e);
+            }
+            LockSupport.parkNanos(backoffNanos);
+            backoffNanos = Math.min(backoffNanos * 2, MAX_RESTART_BACKOFF_NANOS);
+        }
+    }
+
+    private void consume(AuditSegmentWriter writer, AuditJdbcSink sink) {
+        var batch = new ArrayList<AuditEntry>(properties.getBatchSize());
+        var flushIntervalNanos = properties.getFlushInterval().toNanos();
+        var lastFlush = System.nanoTime();
+
+        // Keep draining after stop() until the buffer is empty
+        while (running || ringBuffer.backlog() > 0) {
+            ringBuffer.drain(properties.getBatchSize(), slot -> batch.add(slot.toEntry()));
+
+            if (!batch.isEmpty()) {
+                try {
+                    write(batch, writer, sink);
+                } catch (RuntimeException e) {
+                    // Already released from the ring buffer, so the batch cannot be retried
+                    dropped.add(batch.size());
+                    throw e;
+                }
+                batch.clear();
+                consumerHealthy = true;
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+
+            if (System.nanoTime() - lastFlush >= flushIntervalNanos) {
+                writer.force();
+                lastFlush = System.nanoTime();
+            }
+        }
+    }
+
+    private void write(ArrayList<AuditEntry> batch, AuditSegmentWriter writer, AuditJdbcSink sink) {
+        for (var entry : batch) {
+            writer.append(entry);
+        }
+        written.add(batch.size());
+
+        if (sink != null) {
+            try {
+                sink.write(batch);
+            } catch (RuntimeException e) {
+                // The segment files already hold the batch, so the table can be backfilled from them
+                sinkFailures.increment();
+                log.warn("Failed to write {} audit entries to authz_audit: {}", batch.size(), e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.shakhawat.rbacabac.audit;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "audit")
+public class AuditProperties {
+    private boolean enabled = true;
+    private int bufferSize = 65536; // rounded up to a power of two
+    private BackPressure backPressure = BackPressure.DROP;
+    private Duration maxWait = Duration.ofMillis(1);
+    private int batchSize = 512;
+    private Duration flushInterval = Duration.ofSeconds(1);
+    private Path directory = Path.of("audit");
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+    private int maxSegments = 32;
+    private Jdbc jdbc = new Jdbc();
+
+    public enum BackPressure {
+        DROP, // drop the event when the buffer is full
+        WAIT  // wait up to max-wait for space, then drop
+    }
+
+    @Getter
+    @Setter
+    public static class Jdbc {
+        private boolean enabled = false;
+    }
+}
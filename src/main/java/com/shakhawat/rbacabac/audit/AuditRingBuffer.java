@@ -0,0 +1,95 @@
+package com.shakhawat.rbacabac.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Preallocated multi-producer, single-consumer ring of mutable slots. Producers claim a sequence
+ * with a CAS, fill the slot in place and publish it; the consumer reads published slots in order
+ * and releases them. Nothing is allocated or locked on the producer side.
+ */
+final class AuditRingBuffer {
+
+    static final class Slot {
+        long occurredAt;
+        long subjectId;
+        String action;
+        String resourceType;
+        long resourceId;
+        boolean permitted;
+        String policyId;
+        long latencyNanos;
+
+        AuditEntry toEntry() {
+            return new AuditEntry(occurredAt, subjectId, action, resourceType, resourceId, permitted, policyId, latencyNanos);
+        }
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    // published[i] holds the sequence last published into slot i
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private volatile long consumed = -1;
+
+    AuditRingBuffer(int requestedSize) {
+        var size = Integer.highestOneBit(Math.max(2, requestedSize - 1)) << 1;
+        this.slots = new Slot[size];
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Returns the claimed sequence, or -1 if the buffer is full.
+     */
+    long tryClaim() {
+        while (true) {
+            var current = claimed.get();
+            var next = current + 1;
+            if (next - slots.length > consumed) {
+                return -1;
+            }
+            if (claimed.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    Slot slot(long sequence) {
+        return slots[(int) (sequence & mask)];
+    }
+
+    void publish(long sequence) {
+        published.lazySet((int) (sequence & mask), sequence);
+    }
+
+    /**
+     * Hands up to {@code max} published slots to {@code handler} in order, then frees them. Consumer thread only.
+     */
+    int drain(int max, Consumer<Slot> handler) {
+        var next = consumed + 1;
+        var count = 0;
+        while (count < max && published.get((int) (next & mask)) == next) {
+            handler.accept(slot(next));
+            next++;
+            count++;
+        }
+        if (count > 0) {
+            consumed = next - 1;
+        }
+        return count;
+    }
+
+    long backlog() {
+        return claimed.get() - consumed;
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+}
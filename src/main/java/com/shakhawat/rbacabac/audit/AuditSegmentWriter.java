@@ -0,0 +1,145 @@
+package com.shakhawat.rbacabac.audit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+
+/**
+ * Appends audit lines (CSV, fields quoted where needed) to memory-mapped segment files of a fixed size. A full segment is forced to
+ * disk, truncated to its written length and replaced by a new one; only the newest
+ * {@code maxSegments} files are kept. Consumer thread only.
+ */
+@Slf4j
+final class AuditSegmentWriter implements Closeable {
+
+    private static final String PREFIX = "authz-audit-";
+    private static final String SUFFIX = ".log";
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS")
+            .withZone(ZoneOffset.UTC);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final StringBuilder line = new StringBuilder(160);
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int sequence;
+
+    AuditSegmentWriter(Path directory, long segmentSize, int maxSegments) {
+        this.directory = directory;
+        this.segmentSize = (int) Math.min(segmentSize, Integer.MAX_VALUE);
+        this.maxSegments = maxSegments;
+    }
+
+    void append(AuditEntry entry) {
+        line.setLength(0);
+        line.append(Instant.ofEpochMilli(entry.occurredAt())).append(',')
+                .append(entry.subjectId()).append(',');
+        appendField(entry.action());
+        line.append(',');
+        appendField(entry.resourceType());
+        line.append(',').append(entry.resourceId()).append(',')
+                .append(entry.permitted() ? "PERMIT" : "DENY").append(',');
+        appendField(entry.policyId());
+        line.append(',').append(entry.latencyNanos() / 1000).append('\n');
+        var bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+
+        if (buffer == null || buffer.remaining() < bytes.length) {
+            rotate();
+        }
+        buffer.put(bytes);
+    }
+
+    // RFC 4180: policy ids and method names come from configuration, so they may contain separators
+    private void appendField(String value) {
+        if (value == null) {
+            return;
+        }
+        var quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            var c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    void force() {
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        closeSegment();
+    }
+
+    private void rotate() {
+        closeSegment();
+        try {
+            Files.createDirectories(directory);
+            // Zero-padded so segments opened within the same millisecond still sort in write order
+            var file = directory.resolve(PREFIX + FILE_TIME.format(Instant.now()) + String.format("-%06d", sequence++) + SUFFIX);
+            channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            log.debug("Opened audit segment {}", file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open audit segment in " + directory, e);
+        }
+        deleteOldSegments();
+    }
+
+    private void closeSegment() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            buffer.force();
+            // Drop the unused, zero-filled tail so segments can be read as plain text
+            channel.truncate(buffer.position());
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close audit segment cleanly: {}", e.getMessage());
+        } finally {
+            channel = null;
+            buffer = null;
+        }
+    }
+
+    private void deleteOldSegments() {
+        try (var files = Files.list(directory)) {
+            var segments = new ArrayList<Path>();
+            files.filter(f -> f.getFileName().toString().startsWith(PREFIX)).sorted().forEach(segments::add);
+            for (int i = 0; i < segments.size() - maxSegments; i++) {
+                Files.deleteIfExists(segments.get(i));
+            }
+        } catch (IOException e) {
+            log.warn("Failed to delete old audit segments: {}", e.getMessage());
+        }
+    }
+}
@@ -2,17 +2,24 @@ package com.shakhawat.rbacabac.config;
 
 import com.shakhawat.rbacabac.entity.Employee;
 import com.shakhawat.rbacabac.entity.Permission;
+import com.shakhawat.rbacabac.entity.PermissionType;
 import com.shakhawat.rbacabac.entity.Role;
 import com.shakhawat.rbacabac.entity.RoleType;
 import com.shakhawat.rbacabac.repository.EmployeeRepository;
 import com.shakhawat.rbacabac.repository.PermissionRepository;
 import com.shakhawat.rbacabac.repository.RoleRepository;
+import com.shakhawat.rbacabac.security.AuthorizationChangedEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
+import java.util.Arrays;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
@@ -23,41 +30,47 @@ public class DataInitializer implements CommandLineRunner {
     private final PermissionRepository permissionRepository;
     private final EmployeeRepository employeeRepository;
     private final PasswordEncoder passwordEncoder;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${security.role-hierarchy:}")
+    private String roleHierarchy;
 
     @Override
     public void run(String... args) {
         log.info("Initializing database with default data...");
 
-        initializePermissions();
-        initializeRoles();
+        var changed = initializePermissions();
+        changed |= initializeRoles();
+        changed |= initializeRoleHierarchy();
         initializeDefaultUsers();
 
+        // Nodes already running rebuild their snapshot, and tokens carrying the old model go stale
+        if (changed) {
+            eventPublisher.publishEvent(AuthorizationChangedEvent.global());
+        }
+
         log.info("Database initialization completed successfully");
     }
 
-    private void initializePermissions() {
+    private boolean initializePermissions() {
         if (permissionRepository.count() > 0) {
             log.info("Permissions already exist, skipping initialization");
-            return;
+            return false;
         }
 
-        var permissions = new Permission[]{
-                createPermission("READ_EMPLOYEE", "EMPLOYEE", "READ", "Read employee information"),
-                createPermission("CREATE_EMPLOYEE", "EMPLOYEE", "CREATE", "Create new employee"),
-                createPermission("UPDATE_EMPLOYEE", "EMPLOYEE", "UPDATE", "Update employee information"),
-                createPermission("DELETE_EMPLOYEE", "EMPLOYEE", "DELETE", "Delete employee"),
-                createPermission("READ_ROLE", "ROLE", "READ", "Read role information"),
-                createPermission("MANAGE_ROLE", "ROLE", "MANAGE", "Manage roles and permissions")
-        };
-
-        permissionRepository.saveAll(Set.of(permissions));
-        log.info("Permissions initialized: {}", permissions.length);
+        var permissions = Arrays.stream(PermissionType.values())
+                .map(this::createPermission)
+                .toList();
+
+        permissionRepository.saveAll(permissions);
+        log.info("Permissions initialized: {}", permissions.size());
+        return true;
     }
 
-    private void initializeRoles() {
+    private boolean initializeRoles() {
         if (roleRepository.count() > 0) {
             log.info("Roles already exist, skipping initialization");
-            return;
+            return false;
         }
 
         // Admin role - full access
@@ -70,10 +83,10 @@ public class DataInitializer implements CommandLineRunner {
 
         // Manager role - read and update
         var managerPerms = Set.of(
-                permissionRepository.findByName("READ_EMPLOYEE").orElseThrow(),
-                permissionRepository.findByName("CREATE_EMPLOYEE").orElseThrow(),
-                permissionRepository.findByName("UPDATE_EMPLOYEE").orElseThrow(),
-                permissionRepository.findByName("READ_ROLE").orElseThrow()
+                permissionRepository.findByName(PermissionType.READ_EMPLOYEE.name()).orElseThrow(),
+                permissionRepository.findByName(PermissionType.CREATE_EMPLOYEE.name()).orElseThrow(),
+                permissionRepository.findByName(PermissionType.UPDATE_EMPLOYEE.name()).orElseThrow(),
+                permissionRepository.findByName(PermissionType.READ_ROLE.name()).orElseThrow()
         );
         var managerRole = Role.builder()
                 .name(RoleType.ROLE_MANAGER)
@@ -83,9 +96,9 @@ public class DataInitializer implements CommandLineRunner {
 
         // HR role - employee CRUD but not delete
         var hrPerms = Set.of(
-                permissionRepository.findByName("READ_EMPLOYEE").orElseThrow(),
-                permissionRepository.findByName("CREATE_EMPLOYEE").orElseThrow(),
-                permissionRepository.findByName("UPDATE_EMPLOYEE").orElseThrow()
+                permissionRepository.findByName(PermissionType.READ_EMPLOYEE.name()).orElseThrow(),
+                permissionRepository.findByName(PermissionType.CREATE_EMPLOYEE.name()).orElseThrow(),
+                permissionRepository.findByName(PermissionType.UPDATE_EMPLOYEE.name()).orElseThrow()
         );
         var hrRole = Role.builder()
                 .name(RoleType.ROLE_HR)
@@ -95,7 +108,7 @@ public class DataInitializer implements CommandLineRunner {
 
         // Employee role - read only
         var employeePerms = Set.of(
-                permissionRepository.findByName("READ_EMPLOYEE").orElseThrow()
+                permissionRepository.findByName(PermissionType.READ_EMPLOYEE.name()).orElseThrow()
         );
         var employeeRole = Role.builder()
                 .name(RoleType.ROLE_EMPLOYEE)
@@ -105,6 +118,32 @@ public class DataInitializer implements CommandLineRunner {
 
         roleRepository.saveAll(Set.of(adminRole, managerRole, hrRole, employeeRole));
         log.info("Roles initialized: 4 roles created");
+        return true;
+    }
+
+    // Seeds Role.inherits from "ROLE_A > ROLE_B > ROLE_C" chains (separated by ';') until one is stored
+    private boolean initializeRoleHierarchy() {
+        var roles = roleRepository.findAll();
+        if (roleHierarchy.isBlank() || roles.stream().anyMatch(role -> role.getInherits() != null)) {
+            log.info("Role hierarchy already configured, skipping initialization");
+            return false;
+        }
+
+        var byName = roles.stream().collect(Collectors.toMap(Role::getName, Function.identity()));
+        for (var chain : roleHierarchy.split(";")) {
+            var names = chain.split(">");
+            for (int i = 0; i + 1 < names.length; i++) {
+                var role = byName.get(RoleType.valueOf(names[i].trim()));
+                var inherits = RoleType.valueOf(names[i + 1].trim());
+                if (role != null && byName.containsKey(inherits)) {
+                    role.setInherits(inherits);
+                }
+            }
+        }
+
+        roleRepository.saveAll(roles);
+        log.info("Role hierarchy initialized: {}", roleHierarchy);
+        return true;
     }
 
     private void initializeDefaultUsers() {
@@ -174,12 +213,12 @@ public class DataInitializer implements CommandLineRunner {
         log.info("Default credentials - admin@company.com / Admin@123");
     }
 
-    private Permission createPermission(String name, String resource, String action, String description) {
+    private Permission createPermission(PermissionType type) {
         return Permission.builder()
-                .name(name)
-                .resource(resource)
-                .action(action)
-                .description(description)
+                .name(type.name())
+                .resource(type.getResource())
+                .action(type.getAction())
+                .description(type.getDescription())
                 .build();
     }
 }
@@ -0,0 +1,35 @@
+package com.shakhawat.rbacabac.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "rate-limit.heavy-hitters")
+public class HeavyHitterProperties {
+    private boolean enabled = true;
+    private int topK = 20;
+    // Sketch size; estimates overcount by at most e / width of the window's requests
+    private int width = 2048;
+    private int depth = 4;
+    private Duration window = Duration.ofMinutes(1);
+    private Escalation escalation = new Escalation();
+
+    @Getter
+    @Setter
+    public static class Escalation {
+        private boolean enabled = false;
+        // Requests per window that count as heavy, for this many consecutive windows
+        private long threshold = 1000;
+        private int windows = 3;
+        private Duration duration = Duration.ofMinutes(15);
+        private List<RateLimitRule.BandwidthLimit> bandwidths = new ArrayList<>();
+    }
+}
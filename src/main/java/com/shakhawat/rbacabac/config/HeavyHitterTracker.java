@@ -0,0 +1,186 @@
+package com.shakhawat.rbacabac.config;
+
+import com.shakhawat.rbacabac.config.RateLimitingService.ClientKey;
+import com.shakhawat.rbacabac.dto.HeavyHitterReport;
+import com.shakhawat.rbacabac.dto.HeavyHitterReport.HeavyHitter;
+import com.shakhawat.rbacabac.util.CountMinSketch;
+import com.shakhawat.rbacabac.util.Murmur3;
+import com.shakhawat.rbacabac.util.TopK;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds the clients sending the most rate-limited requests, per fixed window. Request and rejection
+ * counts go into count-min sketches and the top {@code top-k} clients by requests into a small heap,
+ * so memory does not grow with the number of clients. At the end of each window the counters start
+ * over and the window's top clients are kept for reporting.
+ * <p>
+ * With escalation enabled, a client at or above {@code threshold} requests in {@code windows}
+ * consecutive windows is also limited by the escalation policy for {@code duration}, on top of the
+ * policy of each route it calls.
+ */
+@Slf4j
+@Component
+public class HeavyHitterTracker {
+
+
+    private record Window(CountMinSketch requests, CountMinSketch rejections, TopK<ClientKey> top,
+                          LocalDateTime startedAt) {
+    }
+
+    private final HeavyHitterProperties properties;
+    private final boolean escalationEnabled;
+    private final Map<ClientKey, Long> escalatedUntil = new ConcurrentHashMap<>();
+    // Consecutive heavy windows per client, touched by the ticker thread only
+    private final Map<ClientKey, Integer> streaks = new HashMap<>();
+    private final LongAdder escalations = new LongAdder();
+    private final ScheduledExecutorService ticker;
+
+    private volatile Window current;
+    private volatile Window previous;
+    private volatile List<HeavyHitter> previousHitters = List.of();
+
+    public HeavyHitterTracker(HeavyHitterProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.escalationEnabled = properties.isEnabled() && properties.getEscalation().isEnabled();
+        this.current = newWindow();
+
+        Gauge.builder("ratelimit.heavyhitters.top.requests", this, tracker -> {
+            var hitters = tracker.previousHitters;
+            return hitters.isEmpty() ? 0 : hitters.getFirst().getRequests();
+        }).register(meterRegistry);
+        Gauge.builder("ratelimit.heavyhitters.escalated", escalatedUntil, Map::size).register(meterRegistry);
+        FunctionCounter.builder("ratelimit.heavyhitters.escalations", escalations, LongAdder::sum).register(meterRegistry);
+
+        this.ticker = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("heavy-hitter-window").daemon().factory());
+        if (properties.isEnabled()) {
+            var windowMillis = properties.getWindow().toMillis();
+            ticker.scheduleAtFixedRate(this::rotateQuietly, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean isEscalationEnabled() {
+        return escalationEnabled;
+    }
+
+    public void record(ClientKey client, boolean rejected) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        var window = current;
+        var hash = hash(client);
+        var requests = window.requests().add(hash.h1(), hash.h2(), 1);
+        if (rejected) {
+            window.rejections().add(hash.h1(), hash.h2(), 1);
+        }
+        window.top().offer(client, requests);
+    }
+
+    public boolean isEscalated(ClientKey client) {
+        if (!escalationEnabled) {
+            return false;
+        }
+        var until = escalatedUntil.get(client);
+        return until != null && until > System.currentTimeMillis();
+    }
+
+    public HeavyHitterReport report() {
+        var window = current;
+        var finished = previous;
+        return HeavyHitterReport.builder()
+                .window(properties.getWindow().toString())
+                .currentWindowStartedAt(window.startedAt().toString())
+                .current(hitters(window))
+                .previousWindowStartedAt(finished != null ? finished.startedAt().toString() : null)
+                .previous(previousHitters)
+                .escalatedClients(escalatedUntil.keySet().stream().map(ClientKey::toString).sorted().toList())
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    private void rotateQuietly() {
+        try {
+            rotate();
+        } catch (RuntimeException e) {
+            log.warn("Heavy hitter window rotation failed: {}", e.getMessage());
+        }
+    }
+
+    private void rotate() {
+        var finished = current;
+        current = newWindow();
+        var now = System.currentTimeMillis();
+
+        if (escalationEnabled) {
+            var escalation = properties.getEscalation();
+            var heavy = new HashSet<ClientKey>();
+            for (var entry : finished.top().snapshot()) {
+                if (entry.count() < escalation.getThreshold()) {
+                    break;
+                }
+                heavy.add(entry.key());
+                if (streaks.merge(entry.key(), 1, Integer::sum) >= escalation.getWindows()) {
+                    var until = now + escalation.getDuration().toMillis();
+                    if (escalatedUntil.put(entry.key(), until) == null) {
+                        escalations.increment();
+                        log.warn("Escalating rate limit for heavy hitter {} ({} requests in the last window)",
+                                entry.key(), entry.count());
+                    }
+                }
+            }
+            streaks.keySet().retainAll(heavy);
+        }
+        escalatedUntil.values().removeIf(until -> until <= now);
+
+        previous = finished;
+        previousHitters = hitters(finished);
+    }
+
+    private List<HeavyHitter> hitters(Window window) {
+        var hitters = new ArrayList<HeavyHitter>();
+        for (var entry : window.top().snapshot()) {
+            var client = entry.key();
+            var hash = hash(client);
+            hitters.add(HeavyHitter.builder()
+                    .client(client.toString())
+                    .requests(entry.count())
+                    .rejections(window.rejections().estimate(hash.h1(), hash.h2()))
+                    .escalated(isEscalated(client))
+                    .build());
+        }
+        return hitters;
+    }
+
+    private Window newWindow() {
+        return new Window(new CountMinSketch(properties.getWidth(), properties.getDepth()),
+                new CountMinSketch(properties.getWidth(), properties.getDepth()),
+                new TopK<>(properties.getTopK()), LocalDateTime.now());
+    }
+
+    // 128 bits over the whole id, so distinct clients only share sketch cells by chance,
+    // never because their String hash codes collide
+    private static Murmur3.Hash128 hash(ClientKey client) {
+        var id = client.id().getBytes(StandardCharsets.UTF_8);
+        var key = Arrays.copyOf(id, id.length + 1);
+        key[id.length] = (byte) (client.authenticated() ? 1 : 0);
+        return Murmur3.hash128(key, 0);
+    }
+}
@@ -0,0 +1,62 @@
+package com.shakhawat.rbacabac.config;
+
+import com.shakhawat.rbacabac.audit.AuditPipeline;
+import com.shakhawat.rbacabac.security.AuthorizationSnapshotService;
+import com.shakhawat.rbacabac.security.CompiledAuthorizationManager;
+import com.shakhawat.rbacabac.security.EmployeeAccess;
+import com.shakhawat.rbacabac.security.EmployeePermissionEvaluator;
+import com.shakhawat.rbacabac.security.RequiresAuthority;
+import com.shakhawat.rbacabac.security.RequiresRole;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.security.authorization.method.AuthorizationManagerBeforeMethodInterceptor;
+
+import java.lang.annotation.Annotation;
+
+@Configuration
+public class MethodSecurityConfig {
+
+    // Same slot as the @PreAuthorize interceptor
+    private static final int PRE_AUTHORIZE_ORDER = 200;
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    static CompiledAuthorizationManager compiledAuthorizationManager(
+            ObjectProvider<EmployeePermissionEvaluator> employeePermissionEvaluator,
+            ObjectProvider<AuthorizationSnapshotService> authorizationSnapshotService,
+            ObjectProvider<AuditPipeline> auditPipeline) {
+        return new CompiledAuthorizationManager(employeePermissionEvaluator, authorizationSnapshotService, auditPipeline);
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    static Advisor compiledAuthorizationAdvisor(CompiledAuthorizationManager compiledAuthorizationManager) {
+        var interceptor = new AuthorizationManagerBeforeMethodInterceptor(
+                annotatedWithAnyOf(RequiresAuthority.class, RequiresRole.class, EmployeeAccess.class),
+                compiledAuthorizationManager
+        );
+        interceptor.setOrder(PRE_AUTHORIZE_ORDER);
+        return interceptor;
+    }
+
+    // Matches the annotations directly or through aliases such as @CanReadEmployee, on methods or classes
+    @SafeVarargs
+    private static Pointcut annotatedWithAnyOf(Class<? extends Annotation>... annotationTypes) {
+        ComposablePointcut pointcut = null;
+        for (var type : annotationTypes) {
+            var onClass = new AnnotationMatchingPointcut(type, true);
+            var onMethod = new AnnotationMatchingPointcut(null, type, true);
+            pointcut = pointcut == null
+                    ? new ComposablePointcut(onClass).union(onMethod)
+                    : pointcut.union(onClass).union(onMethod);
+        }
+        return pointcut;
+    }
+}
@@ -0,0 +1,45 @@
+package com.shakhawat.rbacabac.config;
+
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+
+/**
+ * One client's bucket for one policy: either a plain in-memory bucket4j bucket, or a
+ * {@link SharedRateLimitBucket} drawing from the cluster-wide one.
+ */
+interface RateLimitBucket {
+
+    ConsumptionProbe tryConsumeAndReturnRemaining();
+
+    long getAvailableTokens();
+
+    /**
+     * Whether dropping this bucket and creating a fresh one later would change nothing, i.e. no
+     * client usage is still being counted in it.
+     */
+    boolean isFull();
+
+    static RateLimitBucket local(Bucket bucket) {
+        return new RateLimitBucket() {
+            @Override
+            public ConsumptionProbe tryConsumeAndReturnRemaining() {
+                return bucket.tryConsumeAndReturnRemaining(1);
+            }
+
+            @Override
+            public long getAvailableTokens() {
+                return bucket.getAvailableTokens();
+            }
+
+            @Override
+            public boolean isFull() {
+                return RateLimitBucket.isFull(bucket);
+            }
+        };
+    }
+
+    // Every bandwidth at capacity; getAvailableTokens alone only reports the lowest one
+    static boolean isFull(Bucket bucket) {
+        return bucket.asVerbose().getAvailableTokens().getDiagnostics().calculateFullRefillingTime() == 0;
+    }
+}
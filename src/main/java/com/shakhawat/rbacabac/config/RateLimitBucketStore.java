@@ -0,0 +1,223 @@
+package com.shakhawat.rbacabac.config;
+
+import com.shakhawat.rbacabac.config.RateLimitPolicy.BucketSpec;
+import com.shakhawat.rbacabac.config.RateLimitingService.ClientKey;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Buckets per (client, policy): one map per {@link BucketSpec}, referenced directly by the compiled
+ * policy that uses it.
+ * <p>
+ * A bucket untouched for its policy's longest refill duration is full again, so dropping it loses
+ * nothing: a background sweep removes such idle buckets. If the store still exceeds
+ * {@code maxEntries} (e.g. a scan from millions of one-shot addresses), the least recently used
+ * buckets that have already refilled go first. A bucket still counting a client's requests is
+ * never dropped early, as that would hand the client a fresh allowance.
+ * <p>
+ * Going over the cap also triggers a sweep right away. Once such a sweep frees nothing, new buckets
+ * stop triggering more until the next scheduled sweep, which reports the overflow at most once a minute.
+ */
+@Slf4j
+final class RateLimitBucketStore {
+
+    private static final class Entry {
+        final RateLimitBucket bucket;
+        volatile long lastAccessNanos;
+
+        Entry(RateLimitBucket bucket, long now) {
+            this.bucket = bucket;
+            this.lastAccessNanos = now;
+        }
+    }
+
+    private record Candidate(Map<ClientKey, Entry> entries, ClientKey client, Entry entry, long lastAccessNanos) {
+    }
+
+    static final class Buckets {
+        private final BucketSpec spec;
+        private final long idleNanos;
+        private final Map<ClientKey, Entry> entries = new ConcurrentHashMap<>();
+
+        private Buckets(BucketSpec spec) {
+            this.spec = spec;
+            this.idleNanos = spec.idleAfter().toNanos();
+        }
+    }
+
+    private static final long WARN_INTERVAL_NANOS = Duration.ofMinutes(1).toNanos();
+
+    private final Map<BucketSpec, Buckets> bySpec = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final BiFunction<ClientKey, BucketSpec, RateLimitBucket> bucketFactory;
+    private final MeterRegistry meterRegistry;
+    private final int maxEntries;
+    private final ScheduledExecutorService sweeper;
+    private final AtomicBoolean trimScheduled = new AtomicBoolean();
+    // Set by a sweep that freed nothing while over the cap, re-evaluated by the next one
+    private volatile boolean trimFutile;
+    private volatile long warnedAtNanos = System.nanoTime() - WARN_INTERVAL_NANOS;
+    private final LongAdder idleEvictions = new LongAdder();
+    private final LongAdder capacityEvictions = new LongAdder();
+
+    RateLimitBucketStore(BiFunction<ClientKey, BucketSpec, RateLimitBucket> bucketFactory, int maxEntries, Duration sweepInterval,
+                         MeterRegistry meterRegistry) {
+        this.bucketFactory = bucketFactory;
+        this.maxEntries = maxEntries;
+        this.meterRegistry = meterRegistry;
+        FunctionCounter.builder("ratelimit.evictions", idleEvictions, LongAdder::sum)
+                .tag("reason", "idle").register(meterRegistry);
+        FunctionCounter.builder("ratelimit.evictions", capacityEvictions, LongAdder::sum)
+                .tag("reason", "capacity").register(meterRegistry);
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("rate-limit-sweeper").daemon().factory());
+        var intervalMillis = sweepInterval.toMillis();
+        sweeper.scheduleWithFixedDelay(this::sweepQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Called while compiling policies; an equal spec gets the same buckets back
+    Buckets bucketsFor(BucketSpec spec) {
+        // Per policy id rather than per spec: a changed policy keeps its gauge across a reload
+        gauges.computeIfAbsent(spec.policyId(), policyId -> Gauge.builder("ratelimit.buckets", this, store -> store.size(policyId))
+                .tag("policy", policyId).register(meterRegistry));
+        return bySpec.computeIfAbsent(spec, Buckets::new);
+    }
+
+    // Drops the buckets of policies that were removed or changed by a reload, and the gauges of removed ones
+    void retainOnly(Collection<BucketSpec> active) {
+        var keep = Set.copyOf(active);
+        bySpec.keySet().removeIf(spec -> !keep.contains(spec));
+        var policyIds = keep.stream().map(BucketSpec::policyId).collect(Collectors.toSet());
+        gauges.entrySet().removeIf(gauge -> {
+            if (policyIds.contains(gauge.getKey())) {
+                return false;
+            }
+            meterRegistry.remove(gauge.getValue());
+            return true;
+        });
+    }
+
+    RateLimitBucket resolve(ClientKey client, Buckets buckets) {
+        var now = System.nanoTime();
+        var entry = buckets.entries.get(client);
+        if (entry == null) {
+            entry = buckets.entries.computeIfAbsent(client, key -> new Entry(bucketFactory.apply(key, buckets.spec), now));
+            if (!trimFutile && size() > maxEntries && trimScheduled.compareAndSet(false, true)) {
+                sweeper.execute(this::sweepQuietly);
+            }
+        } else {
+            entry.lastAccessNanos = now;
+        }
+        return entry.bucket;
+    }
+
+    void remove(ClientKey client) {
+        for (var buckets : bySpec.values()) {
+            buckets.entries.remove(client);
+        }
+    }
+
+    void clear() {
+        for (var buckets : bySpec.values()) {
+            buckets.entries.clear();
+        }
+    }
+
+    int size() {
+        var size = 0;
+        for (var buckets : bySpec.values()) {
+            size += buckets.entries.size();
+        }
+        return size;
+    }
+
+    int size(String policyId) {
+        var size = 0;
+        for (var buckets : bySpec.values()) {
+            if (buckets.spec.policyId().equals(policyId)) {
+                size += buckets.entries.size();
+            }
+        }
+        return size;
+    }
+
+    void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (RuntimeException e) {
+            log.warn("Rate limit bucket sweep failed: {}", e.getMessage());
+        } finally {
+            trimScheduled.set(false);
+        }
+    }
+
+    private void sweep() {
+        var now = System.nanoTime();
+        var evicted = 0;
+        for (var buckets : bySpec.values()) {
+            var idleNanos = buckets.idleNanos;
+            for (var e : buckets.entries.entrySet()) {
+                if (now - e.getValue().lastAccessNanos >= idleNanos && buckets.entries.remove(e.getKey(), e.getValue())) {
+                    idleEvictions.increment();
+                    evicted++;
+                }
+            }
+        }
+
+        // Still over the cap: drop refilled buckets, least recently used first, down to 90% of the cap
+        var excess = size() - (maxEntries - maxEntries / 10);
+        if (excess > 0) {
+            var candidates = new ArrayList<Candidate>();
+            for (var buckets : bySpec.values()) {
+                for (var e : buckets.entries.entrySet()) {
+                    var entry = e.getValue();
+                    if (entry.bucket.isFull()) {
+                        // The stamp is copied, so requests during the sort cannot reorder the list
+                        candidates.add(new Candidate(buckets.entries, e.getKey(), entry, entry.lastAccessNanos));
+                    }
+                }
+            }
+            candidates.sort(Comparator.comparingLong(Candidate::lastAccessNanos));
+            for (var i = 0; i < candidates.size() && excess > 0; i++) {
+                var candidate = candidates.get(i);
+                // Skipped if it was used since it was listed: it may no longer be full
+                if (candidate.entry().lastAccessNanos == candidate.lastAccessNanos()
+                        && candidate.entries().remove(candidate.client(), candidate.entry())) {
+                    capacityEvictions.increment();
+                    evicted++;
+                    excess--;
+                }
+            }
+        }
+
+        var size = size();
+        trimFutile = evicted == 0 && size > maxEntries;
+        if (size > maxEntries && now - warnedAtNanos >= WARN_INTERVAL_NANOS) {
+            warnedAtNanos = now;
+            log.warn("Rate limit store holds {} buckets, above its cap of {}, but none of the others has refilled yet",
+                    size, maxEntries);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.shakhawat.rbacabac.config;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * A compiled {@link RateLimitRule}: method and role filters as bitmasks and a direct reference to
+ * the buckets it limits, so serving a request needs no further lookups.
+ */
+public final class RateLimitPolicy {
+
+    public record BandwidthSpec(long capacity, Duration refill) {
+    }
+
+    /**
+     * What a bucket is made of. Policies with equal specs share their buckets, so reloading an
+     * unchanged policy keeps every client's remaining tokens.
+     */
+    public record BucketSpec(String policyId, List<BandwidthSpec> bandwidths) {
+
+        // A bucket left alone this long has refilled completely
+        Duration idleAfter() {
+            return bandwidths.stream().map(BandwidthSpec::refill).max(Duration::compareTo).orElse(Duration.ZERO);
+        }
+    }
+
+    private final String id;
+    private final int methods;
+    private final long roles;
+    private final RateLimitBucketStore.Buckets buckets;
+    private final long limit;
+    private final String description;
+
+    RateLimitPolicy(String id, int methods, long roles, RateLimitBucketStore.Buckets buckets, long limit,
+                    String description) {
+        this.id = id;
+        this.methods = methods;
+        this.roles = roles;
+        this.buckets = buckets;
+        this.limit = limit;
+        this.description = description;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    // Capacity of the most restrictive bandwidth, reported as X-RateLimit-Limit
+    public long limit() {
+        return limit;
+    }
+
+    public String description() {
+        return description;
+    }
+
+    // Bit per RateLimitRouteMatcher method index, 0 for every method
+    int methods() {
+        return methods;
+    }
+
+    long roles() {
+        return roles;
+    }
+
+    RateLimitBucketStore.Buckets buckets() {
+        return buckets;
+    }
+}
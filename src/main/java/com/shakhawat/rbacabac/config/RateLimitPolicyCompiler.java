@@ -0,0 +1,242 @@
+package com.shakhawat.rbacabac.config;
+
+import com.shakhawat.rbacabac.config.RateLimitPolicy.BandwidthSpec;
+import com.shakhawat.rbacabac.config.RateLimitPolicy.BucketSpec;
+import com.shakhawat.rbacabac.config.RateLimitRouteMatcher.Node;
+import com.shakhawat.rbacabac.exception.InvalidRequestException;
+import com.shakhawat.rbacabac.security.AuthorityRegistry;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Turns {@link RateLimitRule}s into a {@link RateLimitRouteMatcher}. Patterns are first put into a
+ * trie that may branch on wildcards, which is then made deterministic: every node of the result
+ * stands for the set of pattern nodes a path prefix can be at, so a request never backtracks.
+ */
+final class RateLimitPolicyCompiler {
+
+    private static final String ANY_SEGMENT = "*";
+    private static final String ANY_SUFFIX = "**";
+    private static final String ESCALATED_ID = "escalated";
+
+    // A policy attached to a pattern node; order is its position in the configuration
+    private record Candidate(int order, RateLimitPolicy policy) {
+    }
+
+    private static final class PatternNode {
+        final Map<String, PatternNode> literals = new HashMap<>();
+        PatternNode wildcard;
+        final List<Candidate> terminal = new ArrayList<>();
+        final List<Candidate> suffix = new ArrayList<>();
+    }
+
+    private record State(Set<PatternNode> nodes, Set<Candidate> inherited) {
+    }
+
+    private RateLimitPolicyCompiler() {
+    }
+
+    static RateLimitRouteMatcher compile(List<RateLimitRule> rules, long generation,
+                                         Function<BucketSpec, RateLimitBucketStore.Buckets> buckets) {
+        var source = rules != null ? List.copyOf(rules) : List.<RateLimitRule>of();
+
+        // Validate everything before binding any buckets, so a rejected reload leaves the store alone
+        var ids = new HashSet<String>();
+        var specs = new ArrayList<BucketSpec>();
+        var patterns = new ArrayList<List<List<String>>>();
+        for (int i = 0; i < source.size(); i++) {
+            var rule = source.get(i);
+            var id = rule.getId() != null && !rule.getId().isBlank() ? rule.getId() : "policy-" + (i + 1);
+            if (!ids.add(id)) {
+                throw new InvalidRequestException("Duplicate rate limit policy id: " + id);
+            }
+            specs.add(new BucketSpec(id, bandwidths(id, rule.getBandwidths())));
+            patterns.add(patterns(id, rule.getPaths()));
+        }
+
+        var root = new PatternNode();
+        for (int i = 0; i < source.size(); i++) {
+            var rule = source.get(i);
+            var spec = specs.get(i);
+            var policy = new RateLimitPolicy(spec.policyId(), methods(rule.getMethods()), roles(rule),
+                    buckets.apply(spec), limit(spec), description(spec));
+            var candidate = new Candidate(i, policy);
+            for (var segments : patterns.get(i)) {
+                insert(root, segments, candidate);
+            }
+        }
+
+        var states = new HashMap<State, Node>();
+        return new RateLimitRouteMatcher(generation, source, determinize(Set.of(root), Set.of(), states));
+    }
+
+    /**
+     * Compiles the policy escalated heavy hitters must also pass. It applies to every route, so it
+     * has no patterns and is not part of the matcher.
+     */
+    static RateLimitPolicy compileEscalation(List<RateLimitRule.BandwidthLimit> limits,
+                                             Function<BucketSpec, RateLimitBucketStore.Buckets> buckets) {
+        var spec = new BucketSpec(ESCALATED_ID, bandwidths(ESCALATED_ID, limits));
+        return new RateLimitPolicy(spec.policyId(), 0, 0, buckets.apply(spec), limit(spec), description(spec));
+    }
+
+    private static void insert(PatternNode root, List<String> segments, Candidate candidate) {
+        var node = root;
+        for (var segment : segments) {
+            if (segment.equals(ANY_SUFFIX)) {
+                node.suffix.add(candidate);
+                return;
+            }
+            if (isWildcard(segment)) {
+                if (node.wildcard == null) {
+                    node.wildcard = new PatternNode();
+                }
+                node = node.wildcard;
+            } else {
+                node = node.literals.computeIfAbsent(segment, key -> new PatternNode());
+            }
+        }
+        node.terminal.add(candidate);
+    }
+
+    private static Node determinize(Set<PatternNode> nodes, Set<Candidate> inherited, Map<State, Node> states) {
+        var key = new State(nodes, inherited);
+        var existing = states.get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        // A trailing ** matches the node it is on and everything below it
+        var suffixes = new HashSet<>(inherited);
+        var terminal = new HashSet<>(suffixes);
+        var wildcards = new HashSet<PatternNode>();
+        var literals = new TreeSet<String>();
+        for (var node : nodes) {
+            suffixes.addAll(node.suffix);
+            terminal.addAll(node.suffix);
+            terminal.addAll(node.terminal);
+            literals.addAll(node.literals.keySet());
+            if (node.wildcard != null) {
+                wildcards.add(node.wildcard);
+            }
+        }
+        var below = Set.copyOf(suffixes);
+
+        var children = new HashMap<String, Node>();
+        for (var literal : literals) {
+            var next = new HashSet<>(wildcards);
+            for (var node : nodes) {
+                var child = node.literals.get(literal);
+                if (child != null) {
+                    next.add(child);
+                }
+            }
+            children.put(literal, determinize(Set.copyOf(next), below, states));
+        }
+        var wildcard = wildcards.isEmpty() ? null : determinize(Set.copyOf(wildcards), below, states);
+
+        var node = new Node(Map.copyOf(children), wildcard, byMethod(terminal), byMethod(below));
+        states.put(key, node);
+        return node;
+    }
+
+    private static RateLimitPolicy[][] byMethod(Collection<Candidate> candidates) {
+        var sorted = candidates.stream().sorted(Comparator.comparingInt(Candidate::order)).toList();
+        var result = new RateLimitPolicy[RateLimitRouteMatcher.METHOD_COUNT][];
+        for (int method = 0; method < result.length; method++) {
+            var bit = 1 << method;
+            result[method] = sorted.stream()
+                    .map(Candidate::policy)
+                    .filter(policy -> policy.methods() == 0 || (policy.methods() & bit) != 0)
+                    .toArray(RateLimitPolicy[]::new);
+        }
+        return result;
+    }
+
+    static List<BandwidthSpec> bandwidths(String id, List<RateLimitRule.BandwidthLimit> limits) {
+        if (limits == null || limits.isEmpty()) {
+            throw new InvalidRequestException("Rate limit policy " + id + " needs at least one bandwidth");
+        }
+        var specs = new ArrayList<BandwidthSpec>();
+        for (var limit : limits) {
+            if (limit.getCapacity() <= 0) {
+                throw new InvalidRequestException("Rate limit policy " + id + ": capacity must be positive");
+            }
+            if (limit.getRefill() == null || limit.getRefill().isNegative() || limit.getRefill().isZero()) {
+                throw new InvalidRequestException("Rate limit policy " + id + ": refill must be a positive duration");
+            }
+            specs.add(new BandwidthSpec(limit.getCapacity(), limit.getRefill()));
+        }
+        return List.copyOf(specs);
+    }
+
+    private static List<List<String>> patterns(String id, List<String> paths) {
+        if (paths == null || paths.isEmpty()) {
+            return List.of(List.of(ANY_SUFFIX));
+        }
+        var patterns = new ArrayList<List<String>>();
+        for (var path : paths) {
+            if (path == null || !path.startsWith("/")) {
+                throw new InvalidRequestException("Rate limit policy " + id + ": path must start with '/': " + path);
+            }
+            var segments = Arrays.stream(path.split("/")).filter(segment -> !segment.isEmpty()).toList();
+            var suffix = segments.indexOf(ANY_SUFFIX);
+            if (suffix >= 0 && suffix != segments.size() - 1) {
+                throw new InvalidRequestException("Rate limit policy " + id + ": '**' is only allowed at the end: " + path);
+            }
+            patterns.add(segments);
+        }
+        return patterns;
+    }
+
+    private static int methods(List<String> methods) {
+        var mask = 0;
+        if (methods != null) {
+            for (var method : methods) {
+                mask |= 1 << RateLimitRouteMatcher.methodIndex(method.trim().toUpperCase(Locale.ROOT));
+            }
+        }
+        return mask;
+    }
+
+    private static long roles(RateLimitRule rule) {
+        long mask = 0;
+        if (rule.getRoles() != null) {
+            for (var role : rule.getRoles()) {
+                mask |= AuthorityRegistry.maskOf(role);
+            }
+        }
+        return mask;
+    }
+
+    private static boolean isWildcard(String segment) {
+        return segment.equals(ANY_SEGMENT) || (segment.startsWith("{") && segment.endsWith("}"));
+    }
+
+    static long limit(BucketSpec spec) {
+        return spec.bandwidths().stream().mapToLong(BandwidthSpec::capacity).min().orElse(0);
+    }
+
+    static String description(BucketSpec spec) {
+        return spec.bandwidths().stream()
+                .map(bandwidth -> bandwidth.capacity() + " requests per " + formatDuration(bandwidth.refill()))
+                .collect(Collectors.joining(", ", "Limit: ", ""));
+    }
+
+    private static String formatDuration(Duration duration) {
+        long seconds = duration.getSeconds();
+
+        if (seconds < 60) {
+            return seconds + " second" + (seconds != 1 ? "s" : "");
+        } else if (seconds < 3600) {
+            long minutes = seconds / 60;
+            return minutes + " minute" + (minutes != 1 ? "s" : "");
+        } else {
+            long hours = seconds / 3600;
+            return hours + " hour" + (hours != 1 ? "s" : "");
+        }
+    }
+}
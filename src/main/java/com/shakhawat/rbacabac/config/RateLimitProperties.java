@@ -0,0 +1,21 @@
+package com.shakhawat.rbacabac.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitProperties {
+    // How often every node checks for policies replaced on another one
+    private Duration pollInterval = Duration.ofSeconds(5);
+    // First matching policy applies; a request no policy matches is not limited
+    private List<RateLimitRule> policies = new ArrayList<>();
+}
@@ -0,0 +1,102 @@
+package com.shakhawat.rbacabac.config;
+
+import com.shakhawat.rbacabac.security.AuthoritySet;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable result of {@link RateLimitPolicyCompiler}: a deterministic trie over path segments.
+ * Wildcards were already merged into the literal branches at compile time, so matching follows a
+ * single branch, one map lookup per segment, and ends at a node holding the candidate policies per
+ * HTTP method in declaration order. Only the role check is left for request time.
+ */
+public final class RateLimitRouteMatcher {
+
+    static final int METHOD_COUNT = 9;
+    private static final int OTHER_METHOD = 8;
+
+    static final class Node {
+        final Map<String, Node> children;
+        final Node wildcard;
+        // Candidates per method index if the path ends here, and if it continues past this node's branches
+        final RateLimitPolicy[][] exact;
+        final RateLimitPolicy[][] beyond;
+
+        Node(Map<String, Node> children, Node wildcard, RateLimitPolicy[][] exact, RateLimitPolicy[][] beyond) {
+            this.children = children;
+            this.wildcard = wildcard;
+            this.exact = exact;
+            this.beyond = beyond;
+        }
+    }
+
+    private final long generation;
+    private final List<RateLimitRule> source;
+    private final Node root;
+
+    RateLimitRouteMatcher(long generation, List<RateLimitRule> source, Node root) {
+        this.generation = generation;
+        this.source = source;
+        this.root = root;
+    }
+
+    /**
+     * Returns the first policy that applies to the request, or {@code null} if none does.
+     */
+    public RateLimitPolicy select(String path, String method, AuthoritySet authorities) {
+        var methodIndex = methodIndex(method);
+        var node = root;
+        var length = path.length();
+        var start = 0;
+        while (start < length) {
+            var end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                var next = node.children.get(path.substring(start, end));
+                if (next == null) {
+                    next = node.wildcard;
+                }
+                if (next == null) {
+                    return first(node.beyond[methodIndex], authorities);
+                }
+                node = next;
+            }
+            start = end + 1;
+        }
+        return first(node.exact[methodIndex], authorities);
+    }
+
+    public long generation() {
+        return generation;
+    }
+
+    public List<RateLimitRule> source() {
+        return source;
+    }
+
+    static int methodIndex(String method) {
+        return switch (method) {
+            case "GET" -> 0;
+            case "HEAD" -> 1;
+            case "POST" -> 2;
+            case "PUT" -> 3;
+            case "PATCH" -> 4;
+            case "DELETE" -> 5;
+            case "OPTIONS" -> 6;
+            case "TRACE" -> 7;
+            default -> OTHER_METHOD;
+        };
+    }
+
+    private static RateLimitPolicy first(RateLimitPolicy[] candidates, AuthoritySet authorities) {
+        for (var policy : candidates) {
+            if (policy.roles() == 0 || authorities.hasAny(policy.roles())) {
+                return policy;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,33 @@
+package com.shakhawat.rbacabac.config;
+
+import com.shakhawat.rbacabac.entity.RoleType;
+import lombok.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One rate-limit policy as written in configuration. It applies to requests whose path matches one
+ * of {@code paths} (all paths if empty), whose method is one of {@code methods} (any if empty) and,
+ * if {@code roles} is set, whose caller has one of them. A request may pass only if every bandwidth
+ * still has a token.
+ * <p>
+ * Path patterns are literal segments, {@code *} or {@code {name}} for exactly one segment, and a
+ * trailing {@code **} for any number of segments, e.g. {@code /api/employees/{id}} or {@code /api/**}.
+ */
+@Data @NoArgsConstructor @AllArgsConstructor
+public class RateLimitRule {
+    private String id;
+    private List<String> paths = new ArrayList<>();
+    private List<String> methods = new ArrayList<>();
+    private List<RoleType> roles = new ArrayList<>();
+    private List<BandwidthLimit> bandwidths = new ArrayList<>();
+
+    // capacity requests, refilled gradually over refill
+    @Data @NoArgsConstructor @AllArgsConstructor
+    public static class BandwidthLimit {
+        private long capacity;
+        private Duration refill;
+    }
+}
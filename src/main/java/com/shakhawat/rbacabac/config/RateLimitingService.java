@@ -1,63 +1,306 @@
 package com.shakhawat.rbacabac.config;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.std.FromStringDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import com.shakhawat.rbacabac.config.RateLimitPolicy.BucketSpec;
+import com.shakhawat.rbacabac.exception.InvalidRequestException;
+import com.shakhawat.rbacabac.security.AuthoritySet;
 import io.github.bucket4j.*;
-import lombok.Getter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import java.time.Duration;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
+/**
+ * Applies the rate-limit policies from {@code rate-limit.policies}. The compiled matcher is swapped
+ * atomically on {@link #replace}; policies whose bucket spec did not change keep their buckets.
+ * With {@code rate-limit.distributed.enabled}, buckets are shared across nodes through
+ * {@link SharedRateLimitBackend}.
+ * <p>
+ * Replaced policies are stored in {@code rate_limit_policy} and take precedence over the configured
+ * ones from then on. Every node polls the stored revision and loads a newer one, so a replacement
+ * reaches the whole cluster within {@code rate-limit.poll-interval} and survives restarts.
+ */
+@Slf4j
 @Component
 public class RateLimitingService {
 
-    private final Map<String, Bucket> cache = new ConcurrentHashMap<>();
+    /**
+     * Who is being limited. Kept as two fields instead of a "user:"/"ip:" prefixed string,
+     * so resolving a bucket never builds a key string.
+     */
+    public record ClientKey(boolean authenticated, String id) {
 
-    @Getter
-    public enum RateLimitType {
-        LOGIN(5, Duration.ofMinutes(5)),           // 5 requests per 5 minutes
-        API_GENERAL(100, Duration.ofMinutes(1)),   // 100 requests per minute
-        API_WRITE(20, Duration.ofMinutes(1)),      // 20 write operations per minute
-        API_READ(200, Duration.ofMinutes(1));      // 200 read operations per minute
+        public static ClientKey user(String name) {
+            return new ClientKey(true, name);
+        }
+
+        public static ClientKey ip(String address) {
+            return new ClientKey(false, address);
+        }
+
+        @Override
+        public String toString() {
+            return (authenticated ? "user:" : "ip:") + id;
+        }
+    }
+
+    private static final String CREATE_TABLE = """
+            CREATE TABLE IF NOT EXISTS rate_limit_policy (
+                id INTEGER PRIMARY KEY,
+                revision BIGINT NOT NULL,
+                document TEXT NOT NULL,
+                updated_at TIMESTAMPTZ NOT NULL
+            )""";
+    private static final String SAVE = """
+            INSERT INTO rate_limit_policy (id, revision, document, updated_at) VALUES (1, 1, ?, now())
+            ON CONFLICT (id) DO UPDATE
+            SET revision = rate_limit_policy.revision + 1, document = EXCLUDED.document, updated_at = now()
+            RETURNING revision
+            """;
+    private static final String READ_REVISION = "SELECT revision FROM rate_limit_policy WHERE id = 1";
+    private static final String READ = "SELECT revision, document FROM rate_limit_policy WHERE id = 1";
+
+    private static final TypeReference<List<RateLimitRule>> RULES = new TypeReference<>() {
+    };
+
+    private record Stored(long revision, String document) {
+    }
+
+    // A compiled set of policies together with every bucket spec it binds
+    private record Compiled(RateLimitRouteMatcher matcher, RateLimitPolicy escalationPolicy, List<BucketSpec> specs) {
+    }
+
+    private final RateLimitProperties properties;
+    private final RateLimitBucketStore store;
+    private final SharedRateLimitBackend sharedBackend;
+    private final HeavyHitterProperties heavyHitters;
+    private final JdbcTemplate jdbcTemplate;
+    // Refill durations are stored as ISO-8601 strings, e.g. PT1M
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new SimpleModule()
+            .addSerializer(Duration.class, ToStringSerializer.instance)
+            .addDeserializer(Duration.class, new DurationDeserializer()));
+    private final AtomicLong generations = new AtomicLong();
+    private final ScheduledExecutorService poller;
+
+    private volatile RateLimitRouteMatcher matcher;
+    private volatile RateLimitPolicy escalationPolicy;
+    private List<BucketSpec> activeSpecs = List.of();
+    // Revision of the stored policies in use, 0 while running on the configured ones
+    private volatile long revision;
+
+    public RateLimitingService(RateLimitProperties properties,
+                               SharedRateLimitBackend sharedBackend,
+                               HeavyHitterProperties heavyHitters,
+                               JdbcTemplate jdbcTemplate,
+                               @Value("${rate-limit.store.max-entries:1000000}") int maxEntries,
+                               @Value("${rate-limit.store.sweep-interval:30s}") Duration sweepInterval,
+                               MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.sharedBackend = sharedBackend;
+        this.heavyHitters = heavyHitters;
+        this.jdbcTemplate = jdbcTemplate;
+        this.store = new RateLimitBucketStore(this::createBucket, maxEntries, sweepInterval, meterRegistry);
+        activate(compile(properties.getPolicies()));
+        this.poller = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("rate-limit-policy").daemon().factory());
+        log.info("Loaded {} rate limit policies", properties.getPolicies().size());
+    }
+
+    @PostConstruct
+    public void initialize() {
+        jdbcTemplate.execute(CREATE_TABLE);
+        reload();
+
+        var intervalMillis = properties.getPollInterval().toMillis();
+        poller.scheduleWithFixedDelay(this::pollQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the policy limiting this request, or {@code null} if it is not limited.
+     */
+    public RateLimitPolicy select(String path, String method, AuthoritySet authorities) {
+        return matcher.select(path, method, authorities);
+    }
+
+    /**
+     * Compiles, stores and activates new policies. They are fully validated first, so rejected
+     * policies are never stored and leave the current ones in place.
+     */
+    public synchronized RateLimitRouteMatcher replace(List<RateLimitRule> rules) {
+        var document = toJson(rules);
+        var compiled = compile(rules);
+        Long stored;
+        try {
+            stored = jdbcTemplate.queryForObject(SAVE, Long.class, document);
+        } catch (RuntimeException e) {
+            // Compiling bound buckets for the new specs, the current policies no longer need them
+            store.retainOnly(activeSpecs);
+            throw e;
+        }
+        activate(compiled);
+        revision = stored != null ? stored : revision;
+        log.info("Replaced rate limit policies (generation {}, revision {}, {} policies)",
+                compiled.matcher().generation(), revision, compiled.matcher().source().size());
+        return compiled.matcher();
+    }
+
+    public RateLimitRouteMatcher current() {
+        return matcher;
+    }
+
+    /**
+     * The policy escalated heavy hitters must pass in addition to the route's, or {@code null} if
+     * escalation is off.
+     */
+    public RateLimitPolicy escalationPolicy() {
+        return escalationPolicy;
+    }
 
-        private final long capacity;
-        private final Duration refillDuration;
+    private void pollQuietly() {
+        try {
+            var stored = jdbcTemplate.queryForList(READ_REVISION, Long.class);
+            if (!stored.isEmpty() && stored.getFirst() > revision) {
+                reload();
+            }
+        } catch (DataAccessException e) {
+            log.warn("Failed to poll the rate limit policies, will retry: {}", e.getMessage());
+        }
+    }
 
-        RateLimitType(long capacity, Duration refillDuration) {
-            this.capacity = capacity;
-            this.refillDuration = refillDuration;
+    // Stored policies that no longer compile are skipped, the current ones stay active
+    private synchronized void reload() {
+        var stored = jdbcTemplate.query(READ, (rs, rowNum) -> new Stored(rs.getLong("revision"), rs.getString("document")));
+        if (stored.isEmpty() || stored.getFirst().revision() <= revision) {
+            return;
+        }
+        var latest = stored.getFirst();
+        try {
+            var compiled = compile(objectMapper.readValue(latest.document(), RULES));
+            activate(compiled);
+            log.info("Loaded stored rate limit policies (generation {}, revision {})",
+                    compiled.matcher().generation(), latest.revision());
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.error("Stored rate limit policies revision {} are invalid, keeping the current ones: {}",
+                    latest.revision(), e.getMessage());
         }
+        revision = latest.revision();
+    }
+
+    // Validates everything before binding any buckets, so rejected rules leave the store alone
+    private Compiled compile(List<RateLimitRule> rules) {
+        var specs = new ArrayList<BucketSpec>();
+        Function<BucketSpec, RateLimitBucketStore.Buckets> buckets = spec -> {
+            specs.add(spec);
+            return store.bucketsFor(spec);
+        };
+        var compiled = RateLimitPolicyCompiler.compile(rules, generations.incrementAndGet(), buckets);
+        // Recompiled only to keep its buckets alive, the spec itself does not change on reload
+        var escalation = compileEscalation(buckets);
+        return new Compiled(compiled, escalation, specs);
+    }
+
+    private void activate(Compiled compiled) {
+        matcher = compiled.matcher();
+        escalationPolicy = compiled.escalationPolicy();
+        activeSpecs = compiled.specs();
+        store.retainOnly(compiled.specs());
     }
 
-    public Bucket resolveBucket(String key, RateLimitType limitType) {
-        return cache.computeIfAbsent(key, k -> createNewBucket(limitType));
+    private RateLimitPolicy compileEscalation(Function<BucketSpec, RateLimitBucketStore.Buckets> buckets) {
+        if (!heavyHitters.isEnabled() || !heavyHitters.getEscalation().isEnabled()) {
+            return null;
+        }
+        return RateLimitPolicyCompiler.compileEscalation(heavyHitters.getEscalation().getBandwidths(), buckets);
     }
 
-    private Bucket createNewBucket(RateLimitType limitType) {
-        var bandwidth = Bandwidth.builder()
-                .capacity(limitType.getCapacity())
-                .refillGreedy(limitType.getCapacity(), limitType.getRefillDuration())
-                .build();
+    private String toJson(List<RateLimitRule> rules) {
+        try {
+            return objectMapper.writeValueAsString(rules);
+        } catch (JsonProcessingException e) {
+            throw new InvalidRequestException("Rate limit policies cannot be stored: " + e.getMessage());
+        }
+    }
 
-        return Bucket.builder()
-                .addLimit(bandwidth)
-                .build();
+    private RateLimitBucket createBucket(ClientKey client, BucketSpec spec) {
+        if (!sharedBackend.isEnabled()) {
+            return RateLimitBucket.local(createNewBucket(spec, 1.0));
+        }
+        return new SharedRateLimitBucket(sharedBackend, SharedRateLimitBackend.bucketKey(spec, client), spec,
+                () -> createNewBucket(spec, sharedBackend.fallbackCapacityFactor()));
     }
 
-    public boolean tryConsume(String key, RateLimitType limitType) {
-        var bucket = resolveBucket(key, limitType);
-        return bucket.tryConsume(1);
+    static Bucket createNewBucket(BucketSpec spec, double capacityFactor) {
+        var builder = Bucket.builder();
+        for (var limit : spec.bandwidths()) {
+            var capacity = Math.max(1, Math.round(limit.capacity() * capacityFactor));
+            builder.addLimit(Bandwidth.builder()
+                    .capacity(capacity)
+                    .refillGreedy(capacity, limit.refill())
+                    .build());
+        }
+        return builder.build();
     }
 
-    public long getAvailableTokens(String key, RateLimitType limitType) {
-        var bucket = resolveBucket(key, limitType);
-        return bucket.getAvailableTokens();
+    /**
+     * Consumes one token and reports what is left, in a single lookup and bucket update.
+     */
+    public ConsumptionProbe tryConsumeAndReturnRemaining(ClientKey client, RateLimitPolicy policy) {
+        return store.resolve(client, policy.buckets()).tryConsumeAndReturnRemaining();
     }
 
-    public void clearCache(String key) {
-        cache.remove(key);
+    public boolean tryConsume(ClientKey client, RateLimitPolicy policy) {
+        return store.resolve(client, policy.buckets()).tryConsumeAndReturnRemaining().isConsumed();
+    }
+
+    public long getAvailableTokens(ClientKey client, RateLimitPolicy policy) {
+        return store.resolve(client, policy.buckets()).getAvailableTokens();
+    }
+
+    public void clearCache(ClientKey client) {
+        store.remove(client);
     }
 
     public void clearAllCache() {
-        cache.clear();
+        store.clear();
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+        store.shutdown();
+    }
+
+    private static final class DurationDeserializer extends FromStringDeserializer<Duration> {
+
+        DurationDeserializer() {
+            super(Duration.class);
+        }
+
+        @Override
+        protected Duration _deserialize(String value, DeserializationContext context) {
+            return Duration.parse(value);
+        }
     }
 }
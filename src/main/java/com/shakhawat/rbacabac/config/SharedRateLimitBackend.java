@@ -0,0 +1,310 @@
+package com.shakhawat.rbacabac.config;
+
+import com.shakhawat.rbacabac.config.RateLimitPolicy.BandwidthSpec;
+import com.shakhawat.rbacabac.config.RateLimitPolicy.BucketSpec;
+import com.shakhawat.rbacabac.config.RateLimitingService.ClientKey;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rate-limit buckets shared by every node, stored in Postgres. Nodes do not go to the database per
+ * request: a {@link SharedRateLimitBucket} takes a batch of tokens out of the shared bucket in one
+ * transaction and serves requests from that reservation.
+ * <p>
+ * Reserved tokens are already taken from the shared bucket, so the cluster as a whole admits no more
+ * than the configured limit. The slack is bounded by the batch size (at most {@code batch-size}, and
+ * at most {@code max-batch-fraction} of the capacity, held unused per node and client) and by
+ * {@code reservation-ttl}, after which unused tokens are dropped rather than spent late.
+ * <p>
+ * A reservation that fails or takes longer than {@code timeout} switches this node to local buckets
+ * for {@code fallback-cooldown}. Local buckets get {@code fallback-capacity-factor} times the
+ * configured capacity, so while the database is unavailable the cluster admits up to
+ * {@code nodes * factor} times the limit.
+ */
+@Slf4j
+@Component
+public class SharedRateLimitBackend {
+
+    // Unlogged: bucket state is cheap to lose, and skipping the WAL keeps reservations fast
+    private static final String CREATE_TABLE = """
+            CREATE UNLOGGED TABLE IF NOT EXISTS rate_limit_buckets (
+                bucket_key VARCHAR(512) PRIMARY KEY,
+                tokens DOUBLE PRECISION[] NOT NULL,
+                refilled_at TIMESTAMPTZ NOT NULL,
+                expires_at TIMESTAMPTZ NOT NULL
+            )""";
+    private static final String CREATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS idx_rate_limit_buckets_expires_at ON rate_limit_buckets (expires_at)";
+
+    // Creates a full bucket or locks the existing row for the rest of the transaction
+    private static final String LOCK_BUCKET = """
+            INSERT INTO rate_limit_buckets (bucket_key, tokens, refilled_at, expires_at)
+            VALUES (?, CAST(? AS DOUBLE PRECISION[]), now(), now())
+            ON CONFLICT (bucket_key) DO UPDATE SET bucket_key = EXCLUDED.bucket_key
+            RETURNING tokens, EXTRACT(EPOCH FROM now() - refilled_at) AS elapsed
+            """;
+    private static final String UPDATE_BUCKET = """
+            UPDATE rate_limit_buckets SET tokens = CAST(? AS DOUBLE PRECISION[]),
+                refilled_at = refilled_at + make_interval(secs => ?),
+                expires_at = refilled_at + make_interval(secs => ?)
+            WHERE bucket_key = ?
+            """;
+
+    // A bucket past expires_at has refilled completely and is the same as no row at all
+    private static final String DELETE_EXPIRED = """
+            DELETE FROM rate_limit_buckets WHERE bucket_key IN (
+                SELECT bucket_key FROM rate_limit_buckets WHERE expires_at < now() LIMIT ?
+            )""";
+
+    record Reservation(long granted, long remaining, long nanosToRefill, long nanosToReset) {
+    }
+
+    private record Locked(double[] available, double elapsedSeconds) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long batchSize;
+    private final double maxBatchFraction;
+    private final long reservationTtlNanos;
+    private final long timeoutNanos;
+    private final long fallbackCooldownNanos;
+    private final double fallbackCapacityFactor;
+    private final int cleanupBatchSize;
+    private final ExecutorService executor;
+    private final LongAdder granted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    // 0 while reservations work
+    private volatile long degradedUntilNanos;
+
+    public SharedRateLimitBackend(JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${rate-limit.distributed.enabled:false}") boolean enabled,
+                                  @Value("${rate-limit.distributed.batch-size:10}") long batchSize,
+                                  @Value("${rate-limit.distributed.max-batch-fraction:0.1}") double maxBatchFraction,
+                                  @Value("${rate-limit.distributed.reservation-ttl:1s}") Duration reservationTtl,
+                                  @Value("${rate-limit.distributed.timeout:50ms}") Duration timeout,
+                                  @Value("${rate-limit.distributed.fallback-cooldown:10s}") Duration fallbackCooldown,
+                                  @Value("${rate-limit.distributed.fallback-capacity-factor:1.0}") double fallbackCapacityFactor,
+                                  @Value("${rate-limit.distributed.threads:4}") int threads,
+                                  @Value("${rate-limit.distributed.cleanup-batch-size:10000}") int cleanupBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // The driver-side backstop for a statement the caller has already given up on
+        transactionTemplate.setTimeout((int) Math.max(1, timeout.multipliedBy(10).toSeconds()));
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxBatchFraction = maxBatchFraction;
+        this.reservationTtlNanos = reservationTtl.toNanos();
+        this.timeoutNanos = timeout.toNanos();
+        this.fallbackCooldownNanos = fallbackCooldown.toNanos();
+        this.fallbackCapacityFactor = fallbackCapacityFactor;
+        this.cleanupBatchSize = cleanupBatchSize;
+        // Bounded queue: when the database falls behind, requests fall back instead of piling up
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 64), Thread.ofPlatform().name("rate-limit-reserve-", 0).daemon().factory());
+
+        FunctionCounter.builder("ratelimit.shared.reservations", granted, LongAdder::sum)
+                .tag("outcome", "granted").register(meterRegistry);
+        FunctionCounter.builder("ratelimit.shared.reservations", rejected, LongAdder::sum)
+                .tag("outcome", "rejected").register(meterRegistry);
+        FunctionCounter.builder("ratelimit.shared.reservations", failed, LongAdder::sum)
+                .tag("outcome", "failed").register(meterRegistry);
+        Gauge.builder("ratelimit.shared.degraded", this, backend -> backend.isDegraded() ? 1 : 0).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isDegraded() {
+        var until = degradedUntilNanos;
+        return until != 0 && System.nanoTime() - until < 0;
+    }
+
+    double fallbackCapacityFactor() {
+        return fallbackCapacityFactor;
+    }
+
+    long reservationTtlNanos() {
+        return reservationTtlNanos;
+    }
+
+    // Small buckets (e.g. login) are reserved one token at a time, so batching never loosens them
+    long batchSize(BucketSpec spec) {
+        var capacity = spec.bandwidths().stream().mapToLong(BandwidthSpec::capacity).min().orElse(1);
+        return Math.max(1, Math.min(batchSize, (long) (capacity * maxBatchFraction)));
+    }
+
+    /**
+     * The row of a client's bucket. It includes the bandwidths, so nodes briefly running different
+     * versions of a policy keep separate rows instead of resetting each other's bucket to full.
+     */
+    static String bucketKey(BucketSpec spec, ClientKey client) {
+        var key = new StringBuilder(64).append(spec.policyId()).append('[');
+        for (int i = 0; i < spec.bandwidths().size(); i++) {
+            var bandwidth = spec.bandwidths().get(i);
+            if (i > 0) {
+                key.append(',');
+            }
+            key.append(bandwidth.capacity()).append('/').append(bandwidth.refill());
+        }
+        return key.append("]|").append(client).toString();
+    }
+
+    /**
+     * Takes up to {@code tokens} tokens from the shared bucket. Returns {@code null} if the database
+     * did not answer in time, in which case the caller falls back to its local bucket.
+     */
+    Reservation reserve(String key, BucketSpec spec, long tokens) {
+        if (isDegraded()) {
+            return null;
+        }
+        Future<Reservation> future;
+        try {
+            future = executor.submit(() -> transactionTemplate.execute(status -> reserveInTransaction(key, spec, tokens)));
+        } catch (RejectedExecutionException e) {
+            failed.increment();
+            return null;
+        }
+
+        try {
+            var reservation = future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            (reservation.granted() > 0 ? granted : rejected).increment();
+            if (degradedUntilNanos != 0) {
+                degradedUntilNanos = 0;
+                log.info("Shared rate limit reservations recovered");
+            }
+            return reservation;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            degrade("timed out");
+        } catch (ExecutionException e) {
+            degrade(e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+        }
+        failed.increment();
+        return null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createTable() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            jdbcTemplate.execute(CREATE_TABLE);
+            jdbcTemplate.execute(CREATE_INDEX);
+        } catch (DataAccessException e) {
+            log.warn("Could not create rate_limit_buckets, shared rate limits will fall back to local ones: {}",
+                    e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "${rate-limit.distributed.cleanup-cron:0 */5 * * * *}")
+    public void deleteExpiredBuckets() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int deleted;
+            do {
+                deleted = jdbcTemplate.update(DELETE_EXPIRED, cleanupBatchSize);
+            } while (deleted == cleanupBatchSize);
+        } catch (DataAccessException e) {
+            log.warn("Failed to delete expired rate limit buckets: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void degrade(String reason) {
+        if (!isDegraded()) {
+            log.warn("Shared rate limit reservation failed ({}), using local buckets for {} ms", reason,
+                    TimeUnit.NANOSECONDS.toMillis(fallbackCooldownNanos));
+        }
+        degradedUntilNanos = System.nanoTime() + fallbackCooldownNanos;
+    }
+
+    private Reservation reserveInTransaction(String key, BucketSpec spec, long tokens) {
+        var bandwidths = spec.bandwidths();
+        var capacities = new double[bandwidths.size()];
+        for (int i = 0; i < capacities.length; i++) {
+            capacities[i] = bandwidths.get(i).capacity();
+        }
+
+        var locked = jdbcTemplate.queryForObject(LOCK_BUCKET, (rs, rowNum) -> {
+            var stored = (Double[]) rs.getArray("tokens").getArray();
+            var elapsedNanos = (long) (rs.getDouble("elapsed") * 1e9);
+            var available = new double[capacities.length];
+            for (int i = 0; i < available.length; i++) {
+                // Rows are keyed by their bandwidths (see bucketKey), so this only guards against a malformed row
+                available[i] = stored.length != available.length ? capacities[i]
+                        : Math.min(capacities[i], stored[i] + elapsedNanos * capacities[i] / bandwidths.get(i).refill().toNanos());
+            }
+            return new Locked(available, rs.getDouble("elapsed"));
+        }, key, toArrayLiteral(capacities));
+
+        var available = locked.available();
+        var elapsedSeconds = locked.elapsedSeconds();
+
+        var lowest = Double.MAX_VALUE;
+        for (var tokensLeft : available) {
+            lowest = Math.min(lowest, tokensLeft);
+        }
+        var taken = (long) Math.min(tokens, Math.floor(lowest));
+
+        var remaining = Double.MAX_VALUE;
+        long nanosToRefill = 0;
+        long nanosToReset = 0;
+        for (int i = 0; i < available.length; i++) {
+            available[i] -= taken;
+            remaining = Math.min(remaining, available[i]);
+            var nanosPerToken = (double) bandwidths.get(i).refill().toNanos() / capacities[i];
+            if (available[i] < 1) {
+                nanosToRefill = Math.max(nanosToRefill, (long) Math.ceil((1 - available[i]) * nanosPerToken));
+            }
+            nanosToReset = Math.max(nanosToReset, (long) Math.ceil((capacities[i] - available[i]) * nanosPerToken));
+        }
+
+        jdbcTemplate.update(UPDATE_BUCKET, toArrayLiteral(available), elapsedSeconds,
+                elapsedSeconds + spec.idleAfter().toNanos() / 1e9, key);
+        return new Reservation(taken, (long) Math.floor(remaining), taken > 0 ? 0 : nanosToRefill, nanosToReset);
+    }
+
+    private static String toArrayLiteral(double[] values) {
+        var literal = new StringBuilder(values.length * 8).append('{');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                literal.append(',');
+            }
+            literal.append(values[i]);
+        }
+        return literal.append('}').toString();
+    }
+}
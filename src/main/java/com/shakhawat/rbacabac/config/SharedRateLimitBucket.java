@@ -0,0 +1,80 @@
+package com.shakhawat.rbacabac.config;
+
+import com.shakhawat.rbacabac.config.RateLimitPolicy.BucketSpec;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+
+import java.util.function.Supplier;
+
+/**
+ * A client's view of a cluster-wide bucket. Requests are served from a batch of tokens reserved
+ * through {@link SharedRateLimitBackend}; only an empty or stale reservation costs a database round
+ * trip. After the shared bucket runs dry, requests are rejected locally until a token is due, so a
+ * client hammering a limit does not hammer the database as well.
+ */
+final class SharedRateLimitBucket implements RateLimitBucket {
+
+    private final SharedRateLimitBackend backend;
+    private final String key;
+    private final BucketSpec spec;
+    private final Supplier<Bucket> fallbackFactory;
+
+    private long reserved;
+    private long reservedAtNanos;
+    private long sharedRemaining;
+    private long nanosToReset;
+    private long rejectedUntilNanos;
+    private Bucket fallback;
+
+    SharedRateLimitBucket(SharedRateLimitBackend backend, String key, BucketSpec spec, Supplier<Bucket> fallbackFactory) {
+        this.backend = backend;
+        this.key = key;
+        this.spec = spec;
+        this.fallbackFactory = fallbackFactory;
+    }
+
+    @Override
+    public synchronized ConsumptionProbe tryConsumeAndReturnRemaining() {
+        var now = System.nanoTime();
+        if (reserved > 0 && now - reservedAtNanos < backend.reservationTtlNanos()) {
+            reserved--;
+            return ConsumptionProbe.consumed(sharedRemaining + reserved, nanosToReset);
+        }
+        if (now - rejectedUntilNanos < 0) {
+            return ConsumptionProbe.rejected(0, rejectedUntilNanos - now, nanosToReset);
+        }
+
+        reserved = 0;
+        var reservation = backend.reserve(key, spec, backend.batchSize(spec));
+        if (reservation == null) {
+            if (fallback == null) {
+                fallback = fallbackFactory.get();
+            }
+            return fallback.tryConsumeAndReturnRemaining(1);
+        }
+
+        sharedRemaining = reservation.remaining();
+        nanosToReset = reservation.nanosToReset();
+        if (reservation.granted() == 0) {
+            rejectedUntilNanos = now + reservation.nanosToRefill();
+            return ConsumptionProbe.rejected(sharedRemaining, reservation.nanosToRefill(), nanosToReset);
+        }
+        reserved = reservation.granted() - 1;
+        reservedAtNanos = now;
+        return ConsumptionProbe.consumed(sharedRemaining + reserved, nanosToReset);
+    }
+
+    // The shared state lives in the database; only a local fallback bucket would be lost
+    @Override
+    public synchronized boolean isFull() {
+        return fallback == null || RateLimitBucket.isFull(fallback);
+    }
+
+    @Override
+    public synchronized long getAvailableTokens() {
+        if (backend.isDegraded() && fallback != null) {
+            return fallback.getAvailableTokens();
+        }
+        return sharedRemaining + reserved;
+    }
+}
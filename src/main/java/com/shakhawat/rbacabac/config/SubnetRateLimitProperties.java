@@ -0,0 +1,30 @@
+package com.shakhawat.rbacabac.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "rate-limit.subnets")
+public class SubnetRateLimitProperties {
+    private boolean enabled = true;
+    private int maxNodes = 1_000_000;
+    private Duration sweepInterval = Duration.ofSeconds(30);
+    // Every level applies at once: a request must get a token from each enclosing subnet
+    private List<Level> ipv4 = new ArrayList<>();
+    private List<Level> ipv6 = new ArrayList<>();
+
+    @Getter
+    @Setter
+    public static class Level {
+        private int prefix;
+        private List<RateLimitRule.BandwidthLimit> bandwidths = new ArrayList<>();
+    }
+}
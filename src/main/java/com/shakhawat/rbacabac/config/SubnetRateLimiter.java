@@ -0,0 +1,213 @@
+package com.shakhawat.rbacabac.config;
+
+import com.shakhawat.rbacabac.config.RateLimitPolicy.BucketSpec;
+import com.shakhawat.rbacabac.exception.InvalidRequestException;
+import com.shakhawat.rbacabac.util.CidrBlock;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Limits anonymous clients per enclosing subnet at several prefix lengths at once (e.g. /32, /24
+ * and /16), so rotating addresses inside a subnet does not reset the limit. Buckets live on the
+ * nodes of a {@link SubnetTrie}; each address family is split into 256 tries, each with its own
+ * lock, by a hash of the leading bits every level covers (at most 48). Hashing matters for IPv6,
+ * whose first byte is the same for nearly every global address. A background sweep drops buckets
+ * that have fully refilled and the nodes left without one; over {@code max-nodes}, refilled
+ * buckets go least recently used first.
+ */
+@Slf4j
+@Component
+public class SubnetRateLimiter {
+
+    private static final int SHARDS = 256;
+    private static final int MIN_PREFIX = 8;
+    private static final int MAX_SHARD_BITS = 48;
+
+    public record Rejection(String id, ConsumptionProbe probe, long limit, String description) {
+    }
+
+    private static final class Family {
+        final int[] prefixes;
+        final BucketSpec[] specs;
+        final long[] idleNanos;
+        final long[] limits;
+        final String[] descriptions;
+        final IntFunction<Bucket> factory;
+        final SubnetTrie[] shards = new SubnetTrie[SHARDS];
+        // Keeps the bits inside the shortest prefix, so all addresses sharing a bucket share a shard
+        final int shardShift;
+
+        Family(String name, int bits, List<SubnetRateLimitProperties.Level> configured) {
+            var levels = configured.stream().sorted(Comparator.comparingInt(SubnetRateLimitProperties.Level::getPrefix)).toList();
+            prefixes = new int[levels.size()];
+            specs = new BucketSpec[levels.size()];
+            idleNanos = new long[levels.size()];
+            limits = new long[levels.size()];
+            descriptions = new String[levels.size()];
+            for (int i = 0; i < levels.size(); i++) {
+                var prefix = levels.get(i).getPrefix();
+                var id = name + "/" + prefix;
+                if (prefix < MIN_PREFIX || prefix > bits || (i > 0 && prefix == prefixes[i - 1])) {
+                    throw new InvalidRequestException("Invalid subnet rate limit prefix: " + id);
+                }
+                prefixes[i] = prefix;
+                specs[i] = new BucketSpec(id, RateLimitPolicyCompiler.bandwidths(id, levels.get(i).getBandwidths()));
+                idleNanos[i] = specs[i].idleAfter().toNanos();
+                limits[i] = RateLimitPolicyCompiler.limit(specs[i]);
+                descriptions[i] = RateLimitPolicyCompiler.description(specs[i]) + " per /" + prefix + " subnet";
+            }
+            shardShift = Long.SIZE - (prefixes.length > 0 ? Math.min(prefixes[0], MAX_SHARD_BITS) : MIN_PREFIX);
+            factory = level -> RateLimitingService.createNewBucket(specs[level], 1.0);
+            for (int i = 0; i < SHARDS; i++) {
+                shards[i] = new SubnetTrie();
+            }
+        }
+    }
+
+    private final boolean enabled;
+    private final int maxNodes;
+    private final Family ipv4;
+    private final Family ipv6;
+    private final ScheduledExecutorService sweeper;
+    private final LongAdder idleEvictions = new LongAdder();
+    private final LongAdder capacityEvictions = new LongAdder();
+
+    public SubnetRateLimiter(SubnetRateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        this.maxNodes = properties.getMaxNodes();
+        this.ipv4 = new Family("ipv4", 32, properties.getIpv4());
+        this.ipv6 = new Family("ipv6", 128, properties.getIpv6());
+
+        Gauge.builder("ratelimit.subnet.nodes", this, SubnetRateLimiter::size).register(meterRegistry);
+        FunctionCounter.builder("ratelimit.subnet.evictions", idleEvictions, LongAdder::sum)
+                .tag("reason", "idle").register(meterRegistry);
+        FunctionCounter.builder("ratelimit.subnet.evictions", capacityEvictions, LongAdder::sum)
+                .tag("reason", "capacity").register(meterRegistry);
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("subnet-rate-limit-sweeper").daemon().factory());
+        if (enabled) {
+            var intervalMillis = properties.getSweepInterval().toMillis();
+            sweeper.scheduleWithFixedDelay(this::sweepQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Takes a token from every subnet level of the address. Returns {@code null} if all of them had
+     * one (or the address is not a literal IP), otherwise the first level that rejected.
+     */
+    public Rejection tryConsume(String address) {
+        if (!enabled) {
+            return null;
+        }
+        byte[] bytes;
+        try {
+            bytes = CidrBlock.toBytes(address);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        var family = bytes.length == 4 ? ipv4 : ipv6;
+        if (family.prefixes.length == 0) {
+            return null;
+        }
+        var hi = toLong(bytes, 0);
+        var lo = bytes.length > 8 ? toLong(bytes, 8) : 0;
+        var buckets = new Bucket[family.prefixes.length];
+        var shard = family.shards[shardIndex(hi >>> family.shardShift)];
+        synchronized (shard) {
+            shard.path(hi, lo, family.prefixes, family.factory, buckets, System.nanoTime());
+        }
+
+        // Narrowest subnet first: one address over its own limit should not drain its whole /16
+        for (int i = buckets.length - 1; i >= 0; i--) {
+            var probe = buckets[i].tryConsumeAndReturnRemaining(1);
+            if (!probe.isConsumed()) {
+                return new Rejection(family.specs[i].policyId(), probe, family.limits[i], family.descriptions[i]);
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        var size = 0;
+        for (var family : List.of(ipv4, ipv6)) {
+            for (var shard : family.shards) {
+                synchronized (shard) {
+                    size += shard.size();
+                }
+            }
+        }
+        return size;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (RuntimeException e) {
+            log.warn("Subnet rate limit sweep failed: {}", e.getMessage());
+        }
+    }
+
+    private void sweep() {
+        var now = System.nanoTime();
+        idleEvictions.add(prune(now, Long.MAX_VALUE));
+
+        // Still over the cap: halve the idle threshold until 90% of the cap is reached
+        var target = maxNodes - maxNodes / 10;
+        var maxIdleNanos = Duration.ofMinutes(1).toNanos();
+        while (size() > target && maxIdleNanos > 0) {
+            capacityEvictions.add(prune(now, maxIdleNanos));
+            maxIdleNanos /= 2;
+        }
+    }
+
+    private long prune(long now, long maxIdleNanos) {
+        long evicted = 0;
+        for (var family : List.of(ipv4, ipv6)) {
+            for (var shard : family.shards) {
+                synchronized (shard) {
+                    evicted += shard.prune(now, family.idleNanos, maxIdleNanos);
+                }
+            }
+        }
+        return evicted;
+    }
+
+    // Fibonacci hashing: the top byte of the product depends on every bit of the prefix
+    private static int shardIndex(long prefix) {
+        return (int) ((prefix * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - 8));
+    }
+
+    // IPv4 addresses end up in the top 32 bits
+    private static long toLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value <<= 8;
+            if (offset + i < bytes.length) {
+                value |= bytes[offset + i] & 0xFF;
+            }
+        }
+        return value;
+    }
+}
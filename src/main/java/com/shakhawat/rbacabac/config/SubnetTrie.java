@@ -0,0 +1,165 @@
+package com.shakhawat.rbacabac.config;
+
+import io.github.bucket4j.Bucket;
+
+import java.util.function.IntFunction;
+
+/**
+ * Path-compressed binary radix trie over 128-bit keys (IPv4 addresses use the top 32 bits) with a
+ * bucket on every node that sits at one of the configured prefix lengths. Nodes exist only for those
+ * prefixes and for the branch points between them, so a subnet's clients share one node per level
+ * however many addresses it rotates through. Not thread-safe; {@link SubnetRateLimiter} locks each
+ * trie.
+ */
+final class SubnetTrie {
+
+    private static final class Node {
+        final long hi;
+        final long lo;
+        final int length;
+        Node zero;
+        Node one;
+        Bucket bucket;
+        int level = -1;
+        long lastAccessNanos;
+
+        Node(long hi, long lo, int length) {
+            this.hi = hi & maskHi(length);
+            this.lo = lo & maskLo(length);
+            this.length = length;
+        }
+    }
+
+    private final Node root = new Node(0, 0, 0);
+    private int size;
+    private long evicted;
+
+    /**
+     * Puts the bucket for {@code prefixes[i]} (ascending) of the address into {@code buckets[i]},
+     * creating missing nodes and buckets on the way.
+     */
+    void path(long hi, long lo, int[] prefixes, IntFunction<Bucket> factory, Bucket[] buckets, long now) {
+        var parent = root;
+        for (int level = 0; level < prefixes.length; level++) {
+            var node = findOrCreate(parent, hi, lo, prefixes[level]);
+            if (node.bucket == null) {
+                node.bucket = factory.apply(level);
+                node.level = level;
+            }
+            node.lastAccessNanos = now;
+            buckets[level] = node.bucket;
+            parent = node;
+        }
+    }
+
+    /**
+     * Drops buckets idle for at least their level's {@code idleNanos}, or for {@code maxIdleNanos}
+     * if they have already refilled, then the nodes that no longer carry a bucket or separate two
+     * branches.
+     *
+     * @return buckets dropped
+     */
+    long prune(long now, long[] idleNanos, long maxIdleNanos) {
+        var before = evicted;
+        root.zero = prune(root.zero, now, idleNanos, maxIdleNanos);
+        root.one = prune(root.one, now, idleNanos, maxIdleNanos);
+        return evicted - before;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private Node prune(Node node, long now, long[] idleNanos, long maxIdleNanos) {
+        if (node == null) {
+            return null;
+        }
+        node.zero = prune(node.zero, now, idleNanos, maxIdleNanos);
+        node.one = prune(node.one, now, idleNanos, maxIdleNanos);
+        if (node.bucket != null && isEvictable(node, now - node.lastAccessNanos, idleNanos, maxIdleNanos)) {
+            node.bucket = null;
+            node.level = -1;
+            evicted++;
+        }
+        if (node.bucket != null || (node.zero != null && node.one != null)) {
+            return node;
+        }
+        size--;
+        return node.zero != null ? node.zero : node.one;
+    }
+
+    // A bucket still counting requests must survive capacity eviction, or its subnet starts over
+    private static boolean isEvictable(Node node, long idle, long[] idleNanos, long maxIdleNanos) {
+        return idle >= idleNanos[node.level] || (idle >= maxIdleNanos && RateLimitBucket.isFull(node.bucket));
+    }
+
+    private Node findOrCreate(Node from, long hi, long lo, int length) {
+        var parent = from;
+        while (true) {
+            var right = bit(hi, lo, parent.length);
+            var child = right ? parent.one : parent.zero;
+            if (child == null) {
+                var leaf = newNode(hi, lo, length);
+                attach(parent, right, leaf);
+                return leaf;
+            }
+
+            var common = commonPrefix(child.hi, child.lo, hi, lo, Math.min(child.length, length));
+            if (common == child.length) {
+                if (child.length == length) {
+                    return child;
+                }
+                parent = child;
+                continue;
+            }
+            if (common == length) {
+                // The wanted prefix sits above the child
+                var inner = newNode(hi, lo, length);
+                attach(inner, bit(child.hi, child.lo, length), child);
+                attach(parent, right, inner);
+                return inner;
+            }
+            // Diverges inside the child's prefix: branch at the first differing bit
+            var branch = newNode(hi, lo, common);
+            var leaf = newNode(hi, lo, length);
+            attach(branch, bit(child.hi, child.lo, common), child);
+            attach(branch, bit(hi, lo, common), leaf);
+            attach(parent, right, branch);
+            return leaf;
+        }
+    }
+
+    private Node newNode(long hi, long lo, int length) {
+        size++;
+        return new Node(hi, lo, length);
+    }
+
+    private static void attach(Node parent, boolean right, Node child) {
+        if (right) {
+            parent.one = child;
+        } else {
+            parent.zero = child;
+        }
+    }
+
+    private static boolean bit(long hi, long lo, int index) {
+        return index < 64 ? ((hi >>> (63 - index)) & 1) != 0 : ((lo >>> (127 - index)) & 1) != 0;
+    }
+
+    private static int commonPrefix(long aHi, long aLo, long bHi, long bLo, int max) {
+        var diff = aHi ^ bHi;
+        if (diff != 0) {
+            return Math.min(Long.numberOfLeadingZeros(diff), max);
+        }
+        diff = aLo ^ bLo;
+        return diff != 0 ? Math.min(64 + Long.numberOfLeadingZeros(diff), max) : max;
+    }
+
+    private static long maskHi(int length) {
+        return length >= 64 ? -1L : length == 0 ? 0 : -1L << (64 - length);
+    }
+
+    private static long maskLo(int length) {
+        return length <= 64 ? 0 : length == 128 ? -1L : -1L << (128 - length);
+    }
+}
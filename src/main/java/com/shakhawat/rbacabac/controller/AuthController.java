@@ -58,11 +58,13 @@ public class AuthController {
     }
 
     @PostMapping("/logout")
-    public ResponseEntity<ApiResponse<Void>> logout(@RequestBody(required = false) RefreshTokenRequest request) {
+    public ResponseEntity<ApiResponse<Void>> logout(
+            @RequestBody(required = false) RefreshTokenRequest request,
+            HttpServletRequest httpRequest) {
         log.info("POST /api/auth/logout - Logout request");
 
         var refreshToken = request != null ? request.getRefreshToken() : null;
-        authService.logout(refreshToken);
+        authService.logout(refreshToken, httpRequest);
 
         return ResponseEntity.ok(
                 ApiResponse.<Void>builder()
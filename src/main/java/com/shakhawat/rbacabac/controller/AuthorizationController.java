@@ -0,0 +1,57 @@
+package com.shakhawat.rbacabac.controller;
+
+import com.shakhawat.rbacabac.dto.ApiResponse;
+import com.shakhawat.rbacabac.dto.AuthorizationDecisionRequest;
+import com.shakhawat.rbacabac.dto.AuthorizationDecisionResponse;
+import com.shakhawat.rbacabac.exception.InvalidRequestException;
+import com.shakhawat.rbacabac.security.EmployeeAction;
+import com.shakhawat.rbacabac.security.EmployeePermissionEvaluator;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/authz")
+@RequiredArgsConstructor
+public class AuthorizationController {
+
+    private static final String EMPLOYEE = "employee";
+
+    private final EmployeePermissionEvaluator permissionEvaluator;
+
+    @PostMapping("/decisions")
+    public ResponseEntity<ApiResponse<AuthorizationDecisionResponse>> decide(
+            @Valid @RequestBody AuthorizationDecisionRequest request) {
+        var queries = request.getQueries();
+        log.debug("POST /api/authz/decisions - {} queries", queries.size());
+
+        var actions = new EmployeeAction[queries.size()];
+        var resourceIds = new Long[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            var query = queries.get(i);
+            if (query.getResourceType() != null && !EMPLOYEE.equalsIgnoreCase(query.getResourceType())) {
+                throw new InvalidRequestException("Unsupported resource type: " + query.getResourceType());
+            }
+            actions[i] = query.getAction();
+            resourceIds[i] = query.getResourceId();
+        }
+
+        var decisions = permissionEvaluator.checkAll(
+                SecurityContextHolder.getContext().getAuthentication(), actions, resourceIds);
+
+        return ResponseEntity.ok(
+                ApiResponse.<AuthorizationDecisionResponse>builder()
+                        .success(true)
+                        .message("Decisions evaluated")
+                        .data(AuthorizationDecisionResponse.builder().decisions(decisions).build())
+                        .timestamp(LocalDateTime.now().toString())
+                        .build()
+        );
+    }
+}
@@ -0,0 +1,38 @@
+package com.shakhawat.rbacabac.controller;
+
+import com.shakhawat.rbacabac.config.HeavyHitterTracker;
+import com.shakhawat.rbacabac.dto.ApiResponse;
+import com.shakhawat.rbacabac.dto.HeavyHitterReport;
+import com.shakhawat.rbacabac.security.IsAdmin;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/admin/heavy-hitters")
+@RequiredArgsConstructor
+@IsAdmin
+public class HeavyHitterController {
+
+    private final HeavyHitterTracker heavyHitterTracker;
+
+    @GetMapping
+    public ResponseEntity<ApiResponse<HeavyHitterReport>> getHeavyHitters() {
+        log.info("GET /api/admin/heavy-hitters - Get top rate-limited clients");
+
+        return ResponseEntity.ok(
+                ApiResponse.<HeavyHitterReport>builder()
+                        .success(true)
+                        .message("Heavy hitters retrieved successfully")
+                        .data(heavyHitterTracker.report())
+                        .timestamp(LocalDateTime.now().toString())
+                        .build()
+        );
+    }
+}
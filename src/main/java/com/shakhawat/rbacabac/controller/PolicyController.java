@@ -0,0 +1,54 @@
+package com.shakhawat.rbacabac.controller;
+
+import com.shakhawat.rbacabac.dto.ApiResponse;
+import com.shakhawat.rbacabac.policy.PolicyDocument;
+import com.shakhawat.rbacabac.policy.PolicyEngine;
+import com.shakhawat.rbacabac.security.IsAdmin;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/admin/policies")
+@RequiredArgsConstructor
+@IsAdmin
+public class PolicyController {
+
+    private final PolicyEngine policyEngine;
+
+    @GetMapping
+    public ResponseEntity<ApiResponse<PolicyDocument>> getPolicy() {
+        log.info("GET /api/admin/policies - Get active policy");
+
+        var policy = policyEngine.current();
+
+        return ResponseEntity.ok(
+                ApiResponse.<PolicyDocument>builder()
+                        .success(true)
+                        .message("Policy generation " + policy.generation())
+                        .data(policy.source())
+                        .timestamp(LocalDateTime.now().toString())
+                        .build()
+        );
+    }
+
+    @PutMapping
+    public ResponseEntity<ApiResponse<PolicyDocument>> replacePolicy(@RequestBody PolicyDocument document) {
+        log.info("PUT /api/admin/policies - Replace policy");
+
+        var policy = policyEngine.replace(document);
+
+        return ResponseEntity.ok(
+                ApiResponse.<PolicyDocument>builder()
+                        .success(true)
+                        .message("Policy replaced, generation " + policy.generation())
+                        .data(policy.source())
+                        .timestamp(LocalDateTime.now().toString())
+                        .build()
+        );
+    }
+}
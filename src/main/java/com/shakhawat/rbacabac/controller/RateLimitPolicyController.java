@@ -0,0 +1,55 @@
+package com.shakhawat.rbacabac.controller;
+
+import com.shakhawat.rbacabac.config.RateLimitRule;
+import com.shakhawat.rbacabac.config.RateLimitingService;
+import com.shakhawat.rbacabac.dto.ApiResponse;
+import com.shakhawat.rbacabac.security.IsAdmin;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/admin/rate-limit-policies")
+@RequiredArgsConstructor
+@IsAdmin
+public class RateLimitPolicyController {
+
+    private final RateLimitingService rateLimitingService;
+
+    @GetMapping
+    public ResponseEntity<ApiResponse<List<RateLimitRule>>> getPolicies() {
+        log.info("GET /api/admin/rate-limit-policies - Get active rate limit policies");
+
+        var matcher = rateLimitingService.current();
+
+        return ResponseEntity.ok(
+                ApiResponse.<List<RateLimitRule>>builder()
+                        .success(true)
+                        .message("Rate limit policy generation " + matcher.generation())
+                        .data(matcher.source())
+                        .timestamp(LocalDateTime.now().toString())
+                        .build()
+        );
+    }
+
+    @PutMapping
+    public ResponseEntity<ApiResponse<List<RateLimitRule>>> replacePolicies(@RequestBody List<RateLimitRule> rules) {
+        log.info("PUT /api/admin/rate-limit-policies - Replace rate limit policies");
+
+        var matcher = rateLimitingService.replace(rules);
+
+        return ResponseEntity.ok(
+                ApiResponse.<List<RateLimitRule>>builder()
+                        .success(true)
+                        .message("Rate limit policies replaced, generation " + matcher.generation())
+                        .data(matcher.source())
+                        .timestamp(LocalDateTime.now().toString())
+                        .build()
+        );
+    }
+}
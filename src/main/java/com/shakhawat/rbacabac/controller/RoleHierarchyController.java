@@ -0,0 +1,55 @@
+package com.shakhawat.rbacabac.controller;
+
+import com.shakhawat.rbacabac.dto.ApiResponse;
+import com.shakhawat.rbacabac.entity.RoleType;
+import com.shakhawat.rbacabac.security.AuthorizationSnapshotService;
+import com.shakhawat.rbacabac.security.IsAdmin;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/admin/role-hierarchy")
+@RequiredArgsConstructor
+@IsAdmin
+public class RoleHierarchyController {
+
+    private final AuthorizationSnapshotService authorizationSnapshots;
+
+    @GetMapping
+    public ResponseEntity<ApiResponse<Map<RoleType, RoleType>>> getHierarchy() {
+        log.info("GET /api/admin/role-hierarchy - Get role hierarchy");
+
+        return ResponseEntity.ok(
+                ApiResponse.<Map<RoleType, RoleType>>builder()
+                        .success(true)
+                        .message("Role hierarchy retrieved successfully")
+                        .data(authorizationSnapshots.current().hierarchy())
+                        .timestamp(LocalDateTime.now().toString())
+                        .build()
+        );
+    }
+
+    @PutMapping("/{role}")
+    public ResponseEntity<ApiResponse<Map<RoleType, RoleType>>> updateInheritance(
+            @PathVariable RoleType role,
+            @RequestParam(required = false) RoleType inherits) {
+        log.info("PUT /api/admin/role-hierarchy/{} - Inherit {}", role, inherits);
+
+        authorizationSnapshots.updateInheritance(role, inherits);
+
+        return ResponseEntity.ok(
+                ApiResponse.<Map<RoleType, RoleType>>builder()
+                        .success(true)
+                        .message("Role hierarchy updated successfully")
+                        .data(authorizationSnapshots.current().hierarchy())
+                        .timestamp(LocalDateTime.now().toString())
+                        .build()
+        );
+    }
+}
@@ -0,0 +1,56 @@
+package com.shakhawat.rbacabac.controller;
+
+import com.shakhawat.rbacabac.dto.ApiResponse;
+import com.shakhawat.rbacabac.dto.SessionRevocationRequest;
+import com.shakhawat.rbacabac.dto.SessionRevocationStatus;
+import com.shakhawat.rbacabac.security.IsAdmin;
+import com.shakhawat.rbacabac.service.SessionRevocationService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/admin/session-revocations")
+@RequiredArgsConstructor
+@IsAdmin
+public class SessionRevocationController {
+
+    private final SessionRevocationService sessionRevocationService;
+
+    @PostMapping
+    public ResponseEntity<ApiResponse<SessionRevocationStatus>> revokeSessions(
+            @Valid @RequestBody SessionRevocationRequest request) {
+        log.info("POST /api/admin/session-revocations - Revoke sessions");
+
+        var status = sessionRevocationService.start(request);
+
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(
+                ApiResponse.<SessionRevocationStatus>builder()
+                        .success(true)
+                        .message("Session revocation started")
+                        .data(status)
+                        .timestamp(LocalDateTime.now().toString())
+                        .build()
+        );
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<ApiResponse<SessionRevocationStatus>> getStatus(@PathVariable String jobId) {
+        log.info("GET /api/admin/session-revocations/{} - Get revocation progress", jobId);
+
+        return ResponseEntity.ok(
+                ApiResponse.<SessionRevocationStatus>builder()
+                        .success(true)
+                        .message("Session revocation status retrieved successfully")
+                        .data(sessionRevocationService.status(jobId))
+                        .timestamp(LocalDateTime.now().toString())
+                        .build()
+        );
+    }
+}
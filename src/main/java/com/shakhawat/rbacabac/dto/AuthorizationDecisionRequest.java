@@ -0,0 +1,26 @@
+package com.shakhawat.rbacabac.dto;
+
+import com.shakhawat.rbacabac.security.EmployeeAction;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.*;
+import lombok.*;
+import java.util.List;
+
+@Data @Builder @NoArgsConstructor @AllArgsConstructor
+public class AuthorizationDecisionRequest {
+    @NotEmpty(message = "At least one query is required")
+    @Size(max = 1000, message = "At most 1000 queries per request")
+    private List<@Valid @NotNull Query> queries;
+
+    @Data @Builder @NoArgsConstructor @AllArgsConstructor
+    public static class Query {
+        @NotNull(message = "Action is required")
+        private EmployeeAction action;
+
+        @Builder.Default
+        private String resourceType = "employee";
+
+        @NotNull(message = "Resource id is required")
+        private Long resourceId;
+    }
+}
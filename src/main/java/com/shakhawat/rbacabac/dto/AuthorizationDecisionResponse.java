@@ -0,0 +1,9 @@
+package com.shakhawat.rbacabac.dto;
+
+import lombok.*;
+
+// decisions[i] answers queries[i] of the request
+@Data @Builder @NoArgsConstructor @AllArgsConstructor
+public class AuthorizationDecisionResponse {
+    private boolean[] decisions;
+}
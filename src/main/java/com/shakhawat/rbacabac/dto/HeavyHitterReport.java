@@ -0,0 +1,24 @@
+package com.shakhawat.rbacabac.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Data @Builder @NoArgsConstructor @AllArgsConstructor
+public class HeavyHitterReport {
+
+    @Data @Builder @NoArgsConstructor @AllArgsConstructor
+    public static class HeavyHitter {
+        private String client;
+        private long requests;
+        private long rejections;
+        private boolean escalated;
+    }
+
+    private String window;
+    private String currentWindowStartedAt;
+    private List<HeavyHitter> current;
+    private String previousWindowStartedAt;
+    private List<HeavyHitter> previous;
+    private List<String> escalatedClients;
+}
@@ -0,0 +1,16 @@
+package com.shakhawat.rbacabac.dto;
+
+import com.shakhawat.rbacabac.entity.RoleType;
+import jakarta.validation.constraints.*;
+import lombok.*;
+import java.util.List;
+
+// Selectors are combined with AND; at least one is required
+@Data @Builder @NoArgsConstructor @AllArgsConstructor
+public class SessionRevocationRequest {
+    private String department;
+    private RoleType role;
+
+    @Size(max = 100000, message = "At most 100000 employee ids per request")
+    private List<@NotNull Long> employeeIds;
+}
@@ -0,0 +1,17 @@
+package com.shakhawat.rbacabac.dto;
+
+import lombok.*;
+
+@Data @Builder @NoArgsConstructor @AllArgsConstructor
+public class SessionRevocationStatus {
+    public enum State { RUNNING, COMPLETED, FAILED }
+
+    private String jobId;
+    private State state;
+    private long matchedEmployees;
+    private long processedEmployees;
+    private long revokedTokens;
+    private String startedAt;
+    private String finishedAt;
+    private String error;
+}
@@ -0,0 +1,23 @@
+package com.shakhawat.rbacabac.entity;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Permissions seeded into {@link Permission}. The order is part of the token format (see
+ * {@code AuthorityRegistry}): only append new constants.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum PermissionType {
+    READ_EMPLOYEE("EMPLOYEE", "READ", "Read employee information"),
+    CREATE_EMPLOYEE("EMPLOYEE", "CREATE", "Create new employee"),
+    UPDATE_EMPLOYEE("EMPLOYEE", "UPDATE", "Update employee information"),
+    DELETE_EMPLOYEE("EMPLOYEE", "DELETE", "Delete employee"),
+    READ_ROLE("ROLE", "READ", "Read role information"),
+    MANAGE_ROLE("ROLE", "MANAGE", "Manage roles and permissions");
+
+    private final String resource;
+    private final String action;
+    private final String description;
+}
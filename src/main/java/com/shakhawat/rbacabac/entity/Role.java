@@ -20,7 +20,12 @@ public class Role {
 
     private String description;
 
-    @ManyToMany(fetch = FetchType.EAGER)
+    // The role directly below this one; its permissions are inherited transitively
+    @Enumerated(EnumType.STRING)
+    @Column(name = "inherits")
+    private RoleType inherits;
+
+    @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(
             name = "role_permissions",
             joinColumns = @JoinColumn(name = "role_id"),
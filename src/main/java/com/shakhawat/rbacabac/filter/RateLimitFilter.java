@@ -1,115 +1,174 @@
 package com.shakhawat.rbacabac.filter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shakhawat.rbacabac.config.HeavyHitterTracker;
 import com.shakhawat.rbacabac.config.RateLimitingService;
-import com.shakhawat.rbacabac.config.RateLimitingService.RateLimitType;
+import com.shakhawat.rbacabac.config.RateLimitingService.ClientKey;
+import com.shakhawat.rbacabac.config.SubnetRateLimiter;
+import com.shakhawat.rbacabac.security.AuthoritySet;
+import com.shakhawat.rbacabac.security.ClientIpResolver;
+import com.shakhawat.rbacabac.security.UserPrincipal;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
+import io.github.bucket4j.ConsumptionProbe;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
 
 import java.io.IOException;
-import java.time.Duration;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.Map;
-
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs after {@code JwtAuthenticationFilter}, so an authenticated request is limited per user
+ * (taken from the already verified principal) and anything else per client address. Which limit
+ * applies is decided by the policies in {@link RateLimitingService}; requests no policy matches pass.
+ * Anonymous requests must also pass the {@link SubnetRateLimiter} levels of their address, and
+ * clients escalated by the {@link HeavyHitterTracker} the escalation policy as well.
+ */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class RateLimitFilter extends OncePerRequestFilter {
 
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final byte[] TIMESTAMP_SUFFIX = "\"}".getBytes(StandardCharsets.UTF_8);
+    private static final int MAX_CACHED_PREFIXES = 1024;
+
     private final RateLimitingService rateLimitingService;
+    private final HeavyHitterTracker heavyHitters;
+    private final SubnetRateLimiter subnetRateLimiter;
+    private final ClientIpResolver clientIpResolver;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    // The 429 body up to the timestamp value, serialized once per limit description
+    private final Map<String, byte[]> rejectionPrefixes = new ConcurrentHashMap<>();
+
+    public RateLimitFilter(RateLimitingService rateLimitingService, HeavyHitterTracker heavyHitters,
+                           SubnetRateLimiter subnetRateLimiter, ClientIpResolver clientIpResolver) {
+        this.rateLimitingService = rateLimitingService;
+        this.heavyHitters = heavyHitters;
+        this.subnetRateLimiter = subnetRateLimiter;
+        this.clientIpResolver = clientIpResolver;
+        // Match the path the handler mapping sees, so %2F-style encodings or ;jsessionid do not dodge a policy
+        urlPathHelper.setUrlDecode(true);
+        urlPathHelper.setRemoveSemicolonContent(true);
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
                                     HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
 
-        String clientId = getClientIdentifier(request);
-        String path = request.getRequestURI();
+        String path = urlPathHelper.getPathWithinApplication(request);
         String method = request.getMethod();
 
-        RateLimitType limitType = determineLimitType(path, method);
-
-        if (!rateLimitingService.tryConsume(clientId, limitType)) {
-            log.warn("Rate limit exceeded for client: {} on path: {} [{}]", clientId, path, method);
-            sendRateLimitError(response, clientId, limitType);
+        var authentication = SecurityContextHolder.getContext().getAuthentication();
+        var policy = rateLimitingService.select(path, method, AuthoritySet.from(authentication));
+        if (policy == null) {
+            filterChain.doFilter(request, response);
             return;
         }
 
-        // Add rate limit headers
-        long remainingTokens = rateLimitingService.getAvailableTokens(clientId, limitType);
-        response.addHeader("X-RateLimit-Limit", String.valueOf(limitType.getCapacity()));
-        response.addHeader("X-RateLimit-Remaining", String.valueOf(remainingTokens));
-
-        filterChain.doFilter(request, response);
-    }
-
-    private String getClientIdentifier(HttpServletRequest request) {
-        var principal = request.getUserPrincipal();
-        if (principal != null && principal.getName() != null) {
-            return "user:" + principal.getName();
+        var clientId = getClientIdentifier(request, authentication);
+        var escalation = heavyHitters.isEscalated(clientId) ? rateLimitingService.escalationPolicy() : null;
+
+        var limitId = policy.id();
+        var limit = policy.limit();
+        var details = policy.description();
+        var subnetRejection = clientId.authenticated() ? null : subnetRateLimiter.tryConsume(clientId.id());
+        ConsumptionProbe probe;
+        if (subnetRejection != null) {
+            limitId = subnetRejection.id();
+            limit = subnetRejection.limit();
+            details = subnetRejection.description();
+            probe = subnetRejection.probe();
+        } else if (escalation != null) {
+            // An extra limit on top of the route's, not a replacement: both have to admit the request.
+            // The stricter escalation bucket goes first, so its rejections do not drain the route bucket.
+            var escalated = rateLimitingService.tryConsumeAndReturnRemaining(clientId, escalation);
+            probe = escalated.isConsumed() ? rateLimitingService.tryConsumeAndReturnRemaining(clientId, policy) : escalated;
+            // Headers report whichever limit is closer to rejecting
+            if (probe.isConsumed() && escalated.getRemainingTokens() < probe.getRemainingTokens()) {
+                probe = escalated;
+            }
+            if (probe == escalated) {
+                limitId = escalation.id();
+                limit = escalation.limit();
+                details = escalation.description();
+            }
+        } else {
+            probe = rateLimitingService.tryConsumeAndReturnRemaining(clientId, policy);
         }
+        heavyHitters.record(clientId, !probe.isConsumed());
 
-        String xfHeader = request.getHeader("X-Forwarded-For");
-        if (xfHeader != null && !xfHeader.isBlank()) {
-            return "ip:" + xfHeader.split(",")[0].trim();
+        response.addHeader("X-RateLimit-Limit", Long.toString(limit));
+        response.addHeader("X-RateLimit-Remaining", Long.toString(probe.getRemainingTokens()));
+        response.addHeader("X-RateLimit-Reset", Long.toString(toSeconds(probe.getNanosToWaitForReset())));
+
+        if (!probe.isConsumed()) {
+            log.warn("Rate limit {} exceeded for client: {} on path: {} [{}]", limitId, clientId, path, method);
+            response.addHeader("Retry-After", Long.toString(Math.max(1, toSeconds(probe.getNanosToWaitForRefill()))));
+            sendRateLimitError(response, details);
+            return;
         }
 
-        return "ip:" + request.getRemoteAddr();
+        filterChain.doFilter(request, response);
     }
 
-    private RateLimitType determineLimitType(String path, String method) {
-        if (path != null && path.contains("/auth/login")) {
-            return RateLimitType.LOGIN;
+    private ClientKey getClientIdentifier(HttpServletRequest request, Authentication authentication) {
+        if (authentication != null && authentication.getPrincipal() instanceof UserPrincipal principal) {
+            return ClientKey.user(Long.toString(principal.getId()));
         }
 
-        return switch (method) {
-            case "POST", "PUT", "DELETE", "PATCH" -> RateLimitType.API_WRITE;
-            case "GET" -> RateLimitType.API_READ;
-            default -> RateLimitType.API_GENERAL;
-        };
+        return ClientKey.ip(clientIpResolver.resolve(request));
     }
 
     private void sendRateLimitError(HttpServletResponse response,
-                                    String clientId,
-                                    RateLimitType limitType) throws IOException {
+                                    String details) throws IOException {
+
+        var prefix = rejectionPrefixes.get(details);
+        if (prefix == null) {
+            if (rejectionPrefixes.size() >= MAX_CACHED_PREFIXES) {
+                rejectionPrefixes.clear();
+            }
+            prefix = rejectionPrefix(details);
+            rejectionPrefixes.put(details, prefix);
+        }
+        var timestamp = LocalDateTime.now().toString().getBytes(StandardCharsets.US_ASCII);
 
         response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
         response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(prefix.length + timestamp.length + TIMESTAMP_SUFFIX.length);
 
-        Map<String, Object> errorResponse = Map.of(
-                "success", false,
-                "message", "Rate limit exceeded. Please try again later.",
-                "details", String.format("Limit: %d requests per %s",
-                        limitType.getCapacity(),
-                        formatDuration(limitType.getRefillDuration())),
-                "timestamp", LocalDateTime.now().toString()
-        );
-
-        response.getWriter().write(objectMapper.writeValueAsString(errorResponse));
+        var out = response.getOutputStream();
+        out.write(prefix);
+        out.write(timestamp);
+        out.write(TIMESTAMP_SUFFIX);
     }
 
-    private String formatDuration(Duration duration) {
-        if (duration == null) return "unknown";
+    private byte[] rejectionPrefix(String details) throws IOException {
+        Map<String, Object> errorResponse = new LinkedHashMap<>();
+        errorResponse.put("success", false);
+        errorResponse.put("message", "Rate limit exceeded. Please try again later.");
+        errorResponse.put("details", details);
 
-        long seconds = duration.getSeconds();
+        // Drop the closing brace so the per-request timestamp can be appended
+        var json = objectMapper.writeValueAsString(errorResponse);
+        return (json.substring(0, json.length() - 1) + ",\"timestamp\":\"").getBytes(StandardCharsets.UTF_8);
+    }
 
-        if (seconds < 60) {
-            return seconds + " second" + (seconds != 1 ? "s" : "");
-        } else if (seconds < 3600) {
-            long minutes = seconds / 60;
-            return minutes + " minute" + (minutes != 1 ? "s" : "");
-        } else {
-            long hours = seconds / 3600;
-            return hours + " hour" + (hours != 1 ? "s" : "");
-        }
+    private static long toSeconds(long nanos) {
+        return (nanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND;
     }
 }
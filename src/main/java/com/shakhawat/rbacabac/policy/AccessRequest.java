@@ -0,0 +1,22 @@
+package com.shakhawat.rbacabac.policy;
+
+import com.shakhawat.rbacabac.security.AuthoritySet;
+import com.shakhawat.rbacabac.security.EmployeeAction;
+import com.shakhawat.rbacabac.security.UserPrincipal;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Everything a rule can look at. {@code resource} and the environment fields are only
+ * filled in when the compiled policy for the action actually reads them.
+ */
+public record AccessRequest(
+        UserPrincipal subject,
+        AuthoritySet authorities,
+        EmployeeAction action,
+        Long resourceId,
+        EmployeeAttributes resource,
+        ZonedDateTime time,
+        byte[] clientAddress
+) {
+}
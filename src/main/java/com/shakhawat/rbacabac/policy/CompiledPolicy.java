@@ -0,0 +1,82 @@
+package com.shakhawat.rbacabac.policy;
+
+import com.shakhawat.rbacabac.security.EmployeeAction;
+
+/**
+ * Immutable result of {@link PolicyCompiler}: for every action a flat, ordered array of rules whose
+ * conditions are plain field comparisons. Evaluation is first-applicable: the first rule whose
+ * conditions all hold decides, otherwise the default effect applies.
+ */
+public final class CompiledPolicy {
+
+    @FunctionalInterface
+    interface Condition {
+        boolean test(AccessRequest request);
+    }
+
+    record CompiledRule(PolicyDecision decision, Condition[] conditions) {
+
+        boolean matches(AccessRequest request) {
+            for (var condition : conditions) {
+                if (!condition.test(request)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final long generation;
+    private final PolicyDocument source;
+    private final CompiledRule[][] rulesByAction;
+    private final boolean[] needsResource;
+    private final boolean[] needsEnvironment;
+    private final boolean[] cacheable;
+    private final PolicyDecision defaultDecision;
+
+    CompiledPolicy(long generation,
+                   PolicyDocument source,
+                   CompiledRule[][] rulesByAction,
+                   boolean[] needsResource,
+                   boolean[] needsEnvironment,
+                   boolean[] cacheable,
+                   boolean defaultPermit) {
+        this.generation = generation;
+        this.source = source;
+        this.rulesByAction = rulesByAction;
+        this.needsResource = needsResource;
+        this.needsEnvironment = needsEnvironment;
+        this.cacheable = cacheable;
+        this.defaultDecision = new PolicyDecision(defaultPermit, PolicyDecision.DEFAULT_POLICY_ID);
+    }
+
+    public PolicyDecision evaluate(AccessRequest request) {
+        for (var rule : rulesByAction[request.action().ordinal()]) {
+            if (rule.matches(request)) {
+                return rule.decision();
+            }
+        }
+        return defaultDecision;
+    }
+
+    public long generation() {
+        return generation;
+    }
+
+    public PolicyDocument source() {
+        return source.copy();
+    }
+
+    public boolean needsResource(EmployeeAction action) {
+        return needsResource[action.ordinal()];
+    }
+
+    public boolean needsEnvironment(EmployeeAction action) {
+        return needsEnvironment[action.ordinal()];
+    }
+
+    // Decisions only depend on the subject, the resource and this generation, never on time or client address
+    public boolean isCacheable(EmployeeAction action) {
+        return cacheable[action.ordinal()];
+    }
+}
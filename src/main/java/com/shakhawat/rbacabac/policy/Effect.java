@@ -0,0 +1,6 @@
+package com.shakhawat.rbacabac.policy;
+
+public enum Effect {
+    PERMIT,
+    DENY
+}
@@ -0,0 +1,5 @@
+package com.shakhawat.rbacabac.policy;
+
+// Resource attributes of a target employee, loaded without the role and permission joins
+public record EmployeeAttributes(Long id, String department, String position, Boolean active, Double salary) {
+}
@@ -0,0 +1,225 @@
+package com.shakhawat.rbacabac.policy;
+
+import com.shakhawat.rbacabac.entity.RoleType;
+import com.shakhawat.rbacabac.exception.InvalidRequestException;
+import com.shakhawat.rbacabac.policy.CompiledPolicy.CompiledRule;
+import com.shakhawat.rbacabac.policy.CompiledPolicy.Condition;
+import com.shakhawat.rbacabac.security.AuthorizationSnapshot;
+import com.shakhawat.rbacabac.security.EmployeeAction;
+import com.shakhawat.rbacabac.util.CidrBlock;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Turns a {@link PolicyDocument} into a {@link CompiledPolicy}. All parsing, validation and lookups
+ * (CIDR blocks, time windows) happen here, so the conditions only compare fields. Role conditions are
+ * the exception: the hierarchy can change at runtime, so they read it from the current snapshot.
+ */
+final class PolicyCompiler {
+
+    private PolicyCompiler() {
+    }
+
+    static CompiledPolicy compile(PolicyDocument source, long generation, Supplier<AuthorizationSnapshot> snapshots) {
+        // Compiled from a private copy, so later changes to the caller's document do not leak in
+        var document = source.copy();
+        var actions = EmployeeAction.values();
+        var rules = document.getRules() != null ? document.getRules() : List.<PolicyRule>of();
+
+        var perAction = new ArrayList<List<CompiledRule>>();
+        for (var ignored : actions) {
+            perAction.add(new ArrayList<>());
+        }
+        var needsResource = new boolean[actions.length];
+        var needsEnvironment = new boolean[actions.length];
+        var cacheable = new boolean[actions.length];
+        Arrays.fill(cacheable, document.isCacheable());
+
+        for (int i = 0; i < rules.size(); i++) {
+            var rule = rules.get(i);
+            var id = rule.getId() != null && !rule.getId().isBlank() ? rule.getId() : "rule-" + (i + 1);
+
+            var conditions = new ArrayList<Condition>();
+            compileSubject(rule.getSubject(), snapshots, conditions);
+            var readsResource = compileResource(rule.getResource(), conditions);
+            var readsEnvironment = compileEnvironment(id, rule.getEnvironment(), conditions);
+
+            var compiled = new CompiledRule(new PolicyDecision(rule.getEffect() != Effect.DENY, id),
+                    conditions.toArray(Condition[]::new));
+            var ruleActions = rule.getActions() == null || rule.getActions().isEmpty()
+                    ? List.of(actions)
+                    : rule.getActions();
+            for (var action : ruleActions) {
+                perAction.get(action.ordinal()).add(compiled);
+                needsResource[action.ordinal()] |= readsResource;
+                needsEnvironment[action.ordinal()] |= readsEnvironment;
+                cacheable[action.ordinal()] &= rule.isCacheable() && !readsEnvironment;
+            }
+        }
+
+        var rulesByAction = new CompiledRule[actions.length][];
+        for (var action : actions) {
+            rulesByAction[action.ordinal()] = perAction.get(action.ordinal()).toArray(CompiledRule[]::new);
+        }
+
+        return new CompiledPolicy(generation, document, rulesByAction, needsResource, needsEnvironment,
+                cacheable, document.getDefaultEffect() == Effect.PERMIT);
+    }
+
+    private static void compileSubject(PolicyRule.SubjectMatch subject, Supplier<AuthorizationSnapshot> snapshots,
+                                       List<Condition> conditions) {
+        if (subject == null) {
+            return;
+        }
+        if (isSet(subject.getRoles())) {
+            // A role matches itself and every role that inherits it, as in @RequiresRole(orAbove = true)
+            var roles = subject.getRoles().stream().distinct().toArray(RoleType[]::new);
+            if (roles.length == 1) {
+                var role = roles[0];
+                conditions.add(request -> request.authorities().hasAny(snapshots.get().atLeast(role)));
+            } else {
+                conditions.add(request -> {
+                    var snapshot = snapshots.get();
+                    long mask = 0;
+                    for (var role : roles) {
+                        mask |= snapshot.atLeast(role);
+                    }
+                    return request.authorities().hasAny(mask);
+                });
+            }
+        }
+        if (isSet(subject.getDepartments())) {
+            var departments = subject.getDepartments().toArray(String[]::new);
+            conditions.add(request -> oneOf(request.subject().getDepartment(), departments));
+        }
+        if (isSet(subject.getPositions())) {
+            var positions = subject.getPositions().toArray(String[]::new);
+            conditions.add(request -> oneOf(request.subject().getPosition(), positions));
+        }
+    }
+
+    private static boolean compileResource(PolicyRule.ResourceMatch resource, List<Condition> conditions) {
+        if (resource == null) {
+            return false;
+        }
+        var readsAttributes = false;
+
+        if (resource.getSelf() != null) {
+            boolean self = resource.getSelf();
+            conditions.add(request -> request.subject().getId().equals(request.resourceId()) == self);
+        }
+        if (resource.getSameDepartment() != null) {
+            boolean same = resource.getSameDepartment();
+            conditions.add(request -> request.resource() != null
+                    && request.subject().getDepartment() != null
+                    && request.subject().getDepartment().equals(request.resource().department()) == same);
+            readsAttributes = true;
+        }
+        if (resource.getActive() != null) {
+            var active = resource.getActive();
+            conditions.add(request -> request.resource() != null && active.equals(request.resource().active()));
+            readsAttributes = true;
+        }
+        if (isSet(resource.getDepartments())) {
+            var departments = resource.getDepartments().toArray(String[]::new);
+            conditions.add(request -> request.resource() != null && oneOf(request.resource().department(), departments));
+            readsAttributes = true;
+        }
+        if (resource.getSalaryMin() != null) {
+            double min = resource.getSalaryMin();
+            conditions.add(request -> request.resource() != null
+                    && request.resource().salary() != null && request.resource().salary() >= min);
+            readsAttributes = true;
+        }
+        if (resource.getSalaryMax() != null) {
+            double max = resource.getSalaryMax();
+            conditions.add(request -> request.resource() != null
+                    && request.resource().salary() != null && request.resource().salary() <= max);
+            readsAttributes = true;
+        }
+        return readsAttributes;
+    }
+
+    private static boolean compileEnvironment(String ruleId, PolicyRule.EnvironmentMatch environment,
+                                              List<Condition> conditions) {
+        if (environment == null) {
+            return false;
+        }
+        var readsEnvironment = false;
+
+        if (environment.getHours() != null && !environment.getHours().isBlank()) {
+            var window = parseHours(ruleId, environment.getHours());
+            var from = window[0];
+            var to = window[1];
+            // A window such as 22:00-06:00 wraps around midnight
+            conditions.add(from.isAfter(to)
+                    ? request -> !request.time().toLocalTime().isBefore(from) || request.time().toLocalTime().isBefore(to)
+                    : request -> !request.time().toLocalTime().isBefore(from) && request.time().toLocalTime().isBefore(to));
+            readsEnvironment = true;
+        }
+        if (isSet(environment.getDays())) {
+            var allowed = new boolean[DayOfWeek.values().length];
+            for (var day : environment.getDays()) {
+                allowed[day.ordinal()] = true;
+            }
+            conditions.add(request -> allowed[request.time().getDayOfWeek().ordinal()]);
+            readsEnvironment = true;
+        }
+        if (isSet(environment.getClientCidrs())) {
+            CidrBlock[] blocks;
+            try {
+                blocks = environment.getClientCidrs().stream().map(CidrBlock::parse).toArray(CidrBlock[]::new);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidRequestException("Rule " + ruleId + ": " + e.getMessage());
+            }
+            conditions.add(request -> {
+                if (request.clientAddress() == null) {
+                    return false;
+                }
+                for (var block : blocks) {
+                    if (block.contains(request.clientAddress())) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+            readsEnvironment = true;
+        }
+        return readsEnvironment;
+    }
+
+    private static LocalTime[] parseHours(String ruleId, String hours) {
+        var parts = hours.split("-");
+        try {
+            if (parts.length == 2) {
+                return new LocalTime[]{LocalTime.parse(parts[0].trim()), LocalTime.parse(parts[1].trim())};
+            }
+        } catch (DateTimeParseException e) {
+            // reported below
+        }
+        throw new InvalidRequestException("Rule " + ruleId + ": hours must look like 08:00-18:00, got " + hours);
+    }
+
+    private static boolean oneOf(String value, String[] candidates) {
+        if (value == null) {
+            return false;
+        }
+        for (var candidate : candidates) {
+            if (Objects.equals(value, candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSet(List<?> values) {
+        return values != null && !values.isEmpty();
+    }
+}
@@ -0,0 +1,15 @@
+package com.shakhawat.rbacabac.policy;
+
+public record PolicyDecision(boolean permitted, String policyId) {
+
+    public static final String DEFAULT_POLICY_ID = "default";
+    public static final String BUILTIN_POLICY_ID = "builtin";
+
+    // Decisions of the hard-coded evaluator, used when the policy engine is disabled
+    public static final PolicyDecision BUILTIN_PERMIT = new PolicyDecision(true, BUILTIN_POLICY_ID);
+    public static final PolicyDecision BUILTIN_DENY = new PolicyDecision(false, BUILTIN_POLICY_ID);
+
+    public static PolicyDecision builtin(boolean permitted) {
+        return permitted ? BUILTIN_PERMIT : BUILTIN_DENY;
+    }
+}
@@ -0,0 +1,21 @@
+package com.shakhawat.rbacabac.policy;
+
+import lombok.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Data @NoArgsConstructor @AllArgsConstructor
+public class PolicyDocument {
+    private Effect defaultEffect = Effect.DENY;
+    private List<PolicyRule> rules = new ArrayList<>();
+    private boolean cacheable = true;
+
+    // Deep copy, so a document handed out or taken in cannot change a compiled policy's source
+    public PolicyDocument copy() {
+        return new PolicyDocument(defaultEffect,
+                rules != null ? rules.stream().map(PolicyRule::copy).collect(Collectors.toCollection(ArrayList::new)) : null,
+                cacheable);
+    }
+}
@@ -0,0 +1,233 @@
+package com.shakhawat.rbacabac.policy;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shakhawat.rbacabac.exception.InvalidRequestException;
+import com.shakhawat.rbacabac.repository.EmployeeRepository;
+import com.shakhawat.rbacabac.security.AuthoritySet;
+import com.shakhawat.rbacabac.security.AuthorizationSnapshotService;
+import com.shakhawat.rbacabac.security.ClientIpResolver;
+import com.shakhawat.rbacabac.security.EmployeeAction;
+import com.shakhawat.rbacabac.security.UserPrincipal;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Evaluates {@link EmployeeAction}s against the active {@link CompiledPolicy}. The policy is swapped
+ * atomically on {@link #replace}, so in-flight evaluations keep using the policy they started with.
+ * Resource attributes and environment data are only fetched when a rule for the action reads them.
+ * <p>
+ * A replaced policy is stored in {@code authorization_policy} and takes precedence over
+ * {@code authz.policy.rules} from then on. Every node polls its revision and loads a newer one,
+ * so a replacement reaches the whole cluster within {@code poll-interval} and survives restarts.
+ */
+@Slf4j
+@Component
+public class PolicyEngine {
+
+    private static final String CREATE_TABLE = """
+            CREATE TABLE IF NOT EXISTS authorization_policy (
+                id INTEGER PRIMARY KEY,
+                revision BIGINT NOT NULL,
+                document TEXT NOT NULL,
+                updated_at TIMESTAMPTZ NOT NULL
+            )""";
+    private static final String SAVE = """
+            INSERT INTO authorization_policy (id, revision, document, updated_at) VALUES (1, 1, ?, now())
+            ON CONFLICT (id) DO UPDATE
+            SET revision = authorization_policy.revision + 1, document = EXCLUDED.document, updated_at = now()
+            RETURNING revision
+            """;
+    private static final String READ_REVISION = "SELECT revision FROM authorization_policy WHERE id = 1";
+    private static final String READ = "SELECT revision, document FROM authorization_policy WHERE id = 1";
+
+    private record Stored(long revision, String document) {
+    }
+
+    private final PolicyProperties properties;
+    private final EmployeeRepository employeeRepository;
+    private final ClientIpResolver clientIpResolver;
+    private final AuthorizationSnapshotService authorizationSnapshots;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong generations = new AtomicLong();
+    private final ScheduledExecutorService poller;
+
+    private volatile CompiledPolicy policy;
+    // Revision of the stored policy in use, 0 while running on the configured one
+    private volatile long revision;
+
+    public PolicyEngine(PolicyProperties properties, EmployeeRepository employeeRepository,
+                        ClientIpResolver clientIpResolver, AuthorizationSnapshotService authorizationSnapshots,
+                        JdbcTemplate jdbcTemplate) {
+        this.properties = properties;
+        this.employeeRepository = employeeRepository;
+        this.clientIpResolver = clientIpResolver;
+        this.authorizationSnapshots = authorizationSnapshots;
+        this.jdbcTemplate = jdbcTemplate;
+        this.policy = compile(properties.toDocument());
+        this.poller = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("authorization-policy").daemon().factory());
+        log.info("Loaded authorization policy with {} rules", properties.getRules().size());
+    }
+
+    @PostConstruct
+    public void initialize() {
+        jdbcTemplate.execute(CREATE_TABLE);
+        reload();
+
+        var intervalMillis = properties.getPollInterval().toMillis();
+        poller.scheduleWithFixedDelay(this::pollQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    public PolicyDecision evaluate(UserPrincipal subject, AuthoritySet authorities, EmployeeAction action, Long resourceId) {
+        var current = policy;
+
+        EmployeeAttributes resource = null;
+        if (resourceId != null && current.needsResource(action)) {
+            resource = employeeRepository.findAttributesById(resourceId).orElse(null);
+        }
+
+        ZonedDateTime time = null;
+        byte[] clientAddress = null;
+        if (current.needsEnvironment(action)) {
+            time = ZonedDateTime.now(properties.getZone());
+            clientAddress = currentClientAddress();
+        }
+
+        return current.evaluate(new AccessRequest(subject, authorities, action, resourceId, resource, time, clientAddress));
+    }
+
+    /**
+     * Evaluates {@code actions[i]} on {@code resourceIds[i]} for one subject. Resource attributes for the
+     * whole batch come from a single query and the environment is resolved once; large batches are
+     * evaluated in parallel.
+     */
+    public PolicyDecision[] evaluateAll(UserPrincipal subject, AuthoritySet authorities,
+                                        EmployeeAction[] actions, Long[] resourceIds) {
+        var current = policy;
+        var size = actions.length;
+
+        var ids = new HashSet<Long>();
+        var needsEnvironment = false;
+        for (int i = 0; i < size; i++) {
+            if (resourceIds[i] != null && current.needsResource(actions[i])) {
+                ids.add(resourceIds[i]);
+            }
+            needsEnvironment |= current.needsEnvironment(actions[i]);
+        }
+
+        Map<Long, EmployeeAttributes> resources = Map.of();
+        if (!ids.isEmpty()) {
+            resources = new HashMap<>(ids.size() * 2);
+            for (var attributes : employeeRepository.findAttributesByIdIn(ids)) {
+                resources.put(attributes.id(), attributes);
+            }
+        }
+
+        var time = needsEnvironment ? ZonedDateTime.now(properties.getZone()) : null;
+        var clientAddress = needsEnvironment ? currentClientAddress() : null;
+
+        var loaded = resources;
+        var decisions = new PolicyDecision[size];
+        var indexes = IntStream.range(0, size);
+        if (size >= properties.getParallelThreshold()) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> decisions[i] = current.evaluate(new AccessRequest(subject, authorities, actions[i],
+                resourceIds[i], resourceIds[i] != null ? loaded.get(resourceIds[i]) : null, time, clientAddress)));
+        return decisions;
+    }
+
+    /**
+     * Compiles, stores and activates a new policy document. The document is fully validated first,
+     * so a rejected document leaves the current policy in place.
+     */
+    public synchronized CompiledPolicy replace(PolicyDocument document) {
+        var compiled = compile(document);
+        var stored = jdbcTemplate.queryForObject(SAVE, Long.class, toJson(document));
+        policy = compiled;
+        revision = stored != null ? stored : revision;
+        log.info("Replaced authorization policy (generation {}, revision {}, {} rules)", compiled.generation(), revision,
+                document.getRules() != null ? document.getRules().size() : 0);
+        return compiled;
+    }
+
+    public CompiledPolicy current() {
+        return policy;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+    }
+
+    private void pollQuietly() {
+        try {
+            var stored = jdbcTemplate.queryForList(READ_REVISION, Long.class);
+            if (!stored.isEmpty() && stored.getFirst() > revision) {
+                reload();
+            }
+        } catch (DataAccessException e) {
+            log.warn("Failed to poll the authorization policy, will retry: {}", e.getMessage());
+        }
+    }
+
+    // A stored policy that no longer compiles is skipped, the current one stays active
+    private synchronized void reload() {
+        var stored = jdbcTemplate.query(READ, (rs, rowNum) -> new Stored(rs.getLong("revision"), rs.getString("document")));
+        if (stored.isEmpty() || stored.getFirst().revision() <= revision) {
+            return;
+        }
+        var latest = stored.getFirst();
+        try {
+            var document = objectMapper.readValue(latest.document(), PolicyDocument.class);
+            policy = compile(document);
+            log.info("Loaded stored authorization policy (generation {}, revision {})", policy.generation(), latest.revision());
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.error("Stored authorization policy revision {} is invalid, keeping the current one: {}",
+                    latest.revision(), e.getMessage());
+        }
+        revision = latest.revision();
+    }
+
+    // Role conditions read the snapshot when a request is evaluated, never while compiling
+    private CompiledPolicy compile(PolicyDocument document) {
+        return PolicyCompiler.compile(document, generations.incrementAndGet(), authorizationSnapshots::current);
+    }
+
+    private String toJson(PolicyDocument document) {
+        try {
+            return objectMapper.writeValueAsString(document);
+        } catch (JsonProcessingException e) {
+            throw new InvalidRequestException("Policy document cannot be stored: " + e.getMessage());
+        }
+    }
+
+    private byte[] currentClientAddress() {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return null;
+        }
+        return clientIpResolver.resolveBytes(attributes.getRequest());
+    }
+}
@@ -0,0 +1,30 @@
+package com.shakhawat.rbacabac.policy;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "authz.policy")
+public class PolicyProperties {
+    private boolean enabled = true;
+    private ZoneId zone = ZoneId.systemDefault();
+    private Effect defaultEffect = Effect.DENY;
+    private int parallelThreshold = 512;
+    private boolean cacheable = true;
+    // How often every node checks for a policy replaced on another one
+    private Duration pollInterval = Duration.ofSeconds(5);
+    private List<PolicyRule> rules = new ArrayList<>();
+
+    public PolicyDocument toDocument() {
+        return new PolicyDocument(defaultEffect, rules, cacheable);
+    }
+}
@@ -0,0 +1,75 @@
+package com.shakhawat.rbacabac.policy;
+
+import com.shakhawat.rbacabac.entity.RoleType;
+import com.shakhawat.rbacabac.security.EmployeeAction;
+import lombok.*;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One ABAC rule as written in configuration. A rule applies when every attribute it sets matches;
+ * attributes left out are not checked.
+ * <p>
+ * {@code subject.roles} follows the role hierarchy: a rule for {@code ROLE_MANAGER} also applies to
+ * every role above it, such as an admin. The hierarchy is read when a request is evaluated.
+ */
+@Data @NoArgsConstructor @AllArgsConstructor
+public class PolicyRule {
+    private String id;
+    private Effect effect = Effect.PERMIT;
+    private List<EmployeeAction> actions = new ArrayList<>();
+    private SubjectMatch subject;
+    private ResourceMatch resource;
+    private EnvironmentMatch environment;
+    private boolean cacheable = true; // rules with environment conditions are never cached
+
+    public PolicyRule copy() {
+        return new PolicyRule(id, effect, copy(actions),
+                subject != null ? subject.copy() : null,
+                resource != null ? resource.copy() : null,
+                environment != null ? environment.copy() : null,
+                cacheable);
+    }
+
+    private static <T> List<T> copy(List<T> list) {
+        return list != null ? new ArrayList<>(list) : null;
+    }
+
+    @Data @NoArgsConstructor @AllArgsConstructor
+    public static class SubjectMatch {
+        private List<RoleType> roles;
+        private List<String> departments;
+        private List<String> positions;
+
+        public SubjectMatch copy() {
+            return new SubjectMatch(PolicyRule.copy(roles), PolicyRule.copy(departments), PolicyRule.copy(positions));
+        }
+    }
+
+    @Data @NoArgsConstructor @AllArgsConstructor
+    public static class ResourceMatch {
+        private Boolean self;
+        private Boolean sameDepartment;
+        private Boolean active;
+        private List<String> departments;
+        private Double salaryMin;
+        private Double salaryMax;
+
+        public ResourceMatch copy() {
+            return new ResourceMatch(self, sameDepartment, active, PolicyRule.copy(departments), salaryMin, salaryMax);
+        }
+    }
+
+    @Data @NoArgsConstructor @AllArgsConstructor
+    public static class EnvironmentMatch {
+        private String hours; // e.g. 08:00-18:00, in the policy zone
+        private List<DayOfWeek> days;
+        private List<String> clientCidrs;
+
+        public EnvironmentMatch copy() {
+            return new EnvironmentMatch(hours, PolicyRule.copy(days), PolicyRule.copy(clientCidrs));
+        }
+    }
+}
@@ -2,10 +2,12 @@ package com.shakhawat.rbacabac.repository;
 
 import com.shakhawat.rbacabac.entity.Employee;
 import com.shakhawat.rbacabac.entity.RoleType;
+import com.shakhawat.rbacabac.policy.EmployeeAttributes;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
 import java.util.Optional;
 import java.util.List;
 
@@ -25,4 +27,12 @@ public interface EmployeeRepository extends JpaRepository<Employee, Long> {
             "OR LOWER(e.lastName) LIKE LOWER(CONCAT('%', :search, '%')) " +
             "OR LOWER(e.email) LIKE LOWER(CONCAT('%', :search, '%'))")
     Page<Employee> searchEmployees(String search, Pageable pageable);
+
+    @Query("SELECT new com.shakhawat.rbacabac.policy.EmployeeAttributes(e.id, e.department, e.position, e.active, e.salary) " +
+            "FROM Employee e WHERE e.id = :id")
+    Optional<EmployeeAttributes> findAttributesById(Long id);
+
+    @Query("SELECT new com.shakhawat.rbacabac.policy.EmployeeAttributes(e.id, e.department, e.position, e.active, e.salary) " +
+            "FROM Employee e WHERE e.id IN :ids")
+    List<EmployeeAttributes> findAttributesByIdIn(Collection<Long> ids);
 }
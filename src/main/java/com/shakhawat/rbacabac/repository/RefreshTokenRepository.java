@@ -5,13 +5,24 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
-    Optional<RefreshToken> findByToken(String token);
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+
+    // Hashes tokens issued before token_hash existed and clears every plaintext token left
+    @Modifying
+    @Query(value = "UPDATE refresh_tokens SET token = NULL, " +
+            "token_hash = coalesce(token_hash, encode(sha256(convert_to(token, 'UTF8')), 'hex')) " +
+            "WHERE token IS NOT NULL", nativeQuery = true)
+    int backfillTokenHashes();
+
+    // Each pre-existing token becomes its own family
+    @Modifying
+    @Query(value = "UPDATE refresh_tokens SET family_id = gen_random_uuid()::text WHERE family_id IS NULL", nativeQuery = true)
+    int backfillFamilyIds();
 
     List<RefreshToken> findByEmployeeId(Long employeeId);
 
@@ -19,13 +30,7 @@ public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long
     @Query("DELETE FROM RefreshToken rt WHERE rt.employee.id = :employeeId")
     void deleteByEmployeeId(Long employeeId);
 
-    @Modifying
-    @Query("DELETE FROM RefreshToken rt WHERE rt.expiryDate < :now")
-    void deleteExpiredTokens(LocalDateTime now);
-
     @Modifying
     @Query("UPDATE RefreshToken rt SET rt.revoked = true WHERE rt.employee.id = :employeeId")
     void revokeAllByEmployeeId(Long employeeId);
-
-    boolean existsByTokenAndRevokedFalse(String token);
 }
@@ -0,0 +1,60 @@
+package com.shakhawat.rbacabac.security;
+
+import io.jsonwebtoken.Claims;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public record AccessTokenClaims(
+        Long userId,
+        String email,
+        String department,
+        String position,
+        List<String> roles,
+        long authorityMask,
+        long authzVersion,
+        Instant issuedAt,
+        Instant expiresAt,
+        String tokenId
+) {
+
+    public AccessTokenClaims {
+        roles = roles != null ? List.copyOf(roles) : List.of();
+    }
+
+    static AccessTokenClaims from(Claims claims) {
+        return new AccessTokenClaims(
+                Long.parseLong(claims.getSubject()),
+                claims.get("email", String.class),
+                claims.get("dept", String.class),
+                claims.get("pos", String.class),
+                readStringList(claims.get("roles")),
+                readAuthorityMask(claims),
+                claims.get("av") instanceof Number version ? version.longValue() : 0L,
+                claims.getIssuedAt() != null ? claims.getIssuedAt().toInstant() : null,
+                claims.getExpiration() != null ? claims.getExpiration().toInstant() : null,
+                claims.getId()
+        );
+    }
+
+    // Tokens issued before the compact format only carry the "roles" list, which still works
+    private static long readAuthorityMask(Claims claims) {
+        if (!(claims.get("pm") instanceof String encoded)) {
+            return 0L;
+        }
+        if (!(claims.get("pv") instanceof Number version) || version.intValue() != AuthorityRegistry.VERSION) {
+            throw new IllegalArgumentException("Unsupported authority registry version");
+        }
+        return AuthorityRegistry.decode(encoded);
+    }
+
+    private static List<String> readStringList(Object value) {
+        if (!(value instanceof Collection<?> values)) {
+            return List.of();
+        }
+        return values.stream()
+                .map(Object::toString)
+                .toList();
+    }
+}
@@ -0,0 +1,117 @@
+package com.shakhawat.rbacabac.security;
+
+import com.shakhawat.rbacabac.util.TimingWheel;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Revoked access tokens that have not expired yet: single tokens by jti, and whole subjects by a
+ * "not before" issue time. Lookups are two lock-free map reads and never check expiry themselves;
+ * a {@link TimingWheel} removes each entry once no token it could match is still valid, so the
+ * maps only ever hold entries for live tokens.
+ * <p>
+ * The list is per node. A token revoked on one node stays usable on another until it expires.
+ */
+@Slf4j
+@Component
+public class AccessTokenDenylist {
+
+    private sealed interface Expiry permits TokenExpiry, SubjectExpiry {
+    }
+
+    private record TokenExpiry(String tokenId, Long expiresAtMillis) implements Expiry {
+    }
+
+    private record SubjectExpiry(Long employeeId, Long notBeforeSeconds) implements Expiry {
+    }
+
+    private final Map<String, Long> deniedTokens = new ConcurrentHashMap<>();
+    private final Map<Long, Long> notBefore = new ConcurrentHashMap<>();
+    private final long accessTokenLifetimeMillis;
+    private final TimingWheel<Expiry> wheel;
+    private final ScheduledExecutorService ticker;
+
+    public AccessTokenDenylist(@Value("${jwt.expiration}") long accessTokenLifetimeMillis,
+                               @Value("${jwt.denylist.tick:1s}") Duration tick,
+                               MeterRegistry meterRegistry) {
+        this.accessTokenLifetimeMillis = accessTokenLifetimeMillis;
+        this.wheel = new TimingWheel<>(tick.toMillis(), System.currentTimeMillis(), this::expire);
+        this.ticker = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("access-token-denylist").daemon().factory());
+        ticker.scheduleAtFixedRate(this::advance, tick.toMillis(), tick.toMillis(), TimeUnit.MILLISECONDS);
+
+        Gauge.builder("jwt.denylist.tokens", deniedTokens, Map::size).register(meterRegistry);
+        Gauge.builder("jwt.denylist.subjects", notBefore, Map::size).register(meterRegistry);
+    }
+
+    public boolean isRevoked(AccessTokenClaims claims) {
+        if (claims.tokenId() != null && deniedTokens.containsKey(claims.tokenId())) {
+            return true;
+        }
+        var threshold = notBefore.get(claims.userId());
+        return threshold != null && (claims.issuedAt() == null || claims.issuedAt().getEpochSecond() < threshold);
+    }
+
+    /**
+     * Rejects this one token until it expires.
+     */
+    public void revoke(AccessTokenClaims claims) {
+        if (claims.tokenId() == null || claims.expiresAt() == null) {
+            // Issued before tokens carried a jti: fall back to everything the subject holds
+            revokeIssuedBefore(claims.userId(), Instant.now());
+            return;
+        }
+        var expiresAt = claims.expiresAt().toEpochMilli();
+        deniedTokens.put(claims.tokenId(), expiresAt);
+        wheel.schedule(new TokenExpiry(claims.tokenId(), expiresAt), expiresAt);
+    }
+
+    /**
+     * Rejects every token of the subject issued before {@code instant}. Issue times only have second
+     * precision, so tokens issued earlier within the same second as {@code instant} are not covered.
+     */
+    public void revokeIssuedBefore(Long employeeId, Instant instant) {
+        var seconds = instant.getEpochSecond();
+        var current = notBefore.merge(employeeId, seconds, Math::max);
+        // After one token lifetime nothing issued before the threshold can still be valid
+        wheel.schedule(new SubjectExpiry(employeeId, current), current * 1000 + accessTokenLifetimeMillis);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    private void advance() {
+        try {
+            advance(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            log.warn("Failed to expire access token denylist entries: {}", e.getMessage());
+        }
+    }
+
+    // Drops entries due by nowMillis; package-private so tests can move time without the ticker
+    void advance(long nowMillis) {
+        wheel.advance(nowMillis);
+    }
+
+    // Conditional removes: a newer revocation of the same key must survive an older timer
+    private void expire(Expiry expiry) {
+        switch (expiry) {
+            case TokenExpiry token -> deniedTokens.remove(token.tokenId(), token.expiresAtMillis());
+            case SubjectExpiry subject -> notBefore.remove(subject.employeeId(), subject.notBeforeSeconds());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.shakhawat.rbacabac.security;
+
+import com.shakhawat.rbacabac.entity.PermissionType;
+import com.shakhawat.rbacabac.entity.RoleType;
+import lombok.experimental.UtilityClass;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns every known role and permission a fixed bit position so authorities can travel
+ * in tokens as a compact bitmask. Bit positions are part of the token format: only append
+ * to {@link RoleType} and {@link PermissionType}, and bump {@link #VERSION} if a position ever
+ * has to change.
+ */
+@UtilityClass
+public class AuthorityRegistry {
+
+    public static final int VERSION = 1;
+
+    // Roles use their RoleType ordinal, permissions start after the reserved role range
+    private static final int PERMISSION_OFFSET = 16;
+
+    private static final PermissionType[] PERMISSIONS = PermissionType.values();
+
+    public static final int SIZE = PERMISSION_OFFSET + PERMISSIONS.length;
+
+    private static final GrantedAuthority[] AUTHORITIES = new GrantedAuthority[SIZE];
+    private static final Map<String, Integer> BITS = new HashMap<>();
+    private static long registeredMask;
+
+    static {
+        if (RoleType.values().length > PERMISSION_OFFSET || SIZE > Long.SIZE) {
+            throw new IllegalStateException("Authority registry does not fit in a 64-bit mask");
+        }
+        for (var role : RoleType.values()) {
+            register(role.ordinal(), role.name());
+        }
+        for (var permission : PERMISSIONS) {
+            register(PERMISSION_OFFSET + permission.ordinal(), permission.name());
+        }
+    }
+
+    private static void register(int bit, String name) {
+        AUTHORITIES[bit] = new SimpleGrantedAuthority(name);
+        BITS.put(name, bit);
+        registeredMask |= 1L << bit;
+    }
+
+    public long registeredMask() {
+        return registeredMask;
+    }
+
+    /**
+     * Returns the bit assigned to the authority, or -1 if it is not registered.
+     */
+    public int bitOf(String authority) {
+        var bit = authority != null ? BITS.get(authority) : null;
+        return bit != null ? bit : -1;
+    }
+
+    public int bitOf(RoleType role) {
+        return role.ordinal();
+    }
+
+    public long maskOf(RoleType role) {
+        return 1L << role.ordinal();
+    }
+
+    /**
+     * Returns the shared authority instance for the bit, or {@code null} for an unused bit.
+     */
+    public GrantedAuthority authority(int bit) {
+        return bit >= 0 && bit < SIZE ? AUTHORITIES[bit] : null;
+    }
+
+    public boolean isRole(int bit) {
+        return bit >= 0 && bit < PERMISSION_OFFSET;
+    }
+
+    public long permissionsOnly(long mask) {
+        return mask & -(1L << PERMISSION_OFFSET);
+    }
+
+    // Little-endian, trailing zero bytes dropped, so the usual mask encodes to three or four characters
+    public String encode(long mask) {
+        var length = (Long.SIZE - Long.numberOfLeadingZeros(mask) + 7) / 8;
+        var bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (mask >>> (8 * i));
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    public long decode(String encoded) {
+        var bytes = Base64.getUrlDecoder().decode(encoded);
+        if (bytes.length > Long.BYTES) {
+            throw new IllegalArgumentException("Authority mask is too long");
+        }
+        long mask = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            mask |= (bytes[i] & 0xFFL) << (8 * i);
+        }
+        return mask;
+    }
+}
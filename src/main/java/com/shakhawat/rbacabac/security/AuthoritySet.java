@@ -0,0 +1,133 @@
+package com.shakhawat.rbacabac.security;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable authority set backed by a bitmask over {@link AuthorityRegistry} positions.
+ * Iteration hands out the registry's shared authority instances, and sets without
+ * unregistered authorities are interned per mask, so hydrating a principal allocates nothing
+ * once the handful of distinct role combinations has been seen.
+ */
+public final class AuthoritySet extends AbstractSet<GrantedAuthority> {
+
+    private static final Map<Long, AuthoritySet> INTERNED = new ConcurrentHashMap<>();
+
+    public static final AuthoritySet EMPTY = of(0L);
+
+    private final long mask;
+    private final Set<GrantedAuthority> unregistered;
+
+    private AuthoritySet(long mask, Set<GrantedAuthority> unregistered) {
+        this.mask = mask;
+        this.unregistered = unregistered;
+    }
+
+    public static AuthoritySet of(long mask) {
+        var known = mask & AuthorityRegistry.registeredMask();
+        var set = INTERNED.get(known);
+        return set != null ? set : INTERNED.computeIfAbsent(known, m -> new AuthoritySet(m, Set.of()));
+    }
+
+    public static AuthoritySet of(long mask, Collection<String> names) {
+        if (names.isEmpty()) {
+            return of(mask);
+        }
+
+        Set<GrantedAuthority> unregistered = null;
+        for (var name : names) {
+            var bit = AuthorityRegistry.bitOf(name);
+            if (bit >= 0) {
+                mask |= 1L << bit;
+            } else {
+                if (unregistered == null) {
+                    unregistered = new HashSet<>();
+                }
+                unregistered.add(new SimpleGrantedAuthority(name));
+            }
+        }
+        return unregistered == null ? of(mask) : new AuthoritySet(mask & AuthorityRegistry.registeredMask(), Set.copyOf(unregistered));
+    }
+
+    public static AuthoritySet copyOf(Collection<? extends GrantedAuthority> authorities) {
+        if (authorities instanceof AuthoritySet set) {
+            return set;
+        }
+        var names = new ArrayList<String>(authorities.size());
+        for (var authority : authorities) {
+            names.add(authority.getAuthority());
+        }
+        return of(0L, names);
+    }
+
+    public static AuthoritySet from(Authentication authentication) {
+        if (authentication == null) {
+            return EMPTY;
+        }
+        if (authentication.getPrincipal() instanceof UserPrincipal principal) {
+            return principal.getAuthorities();
+        }
+        return copyOf(authentication.getAuthorities());
+    }
+
+    public long mask() {
+        return mask;
+    }
+
+    public boolean has(String authority) {
+        var bit = AuthorityRegistry.bitOf(authority);
+        if (bit >= 0) {
+            return hasBit(bit);
+        }
+        return !unregistered.isEmpty() && unregistered.contains(new SimpleGrantedAuthority(authority));
+    }
+
+    public boolean hasBit(int bit) {
+        return (mask & (1L << bit)) != 0;
+    }
+
+    public boolean hasAny(long bits) {
+        return (mask & bits) != 0;
+    }
+
+    public boolean hasAll(long bits) {
+        return (mask & bits) == bits;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof GrantedAuthority authority && has(authority.getAuthority());
+    }
+
+    @Override
+    public int size() {
+        return Long.bitCount(mask) + unregistered.size();
+    }
+
+    @Override
+    public Iterator<GrantedAuthority> iterator() {
+        return new Iterator<>() {
+            private long remaining = mask;
+            private final Iterator<GrantedAuthority> rest = unregistered.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return remaining != 0 || rest.hasNext();
+            }
+
+            @Override
+            public GrantedAuthority next() {
+                if (remaining != 0) {
+                    var bit = Long.numberOfTrailingZeros(remaining);
+                    remaining &= remaining - 1;
+                    return AuthorityRegistry.authority(bit);
+                }
+                return rest.next();
+            }
+        };
+    }
+}
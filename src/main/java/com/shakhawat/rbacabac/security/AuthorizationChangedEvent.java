@@ -0,0 +1,25 @@
+package com.shakhawat.rbacabac.security;
+
+/**
+ * Published whenever something that feeds an authorization decision changes.
+ * A {@code null} employee id means the change affects every subject (e.g. role or permission edits).
+ * {@code remote} events report a change another node made; its version is already persisted.
+ */
+public record AuthorizationChangedEvent(Long employeeId, boolean remote) {
+
+    public static AuthorizationChangedEvent forEmployee(Long employeeId) {
+        return new AuthorizationChangedEvent(employeeId, false);
+    }
+
+    public static AuthorizationChangedEvent global() {
+        return new AuthorizationChangedEvent(null, false);
+    }
+
+    public static AuthorizationChangedEvent remoteGlobal() {
+        return new AuthorizationChangedEvent(null, true);
+    }
+
+    public boolean isGlobal() {
+        return employeeId == null;
+    }
+}
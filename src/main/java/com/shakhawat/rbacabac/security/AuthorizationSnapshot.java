@@ -0,0 +1,260 @@
+package com.shakhawat.rbacabac.security;
+
+import com.shakhawat.rbacabac.entity.Role;
+import com.shakhawat.rbacabac.entity.RoleType;
+import com.shakhawat.rbacabac.exception.InvalidRequestException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable view of the role/permission model: every role with its permissions already resolved
+ * into an authority mask. Built once from the database and then shared by all readers.
+ * <p>
+ * A role that {@code inherits} another one also gets all of its permissions, transitively. The
+ * closure is computed here, so each grant's mask is final and "at least X" is a single
+ * {@link AuthoritySet#hasAny(long)} against {@link #atLeast(RoleType)}.
+ */
+public final class AuthorizationSnapshot {
+
+    /**
+     * {@code ownMask}/{@code ownUnregistered} are the role's own bit and permissions; {@code mask}/{@code unregistered}
+     * add everything inherited. Inherited role bits are not included, so an admin is not also "an employee".
+     */
+    public record RoleGrant(Long roleId, RoleType name, RoleType inherits,
+                            long ownMask, List<String> ownUnregistered, Set<String> permissions,
+                            long mask, List<String> unregistered) {
+
+        RoleGrant withInherits(RoleType parent) {
+            return new RoleGrant(roleId, name, parent, ownMask, ownUnregistered, permissions, ownMask, ownUnregistered);
+        }
+
+        RoleGrant withClosure(long closedMask, List<String> closedUnregistered) {
+            return new RoleGrant(roleId, name, inherits, ownMask, ownUnregistered, permissions, closedMask, closedUnregistered);
+        }
+    }
+
+    private final Map<RoleType, RoleGrant> byName;
+    private final Map<Long, RoleGrant> byId;
+    private final long[] atLeast;
+
+    private AuthorizationSnapshot(Map<RoleType, RoleGrant> byName, long[] atLeast) {
+        this.byName = byName;
+        this.atLeast = atLeast;
+        var ids = new HashMap<Long, RoleGrant>();
+        for (var grant : byName.values()) {
+            if (grant.roleId() != null) {
+                ids.put(grant.roleId(), grant);
+            }
+        }
+        this.byId = Map.copyOf(ids);
+    }
+
+    // Roles must come with their permissions loaded
+    public static AuthorizationSnapshot of(Collection<Role> roles) {
+        var grants = new EnumMap<RoleType, RoleGrant>(RoleType.class);
+
+        for (var role : roles) {
+            var mask = AuthorityRegistry.maskOf(role.getName());
+            var unregistered = new ArrayList<String>();
+            var permissions = new LinkedHashSet<String>();
+            for (var permission : role.getPermissions()) {
+                permissions.add(permission.getName());
+                var bit = AuthorityRegistry.bitOf(permission.getName());
+                if (bit >= 0) {
+                    mask |= 1L << bit;
+                } else {
+                    unregistered.add(permission.getName());
+                }
+            }
+
+            var own = List.copyOf(unregistered);
+            grants.put(role.getName(), new RoleGrant(role.getId(), role.getName(), role.getInherits(),
+                    mask, own, Set.copyOf(permissions), mask, own));
+        }
+
+        var closed = new EnumMap<RoleType, RoleGrant>(RoleType.class);
+        for (var name : grants.keySet()) {
+            close(name, grants, closed, new HashSet<>());
+        }
+
+        var atLeast = new long[RoleType.values().length];
+        for (var grant : closed.values()) {
+            var bit = AuthorityRegistry.maskOf(grant.name());
+            for (var below : chain(grant.name(), closed)) {
+                atLeast[below.ordinal()] |= bit;
+            }
+        }
+        return new AuthorizationSnapshot(closed, atLeast);
+    }
+
+    /**
+     * Returns a snapshot in which {@code role} inherits {@code parent} (or nothing, if {@code null}).
+     * Only {@code role} and the roles above it are recomputed; every other grant is reused.
+     */
+    public AuthorizationSnapshot withInheritance(RoleType role, RoleType parent) {
+        var current = byName.get(role);
+        if (current == null) {
+            throw new InvalidRequestException("Role not found: " + role);
+        }
+        if (parent != null) {
+            if (!byName.containsKey(parent)) {
+                throw new InvalidRequestException("Role not found: " + parent);
+            }
+            if (chain(parent, byName).contains(role)) {
+                throw new InvalidRequestException("Role hierarchy cycle: " + parent + " already inherits " + role);
+            }
+        }
+
+        // Roles whose chain passes through the changed role; everything else keeps its closure
+        var affected = new ArrayList<RoleType>();
+        var grants = new EnumMap<RoleType, RoleGrant>(RoleType.class);
+        var closed = new EnumMap<RoleType, RoleGrant>(RoleType.class);
+        for (var grant : byName.values()) {
+            if (chain(grant.name(), byName).contains(role)) {
+                affected.add(grant.name());
+                grants.put(grant.name(), grant.name() == role ? grant.withInherits(parent) : grant.withInherits(grant.inherits()));
+            } else {
+                grants.put(grant.name(), grant);
+                closed.put(grant.name(), grant);
+            }
+        }
+        for (var name : affected) {
+            close(name, grants, closed, new HashSet<>());
+        }
+
+        long affectedBits = 0;
+        for (var name : affected) {
+            affectedBits |= AuthorityRegistry.maskOf(name);
+        }
+        var updated = atLeast.clone();
+        for (var below : chainBelow(current.inherits(), byName)) {
+            updated[below.ordinal()] &= ~affectedBits;
+        }
+        for (var below : chainBelow(parent, closed)) {
+            updated[below.ordinal()] |= affectedBits;
+        }
+        return new AuthorizationSnapshot(closed, updated);
+    }
+
+    public RoleGrant role(RoleType name) {
+        return byName.get(name);
+    }
+
+    // Looks roles up by id first, so uninitialized role proxies are never loaded
+    public RoleGrant role(Role role) {
+        var grant = role.getId() != null ? byId.get(role.getId()) : null;
+        return grant != null ? grant : byName.get(role.getName());
+    }
+
+    public RoleType nameOf(Role role) {
+        var grant = role(role);
+        return grant != null ? grant.name() : role.getName();
+    }
+
+    /**
+     * Mask of every role that is {@code role} or inherits it, directly or transitively.
+     */
+    public long atLeast(RoleType role) {
+        return atLeast[role.ordinal()];
+    }
+
+    public Map<RoleType, RoleType> hierarchy() {
+        var hierarchy = new EnumMap<RoleType, RoleType>(RoleType.class);
+        for (var grant : byName.values()) {
+            hierarchy.put(grant.name(), grant.inherits());
+        }
+        return hierarchy;
+    }
+
+    public AuthoritySet authoritiesOfRoleIds(Collection<Long> roleIds) {
+        long mask = 0;
+        List<String> unregistered = List.of();
+        for (var roleId : roleIds) {
+            var grant = byId.get(roleId);
+            if (grant == null) {
+                continue;
+            }
+            mask |= grant.mask();
+            if (!grant.unregistered().isEmpty()) {
+                if (unregistered.isEmpty()) {
+                    unregistered = new ArrayList<>();
+                }
+                unregistered.addAll(grant.unregistered());
+            }
+        }
+        return AuthoritySet.of(mask, unregistered);
+    }
+
+    public AuthoritySet authoritiesOf(Collection<Role> roles) {
+        long mask = 0;
+        List<String> unregistered = List.of();
+        for (var role : roles) {
+            var grant = role(role);
+            if (grant == null) {
+                // Role created after this snapshot was taken: grant the role itself until the next refresh
+                mask |= AuthorityRegistry.maskOf(role.getName());
+                continue;
+            }
+            mask |= grant.mask();
+            if (!grant.unregistered().isEmpty()) {
+                if (unregistered.isEmpty()) {
+                    unregistered = new ArrayList<>();
+                }
+                unregistered.addAll(grant.unregistered());
+            }
+        }
+        return AuthoritySet.of(mask, unregistered);
+    }
+
+    public int size() {
+        return byName.size();
+    }
+
+    private static RoleGrant close(RoleType name, Map<RoleType, RoleGrant> grants, Map<RoleType, RoleGrant> closed,
+                                   Set<RoleType> visiting) {
+        var done = closed.get(name);
+        if (done != null) {
+            return done;
+        }
+        var grant = grants.get(name);
+        if (!visiting.add(name)) {
+            throw new IllegalStateException("Role hierarchy contains a cycle at " + name);
+        }
+
+        var result = grant;
+        if (grant.inherits() != null && grants.containsKey(grant.inherits())) {
+            var parent = close(grant.inherits(), grants, closed, visiting);
+            var unregistered = grant.ownUnregistered();
+            if (!parent.unregistered().isEmpty()) {
+                var merged = new LinkedHashSet<>(unregistered);
+                merged.addAll(parent.unregistered());
+                unregistered = List.copyOf(merged);
+            }
+            result = grant.withClosure(grant.ownMask() | AuthorityRegistry.permissionsOnly(parent.mask()), unregistered);
+        }
+        closed.put(name, result);
+        return result;
+    }
+
+    // The role itself followed by every role it inherits, nearest first
+    private static List<RoleType> chain(RoleType start, Map<RoleType, RoleGrant> grants) {
+        var chain = new ArrayList<RoleType>();
+        for (var current = start; current != null && grants.containsKey(current) && !chain.contains(current);
+             current = grants.get(current).inherits()) {
+            chain.add(current);
+        }
+        return chain;
+    }
+
+    private static List<RoleType> chainBelow(RoleType start, Map<RoleType, RoleGrant> grants) {
+        return start != null ? chain(start, grants) : List.of();
+    }
+}
@@ -0,0 +1,90 @@
+package com.shakhawat.rbacabac.security;
+
+import com.shakhawat.rbacabac.entity.Role;
+import com.shakhawat.rbacabac.entity.RoleType;
+import com.shakhawat.rbacabac.exception.ResourceNotFoundException;
+import com.shakhawat.rbacabac.repository.RoleRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Publishes the current {@link AuthorizationSnapshot} through a volatile reference. Readers never
+ * lock; a refresh builds a complete new snapshot and swaps it in.
+ * <p>
+ * A hierarchy change is applied incrementally on the node that made it. Every other node learns of
+ * it through the global version it bumps in {@link AuthorizationVersionTracker} and rebuilds its
+ * snapshot in full from the database.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AuthorizationSnapshotService {
+
+    private final RoleRepository roleRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private volatile AuthorizationSnapshot snapshot;
+
+    public AuthorizationSnapshot current() {
+        var current = snapshot;
+        return current != null ? current : refresh();
+    }
+
+    public synchronized AuthorizationSnapshot refresh() {
+        var refreshed = AuthorizationSnapshot.of(roleRepository.findAllWithPermissions());
+        snapshot = refreshed;
+        log.info("Authorization snapshot loaded with {} roles", refreshed.size());
+        return refreshed;
+    }
+
+    // A reference is enough to link an employee to a role, so assigning roles needs no query
+    public Role roleReference(RoleType name) {
+        var grant = current().role(name);
+        if (grant == null) {
+            throw new ResourceNotFoundException("Role not found: " + name);
+        }
+        return roleRepository.getReferenceById(grant.roleId());
+    }
+
+    @Transactional
+    public void updateInheritance(RoleType name, RoleType inherits) {
+        // Rejects unknown roles and cycles before anything is written
+        current().withInheritance(name, inherits);
+
+        var role = roleRepository.findByName(name)
+                .orElseThrow(() -> new ResourceNotFoundException("Role not found: " + name));
+        role.setInherits(inherits);
+        roleRepository.save(role);
+        eventPublisher.publishEvent(new RoleHierarchyChangedEvent(name, inherits));
+        log.info("Role {} now inherits {}", name, inherits);
+    }
+
+    // Runs after the data initializer has seeded roles and permissions
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        refresh();
+    }
+
+    // Rebuilt before the version bump, so principals reloaded after it see the new model; also covers remote changes
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAuthorizationChanged(AuthorizationChangedEvent event) {
+        if (event.isGlobal()) {
+            refresh();
+        }
+    }
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onRoleHierarchyChanged(RoleHierarchyChangedEvent event) {
+        snapshot = current().withInheritance(event.role(), event.inherits());
+    }
+}
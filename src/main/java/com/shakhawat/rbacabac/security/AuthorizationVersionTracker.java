@@ -0,0 +1,228 @@
+package com.shakhawat.rbacabac.security;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps monotonically increasing authorization versions, globally and per employee.
+ * A token or cached decision stamped with {@link #currentVersion(Long)} is stale as soon as
+ * either counter moves, so invalidation never has to scan what was handed out.
+ * <p>
+ * Versions live in the {@code authorization_versions} table and are bumped in the same transaction
+ * as the change that caused them, so they survive restarts and are shared by every node. Reads are
+ * served from memory: the node that made a change sees it on commit, other nodes within
+ * {@code poll-interval}. Issuing a token is the exception, see {@link #catchUp()}.
+ */
+@Slf4j
+@Component
+public class AuthorizationVersionTracker {
+
+    // Employee ids start at 1, so subject 0 holds the global version
+    private static final long GLOBAL = 0L;
+
+    private static final String CREATE_TABLE = """
+            CREATE TABLE IF NOT EXISTS authorization_versions (
+                subject_id BIGINT PRIMARY KEY,
+                version BIGINT NOT NULL,
+                changed_at TIMESTAMPTZ NOT NULL
+            )""";
+    private static final String CREATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS idx_authorization_versions_changed_at ON authorization_versions (changed_at)";
+
+    private static final String BUMP = """
+            INSERT INTO authorization_versions (subject_id, version, changed_at) VALUES (?, 1, clock_timestamp())
+            ON CONFLICT (subject_id) DO UPDATE
+            SET version = authorization_versions.version + 1, changed_at = clock_timestamp()
+            RETURNING version
+            """;
+
+    // Always returns a row, so the database clock comes back even when nothing changed
+    private static final String CHANGED_SINCE = """
+            SELECT polled.at AS polled_at, v.subject_id, v.version
+            FROM (SELECT clock_timestamp() AS at) polled
+            LEFT JOIN authorization_versions v ON v.changed_at >= ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Duration pollInterval;
+    private final Duration lookback;
+    private final AtomicLong globalVersion = new AtomicLong();
+    private final Map<Long, Long> subjectVersions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService poller;
+
+    // Database time of the last successful poll
+    private volatile Instant polledAt = Instant.EPOCH;
+
+    public AuthorizationVersionTracker(JdbcTemplate jdbcTemplate,
+                                       ApplicationEventPublisher eventPublisher,
+                                       @Value("${security.authorization-versions.poll-interval:1s}") Duration pollInterval,
+                                       @Value("${security.authorization-versions.lookback:10s}") Duration lookback) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.pollInterval = pollInterval;
+        this.lookback = lookback;
+        this.poller = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("authorization-versions").daemon().factory());
+    }
+
+    // Versions must be loaded before the first token is checked, so a failure here fails startup
+    @PostConstruct
+    public void initialize() {
+        jdbcTemplate.execute(CREATE_TABLE);
+        jdbcTemplate.execute(CREATE_INDEX);
+        poll();
+        log.info("Loaded authorization versions (global {}, {} employees)", globalVersion(), subjectVersions.size());
+
+        var intervalMillis = pollInterval.toMillis();
+        poller.scheduleWithFixedDelay(this::pollQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public long globalVersion() {
+        return globalVersion.get();
+    }
+
+    public long subjectVersion(Long employeeId) {
+        return subjectVersions.getOrDefault(employeeId, 0L);
+    }
+
+    // Both counters only grow, so their sum changes whenever either one is bumped
+    public long currentVersion(Long employeeId) {
+        return globalVersion() + subjectVersion(employeeId);
+    }
+
+    /**
+     * Polls now instead of waiting for the next tick. Called before a token is issued: its permissions
+     * come from this node's snapshot and its version from here, and a token built from state a poll
+     * behind would be rejected right away by every node that has already seen the change. If the
+     * poll fails the token is issued from what this node has, as it was before.
+     */
+    public void catchUp() {
+        pollQuietly();
+    }
+
+    public boolean isCurrent(Long employeeId, long version) {
+        return version >= currentVersion(employeeId);
+    }
+
+    public void bumpSubject(Long employeeId) {
+        bump(employeeId);
+    }
+
+    public void bumpGlobal() {
+        bump(GLOBAL);
+    }
+
+    // Before commit, so the bump is part of the change: either both are visible to other nodes or neither is
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onAuthorizationChanged(AuthorizationChangedEvent event) {
+        if (event.remote()) {
+            return;
+        }
+        bump(event.isGlobal() ? GLOBAL : event.employeeId());
+    }
+
+    // Inherited permissions are baked into every token and principal, so all of them are stale
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onRoleHierarchyChanged(RoleHierarchyChangedEvent event) {
+        bump(GLOBAL);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+    }
+
+    private void bump(long subjectId) {
+        var version = jdbcTemplate.queryForObject(BUMP, Long.class, subjectId);
+        if (version == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(subjectId, version);
+            return;
+        }
+        // After the other after-commit listeners, so e.g. the snapshot is rebuilt before principals go stale
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                apply(subjectId, version);
+            }
+        });
+    }
+
+    private void apply(long subjectId, long version) {
+        if (subjectId == GLOBAL) {
+            globalVersion.accumulateAndGet(version, Math::max);
+            log.info("Global authorization version bumped to {}", globalVersion());
+        } else {
+            subjectVersions.merge(subjectId, version, Math::max);
+            log.debug("Authorization version bumped for employee: {}", subjectId);
+        }
+    }
+
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (DataAccessException e) {
+            log.warn("Failed to poll authorization versions, will retry: {}", e.getMessage());
+        }
+    }
+
+    /*
+     * Reads every version changed since the last poll. The window starts lookback before it, so a
+     * transaction that bumped a version before that poll but committed after it is still seen.
+     * Synchronized because catchUp polls on request threads alongside the poller.
+     */
+    private synchronized void poll() {
+        var initial = polledAt == Instant.EPOCH;
+        var since = initial ? polledAt : polledAt.minus(lookback);
+        var latest = new Instant[1];
+        var global = new long[]{-1};
+        jdbcTemplate.query(CHANGED_SINCE, rs -> {
+            latest[0] = rs.getTimestamp("polled_at").toInstant();
+            var subjectId = rs.getLong("subject_id");
+            if (rs.wasNull()) {
+                return;
+            }
+            var version = rs.getLong("version");
+            if (subjectId == GLOBAL) {
+                global[0] = version;
+            } else {
+                subjectVersions.merge(subjectId, version, Math::max);
+            }
+        }, Timestamp.from(since));
+
+        if (global[0] > globalVersion()) {
+            // Roles or permissions changed on another node: rebuild what depends on them first
+            if (!initial) {
+                eventPublisher.publishEvent(AuthorizationChangedEvent.remoteGlobal());
+            }
+            globalVersion.accumulateAndGet(global[0], Math::max);
+            log.info("Global authorization version advanced to {} by another node", globalVersion());
+        }
+        if (latest[0] != null) {
+            polledAt = latest[0];
+        }
+    }
+}
@@ -1,9 +1,8 @@
 package com.shakhawat.rbacabac.security;
 
-import org.springframework.security.access.prepost.PreAuthorize;
 import java.lang.annotation.*;
 
 @Target({ElementType.METHOD, ElementType.TYPE})
 @Retention(RetentionPolicy.RUNTIME)
-@PreAuthorize("hasAuthority('DELETE_EMPLOYEE')")
+@RequiresAuthority("DELETE_EMPLOYEE")
 public @interface CanDeleteEmployee {}
@@ -0,0 +1,86 @@
+package com.shakhawat.rbacabac.security;
+
+import com.shakhawat.rbacabac.util.CidrBlock;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Determines the address a request really came from. {@code X-Forwarded-For} is only honored when
+ * the connection comes from one of {@code security.trusted-proxies}; the header is then read from
+ * the right, skipping trusted proxies, so a client cannot pick its address by sending the header
+ * itself.
+ */
+@Component
+public class ClientIpResolver {
+
+    private final List<CidrBlock> trustedProxies;
+
+    public ClientIpResolver(@Value("${security.trusted-proxies:127.0.0.1/32,::1/128}") List<String> trustedProxies) {
+        this.trustedProxies = trustedProxies.stream()
+                .filter(cidr -> !cidr.isBlank())
+                .map(CidrBlock::parse)
+                .toList();
+    }
+
+    public String resolve(HttpServletRequest request) {
+        var remote = request.getRemoteAddr();
+        var forwarded = request.getHeader("X-Forwarded-For");
+        if (forwarded == null || forwarded.isBlank() || !isTrusted(remote)) {
+            return remote;
+        }
+
+        // Every trusted proxy appended the address it received the request from
+        var client = remote;
+        var end = forwarded.length();
+        while (end > 0) {
+            var start = forwarded.lastIndexOf(',', end - 1);
+            var hop = forwarded.substring(start + 1, end).trim();
+            end = start;
+            if (hop.isEmpty()) {
+                continue;
+            }
+            var address = toBytesOrNull(hop);
+            if (address == null) {
+                // Garbage can only come from before the first trusted proxy
+                return client;
+            }
+            if (!isTrusted(address)) {
+                return hop;
+            }
+            client = hop;
+        }
+        return client;
+    }
+
+    /**
+     * The resolved address as bytes, or {@code null} if it is not a literal IP address.
+     */
+    public byte[] resolveBytes(HttpServletRequest request) {
+        return toBytesOrNull(resolve(request));
+    }
+
+    private boolean isTrusted(String address) {
+        var bytes = toBytesOrNull(address);
+        return bytes != null && isTrusted(bytes);
+    }
+
+    private boolean isTrusted(byte[] address) {
+        for (var proxy : trustedProxies) {
+            if (proxy.contains(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] toBytesOrNull(String address) {
+        try {
+            return CidrBlock.toBytes(address);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
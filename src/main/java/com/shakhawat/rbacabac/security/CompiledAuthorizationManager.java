@@ -0,0 +1,262 @@
+package com.shakhawat.rbacabac.security;
+
+import com.shakhawat.rbacabac.audit.AuditPipeline;
+import com.shakhawat.rbacabac.entity.RoleType;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.authorization.AuthorizationResult;
+import org.springframework.security.core.Authentication;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Method-security pipeline for {@link RequiresAuthority}, {@link RequiresRole} and {@link EmployeeAccess}
+ * (and the aliases meta-annotated with them). Each annotated controller method is compiled once at
+ * startup into a {@link MethodRule} that checks authority bits or calls the evaluator directly,
+ * so no expression parsing, bean lookup or parameter-name discovery happens per invocation.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class CompiledAuthorizationManager implements AuthorizationManager<MethodInvocation>,
+        SmartInitializingSingleton, ApplicationContextAware {
+
+    @FunctionalInterface
+    interface MethodRule {
+        boolean check(Authentication authentication, Object[] arguments);
+    }
+
+    /*
+     * Audit name is computed once per method so recording a decision allocates nothing. The
+     * @EmployeeAccess check, if any, runs after the others and is audited by the evaluator itself.
+     */
+    private record CompiledMethod(String name, MethodRule rule, MethodRule employeeAccess) {}
+
+    private static final MethodRule PERMIT_ALL = (authentication, arguments) -> true;
+    private static final String AUDIT_ACTION = "INVOKE";
+    private static final String AUDIT_POLICY = "method-security";
+    private static final AuthorizationDecision GRANTED = new AuthorizationDecision(true);
+    private static final AuthorizationDecision DENIED = new AuthorizationDecision(false);
+
+    private final ObjectProvider<EmployeePermissionEvaluator> evaluatorProvider;
+    private final ObjectProvider<AuthorizationSnapshotService> snapshotProvider;
+    private final ObjectProvider<AuditPipeline> auditProvider;
+    private final Map<Method, CompiledMethod> rules = new ConcurrentHashMap<>();
+    private final DefaultParameterNameDiscoverer parameterNames = new DefaultParameterNameDiscoverer();
+
+    private ApplicationContext applicationContext;
+    private volatile EmployeePermissionEvaluator evaluator;
+    private volatile AuthorizationSnapshotService snapshots;
+    private volatile AuditPipeline audit;
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        evaluator = evaluatorProvider.getObject();
+        snapshots = snapshotProvider.getObject();
+        audit = auditProvider.getObject();
+
+        for (var controller : applicationContext.getBeansWithAnnotation(RestController.class).values()) {
+            var type = AopUtils.getTargetClass(controller);
+            ReflectionUtils.doWithMethods(type, method -> rules.computeIfAbsent(method, m -> compileMethod(m, type)),
+                    ReflectionUtils.USER_DECLARED_METHODS);
+        }
+        log.info("Compiled authorization rules for {} controller methods", rules.size());
+    }
+
+    @Override
+    public AuthorizationResult authorize(Supplier<? extends Authentication> authentication,
+                                         MethodInvocation invocation) {
+        var start = System.nanoTime();
+        var method = invocation.getMethod();
+        var compiled = rules.get(method);
+        if (compiled == null) {
+            // Beans that are not controllers are compiled on first use
+            var type = invocation.getThis() != null ? AopUtils.getTargetClass(invocation.getThis()) : method.getDeclaringClass();
+            compiled = rules.computeIfAbsent(method, m -> compileMethod(m, type));
+        }
+        if (compiled.rule() == PERMIT_ALL && compiled.employeeAccess() == null) {
+            return GRANTED;
+        }
+
+        var current = authentication.get();
+        var arguments = invocation.getArguments();
+        var granted = compiled.rule().check(current, arguments);
+        if (granted && compiled.employeeAccess() != null) {
+            // One audit record per decision: the evaluator's, which carries the employee id and policy
+            return compiled.employeeAccess().check(current, arguments) ? GRANTED : DENIED;
+        }
+        var subjectId = current != null && current.getPrincipal() instanceof UserPrincipal principal ? principal.getId() : -1L;
+        audit().record(subjectId, AUDIT_ACTION, compiled.name(), -1, granted, AUDIT_POLICY, System.nanoTime() - start);
+        return granted ? GRANTED : DENIED;
+    }
+
+    private CompiledMethod compileMethod(Method method, Class<?> targetClass) {
+        var specific = AopUtils.getMostSpecificMethod(method, targetClass);
+
+        // Method-level annotations replace class-level ones, as with @PreAuthorize
+        var checks = compileAnnotations(specific);
+        var employeeAccess = employeeAccessRule(specific, specific);
+        if (checks.isEmpty() && employeeAccess == null) {
+            checks = compileAnnotations(targetClass);
+            employeeAccess = employeeAccessRule(targetClass, specific);
+        }
+
+        return new CompiledMethod("method:" + targetClass.getSimpleName() + "#" + method.getName(),
+                combine(checks), employeeAccess);
+    }
+
+    private static MethodRule combine(List<MethodRule> checks) {
+        return switch (checks.size()) {
+            case 0 -> PERMIT_ALL;
+            case 1 -> checks.getFirst();
+            default -> {
+                var all = checks.toArray(MethodRule[]::new);
+                yield (authentication, arguments) -> {
+                    for (var check : all) {
+                        if (!check.check(authentication, arguments)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                };
+            }
+        };
+    }
+
+    private List<MethodRule> compileAnnotations(AnnotatedElement element) {
+        var checks = new ArrayList<MethodRule>();
+
+        var requiresAuthority = AnnotatedElementUtils.findMergedAnnotation(element, RequiresAuthority.class);
+        if (requiresAuthority != null) {
+            checks.add(authorityRule(requiresAuthority.value()));
+        }
+
+        var requiresRole = AnnotatedElementUtils.findMergedAnnotation(element, RequiresRole.class);
+        if (requiresRole != null) {
+            checks.add(requiresRole.orAbove() ? roleOrAboveRule(requiresRole.value()) : roleRule(requiresRole.value()));
+        }
+
+        return checks;
+    }
+
+    private MethodRule employeeAccessRule(AnnotatedElement element, Method method) {
+        var employeeAccess = AnnotatedElementUtils.findMergedAnnotation(element, EmployeeAccess.class);
+        if (employeeAccess == null) {
+            return null;
+        }
+        var action = employeeAccess.value();
+        var index = parameterIndex(method, employeeAccess.idParam());
+        return (authentication, arguments) -> evaluator().check(authentication, action, (Long) arguments[index]);
+    }
+
+    private MethodRule roleRule(RoleType[] roles) {
+        long mask = 0;
+        for (var role : roles) {
+            mask |= AuthorityRegistry.maskOf(role);
+        }
+        var required = mask;
+        return (authentication, arguments) -> AuthoritySet.from(authentication).hasAny(required);
+    }
+
+    // The hierarchy can change at runtime, so the mask is read from the current snapshot on each call
+    private MethodRule roleOrAboveRule(RoleType[] roles) {
+        if (roles.length == 1) {
+            var role = roles[0];
+            return (authentication, arguments) ->
+                    AuthoritySet.from(authentication).hasAny(snapshots().current().atLeast(role));
+        }
+        return (authentication, arguments) -> {
+            var snapshot = snapshots().current();
+            long mask = 0;
+            for (var role : roles) {
+                mask |= snapshot.atLeast(role);
+            }
+            return AuthoritySet.from(authentication).hasAny(mask);
+        };
+    }
+
+    private MethodRule authorityRule(String[] authorities) {
+        long mask = 0;
+        var unregistered = new ArrayList<String>();
+        for (var authority : authorities) {
+            var bit = AuthorityRegistry.bitOf(authority);
+            if (bit >= 0) {
+                mask |= 1L << bit;
+            } else {
+                unregistered.add(authority);
+            }
+        }
+
+        var registered = mask;
+        if (unregistered.isEmpty()) {
+            return (authentication, arguments) -> AuthoritySet.from(authentication).hasAny(registered);
+        }
+        var others = unregistered.toArray(String[]::new);
+        return (authentication, arguments) -> {
+            var granted = AuthoritySet.from(authentication);
+            return granted.hasAny(registered) || Arrays.stream(others).anyMatch(granted::has);
+        };
+    }
+
+    private int parameterIndex(Method method, String name) {
+        var names = parameterNames.getParameterNames(method);
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name) && method.getParameterTypes()[i] == Long.class) {
+                    return i;
+                }
+            }
+        }
+        throw new IllegalStateException("@EmployeeAccess on " + method + " refers to unknown Long parameter '" + name + "'");
+    }
+
+    private AuditPipeline audit() {
+        var current = audit;
+        if (current == null) {
+            current = auditProvider.getObject();
+            audit = current;
+        }
+        return current;
+    }
+
+    private AuthorizationSnapshotService snapshots() {
+        var current = snapshots;
+        if (current == null) {
+            current = snapshotProvider.getObject();
+            snapshots = current;
+        }
+        return current;
+    }
+
+    private EmployeePermissionEvaluator evaluator() {
+        var current = evaluator;
+        if (current == null) {
+            current = evaluatorProvider.getObject();
+            evaluator = current;
+        }
+        return current;
+    }
+}
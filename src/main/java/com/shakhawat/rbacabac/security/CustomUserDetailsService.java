@@ -4,26 +4,30 @@ import com.shakhawat.rbacabac.repository.EmployeeRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.userdetails.*;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 @Service
 @RequiredArgsConstructor
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final EmployeeRepository employeeRepository;
+    private final PrincipalCache principalCache;
+    private final AuthorizationSnapshotService authorizationSnapshots;
 
+    // Not transactional: a cache hit must not check out a connection, and permissions come from the snapshot
     @Override
-    @Transactional
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        var employee = employeeRepository.findByEmail(email)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + email));
-        return UserPrincipal.create(employee);
+        return principalCache.getByEmail(email, () -> {
+            var employee = employeeRepository.findByEmail(email)
+                    .orElseThrow(() -> new UsernameNotFoundException("User not found: " + email));
+            return UserPrincipal.create(employee, authorizationSnapshots.current());
+        });
     }
 
-    @Transactional
-    public UserDetails loadUserById(Long id) {
-        var employee = employeeRepository.findById(id)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + id));
-        return UserPrincipal.create(employee);
+    public UserPrincipal loadUserById(Long id) {
+        return principalCache.getById(id, () -> {
+            var employee = employeeRepository.findById(id)
+                    .orElseThrow(() -> new UsernameNotFoundException("User not found: " + id));
+            return UserPrincipal.create(employee, authorizationSnapshots.current());
+        });
     }
 }
@@ -0,0 +1,143 @@
+package com.shakhawat.rbacabac.security;
+
+import com.shakhawat.rbacabac.policy.PolicyDecision;
+import com.shakhawat.rbacabac.policy.PolicyEngine;
+import com.shakhawat.rbacabac.util.ExpiringCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Caches authorization decisions per (subject, action, resource). Entries are stamped with the
+ * subject's and the resource's authorization versions and the policy generation; any bump makes
+ * them stale on the next read, so writes never have to find and evict entries.
+ */
+@Component
+public class DecisionCache {
+
+    @FunctionalInterface
+    public interface BatchEvaluation {
+        PolicyDecision[] evaluate(EmployeeAction[] actions, Long[] resourceIds);
+    }
+
+    private record DecisionKey(Long subjectId, EmployeeAction action, Long resourceId) {}
+
+    private record CachedDecision(PolicyDecision decision, long subjectVersion, long resourceVersion, long policyGeneration) {}
+
+    // Versions observed before evaluating, so a decision racing with a write is never served afterwards
+    private record Stamp(long subjectVersion, long resourceVersion, long policyGeneration) {}
+
+    private final boolean enabled;
+    private final AuthorizationVersionTracker versionTracker;
+    private final PolicyEngine policyEngine;
+    private final ExpiringCache<DecisionKey, CachedDecision> decisions;
+
+    public DecisionCache(@Value("${authz.decision-cache.enabled:true}") boolean enabled,
+                         @Value("${authz.decision-cache.max-size:100000}") int maxSize,
+                         @Value("${authz.decision-cache.ttl:5m}") Duration ttl,
+                         AuthorizationVersionTracker versionTracker,
+                         PolicyEngine policyEngine,
+                         MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.versionTracker = versionTracker;
+        this.policyEngine = policyEngine;
+        this.decisions = new ExpiringCache<>(maxSize, ttl.toMillis());
+        decisions.registerMetrics(meterRegistry, "authz-decisions");
+    }
+
+    public PolicyDecision decide(Long subjectId, EmployeeAction action, Long resourceId,
+                                 Supplier<PolicyDecision> evaluation) {
+        if (!isCacheable(action)) {
+            return evaluation.get();
+        }
+
+        var key = new DecisionKey(subjectId, action, resourceId);
+        var stamp = stamp(subjectId, resourceId);
+        var cached = decisions.get(key);
+        if (cached != null && isCurrent(cached, stamp)) {
+            return cached.decision();
+        }
+
+        var decision = evaluation.get();
+        decisions.put(key, new CachedDecision(decision, stamp.subjectVersion(), stamp.resourceVersion(),
+                stamp.policyGeneration()));
+        return decision;
+    }
+
+    /**
+     * Answers {@code actions[i]} on {@code resourceIds[i]} from the cache where possible and hands
+     * only the misses to {@code evaluation}, in one call.
+     */
+    public PolicyDecision[] decideAll(Long subjectId, EmployeeAction[] actions, Long[] resourceIds, BatchEvaluation evaluation) {
+        var size = actions.length;
+        if (!enabled) {
+            return evaluation.evaluate(actions, resourceIds);
+        }
+
+        var result = new PolicyDecision[size];
+        var stamps = new Stamp[size];
+        var missing = new int[size];
+        var missCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (isCacheable(actions[i])) {
+                stamps[i] = stamp(subjectId, resourceIds[i]);
+                var cached = decisions.get(new DecisionKey(subjectId, actions[i], resourceIds[i]));
+                if (cached != null && isCurrent(cached, stamps[i])) {
+                    result[i] = cached.decision();
+                    continue;
+                }
+            }
+            missing[missCount++] = i;
+        }
+        if (missCount == 0) {
+            return result;
+        }
+
+        var missActions = new EmployeeAction[missCount];
+        var missIds = new Long[missCount];
+        for (int j = 0; j < missCount; j++) {
+            missActions[j] = actions[missing[j]];
+            missIds[j] = resourceIds[missing[j]];
+        }
+        var evaluated = evaluation.evaluate(missActions, missIds);
+
+        for (int j = 0; j < missCount; j++) {
+            var i = missing[j];
+            result[i] = evaluated[j];
+            var stamp = stamps[i];
+            if (stamp != null) {
+                decisions.put(new DecisionKey(subjectId, actions[i], resourceIds[i]),
+                        new CachedDecision(evaluated[j], stamp.subjectVersion(), stamp.resourceVersion(),
+                                stamp.policyGeneration()));
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        decisions.clear();
+    }
+
+    public ExpiringCache.Stats stats() {
+        return decisions.stats();
+    }
+
+    private boolean isCacheable(EmployeeAction action) {
+        return enabled && (!policyEngine.isEnabled() || policyEngine.current().isCacheable(action));
+    }
+
+    private Stamp stamp(Long subjectId, Long resourceId) {
+        return new Stamp(versionTracker.currentVersion(subjectId),
+                resourceId != null ? versionTracker.subjectVersion(resourceId) : 0L,
+                policyEngine.current().generation());
+    }
+
+    private static boolean isCurrent(CachedDecision cached, Stamp stamp) {
+        return cached.subjectVersion() == stamp.subjectVersion()
+                && cached.resourceVersion() == stamp.resourceVersion()
+                && cached.policyGeneration() == stamp.policyGeneration();
+    }
+}
@@ -0,0 +1,16 @@
+package com.shakhawat.rbacabac.security;
+
+import java.lang.annotation.*;
+
+/**
+ * Delegates to {@link EmployeePermissionEvaluator} for the employee id passed in the named parameter.
+ * The parameter position is resolved once, when the method is compiled.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface EmployeeAccess {
+    EmployeeAction value();
+
+    String idParam() default "id";
+}
@@ -0,0 +1,6 @@
+package com.shakhawat.rbacabac.security;
+
+public enum EmployeeAction {
+    VIEW,
+    MODIFY
+}
@@ -1,52 +1,114 @@
 package com.shakhawat.rbacabac.security;
 
+import com.shakhawat.rbacabac.audit.AuditPipeline;
+import com.shakhawat.rbacabac.entity.RoleType;
+import com.shakhawat.rbacabac.policy.PolicyDecision;
+import com.shakhawat.rbacabac.policy.PolicyEngine;
 import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
-import java.util.Objects;
-
 @Component("employeePermissionEvaluator")
 @RequiredArgsConstructor
 public class EmployeePermissionEvaluator {
 
+    private static final String RESOURCE_TYPE = "employee";
+
+    private final PolicyEngine policyEngine;
+    private final DecisionCache decisionCache;
+    private final AuthorizationSnapshotService authorizationSnapshots;
+    private final AuditPipeline auditPipeline;
+
     public boolean canModify(Long employeeId) {
-        var auth = SecurityContextHolder.getContext().getAuthentication();
-        assert auth != null;
-        var userPrincipal = (UserPrincipal) auth.getPrincipal();
+        return check(SecurityContextHolder.getContext().getAuthentication(), EmployeeAction.MODIFY, employeeId);
+    }
 
-        // Admin can modify anyone
-        if (hasRole(auth, "ROLE_ADMIN")) {
-            return true;
+    public boolean canView(Long employeeId) {
+        return check(SecurityContextHolder.getContext().getAuthentication(), EmployeeAction.VIEW, employeeId);
+    }
+
+    public boolean check(Authentication auth, EmployeeAction action, Long employeeId) {
+        var start = System.nanoTime();
+        if (auth == null || !(auth.getPrincipal() instanceof UserPrincipal userPrincipal)) {
+            audit(-1, action, employeeId, PolicyDecision.builtin(false), start);
+            return false;
+        }
+        var decision = decisionCache.decide(userPrincipal.getId(), action, employeeId,
+                () -> evaluate(auth, userPrincipal, action, employeeId));
+        audit(userPrincipal.getId(), action, employeeId, decision, start);
+        return decision.permitted();
+    }
+
+    public boolean[] checkAll(Authentication auth, EmployeeAction[] actions, Long[] employeeIds) {
+        var start = System.nanoTime();
+        var permitted = new boolean[actions.length];
+        if (auth == null || !(auth.getPrincipal() instanceof UserPrincipal userPrincipal)) {
+            for (int i = 0; i < actions.length; i++) {
+                audit(-1, actions[i], employeeIds[i], PolicyDecision.builtin(false), start);
+            }
+            return permitted;
+        }
+
+        var decisions = decisionCache.decideAll(userPrincipal.getId(), actions, employeeIds, (missActions, missIds) -> {
+            if (policyEngine.isEnabled()) {
+                return policyEngine.evaluateAll(userPrincipal, AuthoritySet.from(auth), missActions, missIds);
+            }
+            var evaluated = new PolicyDecision[missActions.length];
+            for (int i = 0; i < missActions.length; i++) {
+                evaluated[i] = evaluate(auth, userPrincipal, missActions[i], missIds[i]);
+            }
+            return evaluated;
+        });
+
+        // Every decision of a batch is audited with the latency of the whole batch
+        for (int i = 0; i < decisions.length; i++) {
+            permitted[i] = decisions[i].permitted();
+            audit(userPrincipal.getId(), actions[i], employeeIds[i], decisions[i], start);
+        }
+        return permitted;
+    }
+
+    private PolicyDecision evaluate(Authentication auth, UserPrincipal userPrincipal, EmployeeAction action, Long employeeId) {
+        if (policyEngine.isEnabled()) {
+            return policyEngine.evaluate(userPrincipal, AuthoritySet.from(auth), action, employeeId);
         }
+        return PolicyDecision.builtin(switch (action) {
+            case VIEW -> canView(auth, employeeId);
+            case MODIFY -> canModify(auth, employeeId);
+        });
+    }
+
+    private void audit(long subjectId, EmployeeAction action, Long employeeId, PolicyDecision decision, long start) {
+        auditPipeline.record(subjectId, action.name(), RESOURCE_TYPE, employeeId != null ? employeeId : -1,
+                decision.permitted(), decision.policyId(), System.nanoTime() - start);
+    }
 
-        // HR can modify non-admin employees
-        if (hasRole(auth, "ROLE_HR")) {
+    public boolean canModify(Authentication auth, Long employeeId) {
+        if (auth == null || !(auth.getPrincipal() instanceof UserPrincipal userPrincipal)) {
+            return false;
+        }
+
+        // HR and above (admin) can modify anyone
+        if (AuthoritySet.from(auth).hasAny(authorizationSnapshots.current().atLeast(RoleType.ROLE_HR))) {
             return true;
         }
 
         // Users can only modify themselves
-        assert userPrincipal != null;
         return userPrincipal.getId().equals(employeeId);
     }
 
-    public boolean canView(Long employeeId) {
-        var auth = SecurityContextHolder.getContext().getAuthentication();
-        assert auth != null;
-        var userPrincipal = (UserPrincipal) auth.getPrincipal();
+    public boolean canView(Authentication auth, Long employeeId) {
+        if (auth == null || !(auth.getPrincipal() instanceof UserPrincipal userPrincipal)) {
+            return false;
+        }
 
         // Manager and above can view anyone
-        if (hasRole(auth, "ROLE_ADMIN") || hasRole(auth, "ROLE_MANAGER") || hasRole(auth, "ROLE_HR")) {
+        if (AuthoritySet.from(auth).hasAny(authorizationSnapshots.current().atLeast(RoleType.ROLE_MANAGER))) {
             return true;
         }
 
         // Users can view themselves
-        assert userPrincipal != null;
         return userPrincipal.getId().equals(employeeId);
     }
-
-    private boolean hasRole(org.springframework.security.core.Authentication auth, String role) {
-        return auth.getAuthorities().stream()
-                .anyMatch(a -> Objects.equals(a.getAuthority(), role));
-    }
 }
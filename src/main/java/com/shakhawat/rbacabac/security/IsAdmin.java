@@ -1,9 +1,9 @@
 package com.shakhawat.rbacabac.security;
 
-import org.springframework.security.access.prepost.PreAuthorize;
+import com.shakhawat.rbacabac.entity.RoleType;
 import java.lang.annotation.*;
 
 @Target({ElementType.METHOD, ElementType.TYPE})
 @Retention(RetentionPolicy.RUNTIME)
-@PreAuthorize("hasRole('ADMIN')")
+@RequiresRole(RoleType.ROLE_ADMIN)
 public @interface IsAdmin {}
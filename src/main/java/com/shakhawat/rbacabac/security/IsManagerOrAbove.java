@@ -1,9 +1,9 @@
 package com.shakhawat.rbacabac.security;
 
-import org.springframework.security.access.prepost.PreAuthorize;
+import com.shakhawat.rbacabac.entity.RoleType;
 import java.lang.annotation.*;
 
 @Target({ElementType.METHOD, ElementType.TYPE})
 @Retention(RetentionPolicy.RUNTIME)
-@PreAuthorize("hasAnyRole('ADMIN', 'MANAGER', 'HR')")
+@RequiresRole(value = RoleType.ROLE_MANAGER, orAbove = true)
 public @interface IsManagerOrAbove {}
@@ -4,7 +4,7 @@ import jakarta.servlet.*;
 import jakarta.servlet.http.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
@@ -18,6 +18,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtTokenProvider tokenProvider;
     private final CustomUserDetailsService userDetailsService;
+    private final AuthorizationVersionTracker versionTracker;
+    private final AccessTokenDenylist denylist;
+
+    @Value("${jwt.stateless-principal:false}")
+    private boolean statelessPrincipal;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
@@ -26,13 +31,24 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             var jwt = tokenProvider.resolveToken(request);
 
-            if (jwt != null && tokenProvider.validateToken(jwt)) {
-                var userId = tokenProvider.getUserIdFromToken(jwt);
-                var userDetails = userDetailsService.loadUserById(userId);
+            var claims = jwt != null ? tokenProvider.parseAccessToken(jwt).orElse(null) : null;
+
+            if (claims != null && !versionTracker.isCurrent(claims.userId(), claims.authzVersion())) {
+                log.debug("Rejecting stale access token for user: {}", claims.userId());
+                claims = null;
+            }
+
+            if (claims != null && denylist.isRevoked(claims)) {
+                log.debug("Rejecting revoked access token for user: {}", claims.userId());
+                claims = null;
+            }
+
+            if (claims != null) {
+                var principal = statelessPrincipal
+                        ? UserPrincipal.fromClaims(claims)
+                        : userDetailsService.loadUserById(claims.userId());
 
-                var authentication = new UsernamePasswordAuthenticationToken(
-                        userDetails, null, userDetails.getAuthorities()
-                );
+                var authentication = new UserPrincipalAuthenticationToken(principal);
                 authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 
                 SecurityContextHolder.getContext().setAuthentication(authentication);
@@ -5,22 +5,38 @@ import io.jsonwebtoken.security.Keys;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Component;
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 
 @Component
 public class JwtTokenProvider {
 
-    @Value("${jwt.secret}")
-    private String jwtSecret;
+    private final long jwtExpiration;
+    private final boolean compactAuthorities;
+    private final AuthorizationVersionTracker versionTracker;
+    private final VerifiedTokenCache verifiedTokenCache;
 
-    @Value("${jwt.expiration}")
-    private long jwtExpiration;
+    // Key and parser are immutable and thread-safe, so they are built once and shared
+    private final SecretKey signingKey;
+    private final JwtParser jwtParser;
 
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes());
+    public JwtTokenProvider(@Value("${jwt.secret}") String jwtSecret,
+                            @Value("${jwt.expiration}") long jwtExpiration,
+                            @Value("${jwt.compact-authorities:false}") boolean compactAuthorities,
+                            AuthorizationVersionTracker versionTracker,
+                            VerifiedTokenCache verifiedTokenCache) {
+        this.jwtExpiration = jwtExpiration;
+        this.compactAuthorities = compactAuthorities;
+        this.versionTracker = versionTracker;
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        this.jwtParser = Jwts.parser()
+                .verifyWith(signingKey)
+                .build();
     }
 
     public String generateToken(Authentication authentication) {
@@ -29,41 +45,81 @@ public class JwtTokenProvider {
         var expiryDate = new Date(now.getTime() + jwtExpiration);
 
         assert userPrincipal != null;
-        var roles = userPrincipal.getAuthorities().stream()
-                .map(Object::toString)
-                .collect(Collectors.toList());
-
-        return Jwts.builder()
+        var builder = Jwts.builder()
+                .id(UUID.randomUUID().toString())
                 .subject(Long.toString(userPrincipal.getId()))
                 .claim("email", userPrincipal.getEmail())
-                .claim("roles", roles)
+                .claim("dept", userPrincipal.getDepartment())
+                .claim("pos", userPrincipal.getPosition())
+                .claim("av", versionTracker.currentVersion(userPrincipal.getId()))
                 .issuedAt(now)
                 .expiration(expiryDate)
-                .signWith(getSigningKey())
-                .compact();
+                .signWith(signingKey);
+
+        if (compactAuthorities) {
+            addCompactAuthorities(builder, userPrincipal.getAuthorities());
+        } else {
+            var roles = userPrincipal.getAuthorities().stream()
+                    .map(Object::toString)
+                    .collect(Collectors.toList());
+            builder.claim("roles", roles);
+        }
+
+        return builder.compact();
     }
 
-    public Long getUserIdFromToken(String token) {
-        var claims = Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-        return Long.parseLong(claims.getSubject());
+    // Registered authorities go into the "pm" bitmask, anything unknown stays in the "roles" list
+    private void addCompactAuthorities(JwtBuilder builder, Collection<? extends GrantedAuthority> authorities) {
+        long mask = 0;
+        List<String> unregistered = null;
+        for (var authority : authorities) {
+            var bit = AuthorityRegistry.bitOf(authority.getAuthority());
+            if (bit >= 0) {
+                mask |= 1L << bit;
+            } else {
+                if (unregistered == null) {
+                    unregistered = new ArrayList<>();
+                }
+                unregistered.add(authority.getAuthority());
+            }
+        }
+
+        builder.claim("pm", AuthorityRegistry.encode(mask))
+                .claim("pv", AuthorityRegistry.VERSION);
+        if (unregistered != null) {
+            builder.claim("roles", unregistered);
+        }
     }
 
-    public boolean validateToken(String token) {
+    /**
+     * Verifies the signature and expiry of the token exactly once and returns its claims,
+     * or an empty result if the token is malformed, tampered with or expired.
+     * Tokens verified earlier are served from {@link VerifiedTokenCache} until their exp.
+     */
+    public Optional<AccessTokenClaims> parseAccessToken(String token) {
+        var cached = verifiedTokenCache.get(token);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
         try {
-            Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token);
-            return true;
+            var claims = AccessTokenClaims.from(jwtParser.parseSignedClaims(token).getPayload());
+            verifiedTokenCache.put(token, claims);
+            return Optional.of(claims);
         } catch (JwtException | IllegalArgumentException e) {
-            return false;
+            return Optional.empty();
         }
     }
 
+    public Long getUserIdFromToken(String token) {
+        var claims = jwtParser.parseSignedClaims(token).getPayload();
+        return Long.parseLong(claims.getSubject());
+    }
+
+    public boolean validateToken(String token) {
+        return parseAccessToken(token).isPresent();
+    }
+
     public String resolveToken(HttpServletRequest request) {
         var bearerToken = request.getHeader("Authorization");
         if (bearerToken != null && bearerToken.startsWith("Bearer ")) {
@@ -0,0 +1,104 @@
+package com.shakhawat.rbacabac.security;
+
+import com.shakhawat.rbacabac.util.ExpiringCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+@Slf4j
+@Component
+public class PrincipalCache {
+
+    // Stamped with the version seen before the load, so a load racing with a write is never served afterwards
+    private record CachedPrincipal(UserPrincipal principal, long version) {}
+
+    private final boolean enabled;
+    private final AuthorizationVersionTracker versionTracker;
+    private final ExpiringCache<Long, CachedPrincipal> byId;
+    private final ExpiringCache<String, Long> idByEmail;
+
+    public PrincipalCache(@Value("${security.principal-cache.enabled:true}") boolean enabled,
+                          @Value("${security.principal-cache.max-size:10000}") int maxSize,
+                          @Value("${security.principal-cache.ttl:60s}") Duration ttl,
+                          AuthorizationVersionTracker versionTracker,
+                          MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.versionTracker = versionTracker;
+        this.byId = new ExpiringCache<>(maxSize, ttl.toMillis());
+        this.idByEmail = new ExpiringCache<>(maxSize, ttl.toMillis());
+        byId.registerMetrics(meterRegistry, "principals");
+    }
+
+    public UserPrincipal getById(Long id, Supplier<UserPrincipal> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        var cached = byId.get(id);
+        if (cached != null && cached.version() == versionTracker.currentVersion(id)) {
+            return cached.principal();
+        }
+        return load(id, loader);
+    }
+
+    public UserPrincipal getByEmail(String email, Supplier<UserPrincipal> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        var id = idByEmail.get(email);
+        if (id != null) {
+            var cached = byId.get(id);
+            if (cached != null
+                    && cached.version() == versionTracker.currentVersion(id)
+                    && email.equals(cached.principal().getEmail())) {
+                return cached.principal();
+            }
+        }
+        return load(id, loader);
+    }
+
+    public void evict(Long id) {
+        var cached = byId.get(id);
+        byId.invalidate(id);
+        if (cached != null) {
+            idByEmail.invalidate(cached.principal().getEmail());
+        }
+    }
+
+    public void evictAll() {
+        byId.clear();
+        idByEmail.clear();
+    }
+
+    public ExpiringCache.Stats stats() {
+        return byId.stats();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAuthorizationChanged(AuthorizationChangedEvent event) {
+        if (event.isGlobal()) {
+            evictAll();
+        } else {
+            evict(event.employeeId());
+        }
+        log.debug("Principal cache invalidated for: {}", event.isGlobal() ? "all employees" : event.employeeId());
+    }
+
+    private UserPrincipal load(Long knownId, Supplier<UserPrincipal> loader) {
+        var versionBeforeLoad = knownId != null ? versionTracker.currentVersion(knownId) : -1L;
+        var principal = loader.get();
+
+        idByEmail.put(principal.getEmail(), principal.getId());
+        // Without a version taken before the load we cannot prove freshness, so only the index is kept
+        if (versionBeforeLoad >= 0 && knownId.equals(principal.getId())) {
+            byId.put(principal.getId(), new CachedPrincipal(principal, versionBeforeLoad));
+        }
+        return principal;
+    }
+}
@@ -0,0 +1,14 @@
+package com.shakhawat.rbacabac.security;
+
+import java.lang.annotation.*;
+
+/**
+ * Grants access when the caller holds any of the listed authorities.
+ * Checked by {@link CompiledAuthorizationManager} against the caller's {@link AuthoritySet}, no SpEL involved.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RequiresAuthority {
+    String[] value();
+}
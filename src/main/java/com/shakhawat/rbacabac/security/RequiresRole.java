@@ -0,0 +1,18 @@
+package com.shakhawat.rbacabac.security;
+
+import com.shakhawat.rbacabac.entity.RoleType;
+
+import java.lang.annotation.*;
+
+/**
+ * Grants access when the caller has any of the listed roles, or with {@code orAbove}
+ * any role that inherits one of them in the role hierarchy.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RequiresRole {
+    RoleType[] value();
+
+    boolean orAbove() default false;
+}
@@ -0,0 +1,9 @@
+package com.shakhawat.rbacabac.security;
+
+import com.shakhawat.rbacabac.entity.RoleType;
+
+/**
+ * Published when {@code role} starts inheriting {@code inherits} ({@code null} to inherit nothing).
+ */
+public record RoleHierarchyChangedEvent(RoleType role, RoleType inherits) {
+}
@@ -0,0 +1,8 @@
+package com.shakhawat.rbacabac.security;
+
+/**
+ * Published when sessions of an employee are revoked (logout, revoke-all), so anything
+ * that remembers already verified tokens for that subject can forget them.
+ */
+public record TokensRevokedEvent(Long employeeId) {
+}
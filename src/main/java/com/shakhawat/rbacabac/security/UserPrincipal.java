@@ -3,11 +3,7 @@ package com.shakhawat.rbacabac.security;
 import com.shakhawat.rbacabac.entity.Employee;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
-import org.springframework.security.core.*;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
-import java.util.*;
-import java.util.stream.Collectors;
 
 @Getter
 @AllArgsConstructor
@@ -15,25 +11,30 @@ public class UserPrincipal implements UserDetails {
     private Long id;
     private String email;
     private String password;
-    private Collection<? extends GrantedAuthority> authorities;
-
-    public static UserPrincipal create(Employee employee) {
-        var authorities = employee.getRoles().stream()
-                .flatMap(role -> {
-                    var roleAuth = new SimpleGrantedAuthority(role.getName().name());
-                    var permissionAuths = role.getPermissions().stream()
-                            .map(permission -> new SimpleGrantedAuthority(permission.getName()))
-                            .collect(Collectors.toSet());
-                    permissionAuths.add(roleAuth);
-                    return permissionAuths.stream();
-                })
-                .collect(Collectors.toSet());
+    private String department;
+    private String position;
+    private AuthoritySet authorities;
 
+    public static UserPrincipal create(Employee employee, AuthorizationSnapshot snapshot) {
         return new UserPrincipal(
                 employee.getId(),
                 employee.getEmail(),
                 employee.getPassword(),
-                authorities
+                employee.getDepartment(),
+                employee.getPosition(),
+                snapshot.authoritiesOf(employee.getRoles())
+        );
+    }
+
+    // Builds the principal from already verified token claims, without touching the database
+    public static UserPrincipal fromClaims(AccessTokenClaims claims) {
+        return new UserPrincipal(
+                claims.userId(),
+                claims.email(),
+                null,
+                claims.department(),
+                claims.position(),
+                AuthoritySet.of(claims.authorityMask(), claims.roles())
         );
     }
 
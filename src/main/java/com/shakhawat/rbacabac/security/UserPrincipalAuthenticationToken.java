@@ -0,0 +1,35 @@
+package com.shakhawat.rbacabac.security;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+/**
+ * Authentication for a verified {@link UserPrincipal}. Unlike
+ * {@code UsernamePasswordAuthenticationToken} it does not copy the authorities into a new list,
+ * it hands out the principal's shared {@link AuthoritySet}.
+ */
+public class UserPrincipalAuthenticationToken extends AbstractAuthenticationToken {
+
+    private final UserPrincipal principal;
+
+    public UserPrincipalAuthenticationToken(UserPrincipal principal) {
+        super(AuthorityUtils.NO_AUTHORITIES);
+        this.principal = principal;
+        setAuthenticated(true);
+    }
+
+    @Override
+    public Object getCredentials() {
+        return null;
+    }
+
+    @Override
+    public UserPrincipal getPrincipal() {
+        return principal;
+    }
+
+    @Override
+    public AuthoritySet getAuthorities() {
+        return principal.getAuthorities();
+    }
+}
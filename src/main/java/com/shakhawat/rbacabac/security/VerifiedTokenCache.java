@@ -0,0 +1,89 @@
+package com.shakhawat.rbacabac.security;
+
+import com.shakhawat.rbacabac.util.ExpiringCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Maps the SHA-256 digest of an access token to its already verified claims.
+ * Hashing is far cheaper than HMAC verification plus claim parsing, and storing the
+ * digest instead of the token keeps every key at 32 bytes.
+ */
+@Slf4j
+@Component
+public class VerifiedTokenCache {
+
+    private record TokenDigest(long h0, long h1, long h2, long h3) {}
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    private final boolean enabled;
+    private final ExpiringCache<TokenDigest, AccessTokenClaims> cache;
+
+    public VerifiedTokenCache(@Value("${jwt.verified-token-cache.enabled:true}") boolean enabled,
+                              @Value("${jwt.verified-token-cache.max-size:50000}") int maxSize,
+                              MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        // Every entry carries its own expiry (the token's exp), the default TTL is never used
+        this.cache = new ExpiringCache<>(maxSize, 0);
+        cache.registerMetrics(meterRegistry, "verified-tokens");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public AccessTokenClaims get(String token) {
+        return enabled ? cache.get(digest(token)) : null;
+    }
+
+    public void put(String token, AccessTokenClaims claims) {
+        if (enabled && claims.expiresAt() != null) {
+            cache.put(digest(token), claims, claims.expiresAt().toEpochMilli());
+        }
+    }
+
+    public void evictSubject(Long employeeId) {
+        // Revocations are rare compared to lookups, so a scan beats maintaining a reverse index
+        cache.invalidateIf((digest, claims) -> claims.userId().equals(employeeId));
+    }
+
+    public ExpiringCache.Stats stats() {
+        return cache.stats();
+    }
+
+    @EventListener
+    public void onTokensRevoked(TokensRevokedEvent event) {
+        evictSubject(event.employeeId());
+        log.debug("Verified token cache cleared for employee: {}", event.employeeId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAuthorizationChanged(AuthorizationChangedEvent event) {
+        if (event.isGlobal()) {
+            cache.clear();
+        } else {
+            evictSubject(event.employeeId());
+        }
+    }
+
+    private static TokenDigest digest(String token) {
+        var buffer = ByteBuffer.wrap(SHA_256.get().digest(token.getBytes(StandardCharsets.UTF_8)));
+        return new TokenDigest(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+    }
+}
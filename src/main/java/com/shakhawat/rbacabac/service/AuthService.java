@@ -3,6 +3,9 @@ package com.shakhawat.rbacabac.service;
 import com.shakhawat.rbacabac.dto.AuthResponse;
 import com.shakhawat.rbacabac.dto.LoginRequest;
 import com.shakhawat.rbacabac.exception.UnauthorizedException;
+import com.shakhawat.rbacabac.security.AccessTokenDenylist;
+import com.shakhawat.rbacabac.security.AuthorizationSnapshotService;
+import com.shakhawat.rbacabac.security.AuthorizationVersionTracker;
 import com.shakhawat.rbacabac.security.JwtTokenProvider;
 import com.shakhawat.rbacabac.security.UserPrincipal;
 import jakarta.servlet.http.HttpServletRequest;
@@ -22,6 +25,9 @@ public class AuthService {
     private final AuthenticationManager authenticationManager;
     private final JwtTokenProvider tokenProvider;
     private final RefreshTokenService refreshTokenService;
+    private final AuthorizationSnapshotService authorizationSnapshots;
+    private final AccessTokenDenylist accessTokenDenylist;
+    private final AuthorizationVersionTracker versionTracker;
 
     @Value("${jwt.expiration}")
     private long jwtExpiration;
@@ -29,6 +35,9 @@ public class AuthService {
     public AuthResponse login(LoginRequest request, HttpServletRequest httpRequest) {
         log.info("Login attempt for email: {}", request.getEmail());
 
+        // Before the principal is loaded, so its permissions and the token's version agree with other nodes
+        versionTracker.catchUp();
+
         var authentication = authenticationManager.authenticate(
                 new UsernamePasswordAuthenticationToken(
                         request.getEmail(),
@@ -56,7 +65,7 @@ public class AuthService {
 
         return AuthResponse.builder()
                 .accessToken(accessToken)
-                .refreshToken(refreshToken.getToken())
+                .refreshToken(refreshToken)
                 .expiresIn(jwtExpiration / 1000) // Convert to seconds
                 .id(userPrincipal.getId())
                 .email(userPrincipal.getEmail())
@@ -67,41 +76,49 @@ public class AuthService {
     public AuthResponse refreshToken(String refreshTokenStr, HttpServletRequest request) {
         log.info("Refresh token request");
 
-        var refreshToken = refreshTokenService.verifyRefreshToken(refreshTokenStr);
-        var employee = refreshToken.getEmployee();
+        versionTracker.catchUp();
+
+        var rotation = refreshTokenService.rotateRefreshToken(refreshTokenStr, request);
 
-        var userDetails = UserPrincipal.create(employee);
+        var userDetails = new UserPrincipal(
+                rotation.employeeId(),
+                rotation.email(),
+                null,
+                rotation.department(),
+                rotation.position(),
+                authorizationSnapshots.current().authoritiesOfRoleIds(rotation.roleIds())
+        );
         var authentication = new UsernamePasswordAuthenticationToken(
                 userDetails, null, userDetails.getAuthorities()
         );
 
         var newAccessToken = tokenProvider.generateToken(authentication);
 
-        // Optionally rotate refresh token (create new one and revoke old)
-        refreshTokenService.revokeRefreshToken(refreshTokenStr);
-        var newRefreshToken = refreshTokenService.createRefreshToken(employee.getId(), request);
-
         var roles = userDetails.getAuthorities().stream()
                 .map(Object::toString)
                 .collect(Collectors.toSet());
 
-        log.info("Tokens refreshed successfully for user: {}", employee.getEmail());
+        log.info("Tokens refreshed successfully for user: {}", rotation.email());
 
         return AuthResponse.builder()
                 .accessToken(newAccessToken)
-                .refreshToken(newRefreshToken.getToken())
+                .refreshToken(rotation.refreshToken())
                 .expiresIn(jwtExpiration / 1000)
-                .id(employee.getId())
-                .email(employee.getEmail())
+                .id(rotation.employeeId())
+                .email(rotation.email())
                 .roles(roles)
                 .build();
     }
 
-    public void logout(String refreshToken) {
+    public void logout(String refreshToken, HttpServletRequest request) {
         log.info("Logout request");
         if (refreshToken != null && !refreshToken.isBlank()) {
             refreshTokenService.revokeRefreshToken(refreshToken);
         }
+        var accessToken = tokenProvider.resolveToken(request);
+        if (accessToken != null) {
+            tokenProvider.parseAccessToken(accessToken).ifPresent(accessTokenDenylist::revoke);
+        }
         SecurityContextHolder.clearContext();
         log.info("User logged out successfully");
     }
@@ -7,10 +7,12 @@ import com.shakhawat.rbacabac.entity.RoleType;
 import com.shakhawat.rbacabac.exception.ResourceAlreadyExistsException;
 import com.shakhawat.rbacabac.exception.ResourceNotFoundException;
 import com.shakhawat.rbacabac.repository.EmployeeRepository;
-import com.shakhawat.rbacabac.repository.RoleRepository;
+import com.shakhawat.rbacabac.security.AuthorizationSnapshotService;
+import com.shakhawat.rbacabac.security.AuthorizationChangedEvent;
 import com.shakhawat.rbacabac.util.EmployeeMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -26,9 +28,10 @@ import java.util.stream.Collectors;
 public class EmployeeService {
 
     private final EmployeeRepository employeeRepository;
-    private final RoleRepository roleRepository;
+    private final AuthorizationSnapshotService authorizationSnapshots;
     private final PasswordEncoder passwordEncoder;
     private final EmployeeMapper employeeMapper;
+    private final ApplicationEventPublisher eventPublisher;
 
     public EmployeeResponse createEmployee(EmployeeRequest request) {
         log.info("Creating employee with email: {}", request.getEmail());
@@ -51,19 +54,18 @@ public class EmployeeService {
         // Assign roles
         if (request.getRoles() != null && !request.getRoles().isEmpty()) {
             var roles = request.getRoles().stream()
-                    .map(roleName -> roleRepository.findByName(RoleType.valueOf(roleName))
-                            .orElseThrow(() -> new ResourceNotFoundException("Role not found: " + roleName)))
+                    .map(roleName -> authorizationSnapshots.roleReference(RoleType.valueOf(roleName)))
                     .collect(Collectors.toSet());
             employee.setRoles(roles);
         } else {
             // Default role
-            var defaultRole = roleRepository.findByName(RoleType.ROLE_EMPLOYEE)
-                    .orElseThrow(() -> new ResourceNotFoundException("Default role not found"));
-            employee.setRoles(Set.of(defaultRole));
+            employee.setRoles(Set.of(authorizationSnapshots.roleReference(RoleType.ROLE_EMPLOYEE)));
         }
 
         var savedEmployee = employeeRepository.save(employee);
         log.info("Employee created successfully with id: {}", savedEmployee.getId());
+        // Decisions cached while this id did not exist yet must not be served for the new employee
+        eventPublisher.publishEvent(AuthorizationChangedEvent.forEmployee(savedEmployee.getId()));
 
         return employeeMapper.toResponse(savedEmployee);
     }
@@ -134,13 +136,13 @@ public class EmployeeService {
         // Update roles if provided
         if (request.getRoles() != null && !request.getRoles().isEmpty()) {
             var roles = request.getRoles().stream()
-                    .map(roleName -> roleRepository.findByName(RoleType.valueOf(roleName))
-                            .orElseThrow(() -> new ResourceNotFoundException("Role not found: " + roleName)))
+                    .map(roleName -> authorizationSnapshots.roleReference(RoleType.valueOf(roleName)))
                     .collect(Collectors.toSet());
             employee.setRoles(roles);
         }
 
         var updatedEmployee = employeeRepository.save(employee);
+        eventPublisher.publishEvent(AuthorizationChangedEvent.forEmployee(id));
         log.info("Employee updated successfully with id: {}", updatedEmployee.getId());
 
         return employeeMapper.toResponse(updatedEmployee);
@@ -153,6 +155,7 @@ public class EmployeeService {
                 .orElseThrow(() -> new ResourceNotFoundException("Employee not found with id: " + id));
 
         employeeRepository.delete(employee);
+        eventPublisher.publishEvent(AuthorizationChangedEvent.forEmployee(id));
         log.info("Employee deleted successfully with id: {}", id);
     }
 
@@ -164,6 +167,7 @@ public class EmployeeService {
 
         employee.setActive(true);
         var updatedEmployee = employeeRepository.save(employee);
+        eventPublisher.publishEvent(AuthorizationChangedEvent.forEmployee(id));
 
         return employeeMapper.toResponse(updatedEmployee);
     }
@@ -176,6 +180,7 @@ public class EmployeeService {
 
         employee.setActive(false);
         var updatedEmployee = employeeRepository.save(employee);
+        eventPublisher.publishEvent(AuthorizationChangedEvent.forEmployee(id));
 
         return employeeMapper.toResponse(updatedEmployee);
     }
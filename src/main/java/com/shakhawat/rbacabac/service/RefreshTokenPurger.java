@@ -0,0 +1,218 @@
+package com.shakhawat.rbacabac.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.regex.Pattern;
+
+/**
+ * Removes expired refresh tokens without one long-running {@code DELETE}.
+ * <p>
+ * A plain table is purged in chunks of {@code batch-size} rows, walking the {@code expiry_date}
+ * index upwards from a watermark that is persisted after every chunk, with a pause between chunks
+ * and a time budget per run. A run that hits its budget simply resumes from the watermark next time.
+ * <p>
+ * If {@code refresh_tokens} is partitioned by {@code expiry_date} into monthly partitions named
+ * {@code refresh_tokens_pYYYYMM}, partitions whose month has fully expired are dropped whole and
+ * upcoming ones are created ahead of time; no rows are deleted.
+ * <p>
+ * Every node schedules the purge, but only the one holding the advisory lock runs it.
+ */
+@Slf4j
+@Component
+public class RefreshTokenPurger {
+
+    // Arbitrary, but must be the same on every node
+    private static final long LOCK_KEY = 0x52544B5055524745L;
+
+    private static final String TRY_LOCK = "SELECT pg_try_advisory_lock(?)";
+    private static final String UNLOCK = "SELECT pg_advisory_unlock(?)";
+
+    private static final String IS_PARTITIONED =
+            "SELECT coalesce((SELECT relkind = 'p' FROM pg_class WHERE oid = to_regclass('refresh_tokens')), false)";
+    private static final String PARTITIONS = "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = to_regclass('refresh_tokens')";
+    private static final Pattern PARTITION_NAME = Pattern.compile("refresh_tokens_p(\\d{6})");
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final String CREATE_WATERMARK_TABLE = """
+            CREATE TABLE IF NOT EXISTS refresh_token_purge_watermark (
+                id INTEGER PRIMARY KEY,
+                expiry_date TIMESTAMP NOT NULL
+            )""";
+    private static final String READ_WATERMARK = "SELECT expiry_date FROM refresh_token_purge_watermark WHERE id = 1";
+    private static final String WRITE_WATERMARK = "INSERT INTO refresh_token_purge_watermark (id, expiry_date) VALUES (1, ?) " +
+            "ON CONFLICT (id) DO UPDATE SET expiry_date = EXCLUDED.expiry_date";
+
+    // Walks the expiry_date index from the watermark; the oldest rows go first
+    private static final String DELETE_CHUNK = """
+            WITH doomed AS (
+                SELECT id, expiry_date FROM refresh_tokens
+                WHERE expiry_date >= ? AND expiry_date < ?
+                ORDER BY expiry_date
+                LIMIT ?
+            ), deleted AS (
+                DELETE FROM refresh_tokens rt USING doomed WHERE rt.id = doomed.id
+                RETURNING doomed.expiry_date
+            )
+            SELECT count(*) AS deleted, max(expiry_date) AS watermark FROM deleted
+            """;
+
+    private record Chunk(int deleted, LocalDateTime watermark) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final Duration pause;
+    private final Duration maxDuration;
+    private final Duration lookback;
+    private final int partitionsAhead;
+
+    public RefreshTokenPurger(JdbcTemplate jdbcTemplate,
+                              @Value("${jwt.refresh-purge.batch-size:5000}") int batchSize,
+                              @Value("${jwt.refresh-purge.pause:200ms}") Duration pause,
+                              @Value("${jwt.refresh-purge.max-duration:2m}") Duration maxDuration,
+                              @Value("${jwt.refresh-purge.lookback:1d}") Duration lookback,
+                              @Value("${jwt.refresh-purge.partitions-ahead:2}") int partitionsAhead) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+        this.pause = pause;
+        this.maxDuration = maxDuration;
+        this.lookback = lookback;
+        this.partitionsAhead = partitionsAhead;
+    }
+
+    @Scheduled(cron = "${jwt.refresh-purge.cron:0 */15 * * * *}")
+    public void purgeExpiredTokens() {
+        try {
+            purge();
+        } catch (DataAccessException e) {
+            log.warn("Refresh token purge failed, will retry on the next run: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Runs one purge pass if no other node is running one. Must not be called inside a transaction:
+     * the lock and every chunk use their own auto-committed statements on one pinned connection.
+     *
+     * @return rows deleted or partitions dropped, or -1 if another node holds the lock
+     */
+    public long purge() {
+        return jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            var autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(true);
+            var pinned = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+            try {
+                if (!Boolean.TRUE.equals(pinned.queryForObject(TRY_LOCK, Boolean.class, LOCK_KEY))) {
+                    log.debug("Refresh token purge is running on another node");
+                    return -1L;
+                }
+                try {
+                    return Boolean.TRUE.equals(pinned.queryForObject(IS_PARTITIONED, Boolean.class))
+                            ? dropExpiredPartitions(pinned)
+                            : deleteInChunks(pinned);
+                } finally {
+                    pinned.queryForObject(UNLOCK, Boolean.class, LOCK_KEY);
+                }
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        });
+    }
+
+    private long deleteInChunks(JdbcTemplate pinned) {
+        pinned.execute(CREATE_WATERMARK_TABLE);
+
+        var now = LocalDateTime.now();
+        var deadline = System.nanoTime() + maxDuration.toNanos();
+        // Start a little below the watermark in case a node's clock lagged when rows were written
+        var watermark = pinned.queryForList(READ_WATERMARK, LocalDateTime.class).stream()
+                .findFirst()
+                .map(value -> value.minus(lookback))
+                .orElse(LocalDateTime.of(1970, 1, 1, 0, 0));
+
+        long total = 0;
+        while (true) {
+            var chunk = pinned.queryForObject(DELETE_CHUNK,
+                    (rs, rowNum) -> new Chunk(rs.getInt("deleted"),
+                            rs.getTimestamp("watermark") != null ? rs.getTimestamp("watermark").toLocalDateTime() : null),
+                    Timestamp.valueOf(watermark), Timestamp.valueOf(now), batchSize);
+            if (chunk == null || chunk.deleted() == 0) {
+                break;
+            }
+            total += chunk.deleted();
+            watermark = chunk.watermark();
+            pinned.update(WRITE_WATERMARK, Timestamp.valueOf(watermark));
+
+            if (chunk.deleted() < batchSize) {
+                break;
+            }
+            if (System.nanoTime() >= deadline) {
+                log.info("Refresh token purge reached its time budget, resuming from {} on the next run", watermark);
+                break;
+            }
+            if (!sleep(pause)) {
+                break;
+            }
+        }
+
+        if (total > 0) {
+            log.info("Purged {} expired refresh tokens", total);
+        }
+        return total;
+    }
+
+    private long dropExpiredPartitions(JdbcTemplate pinned) {
+        var current = YearMonth.now();
+        for (int i = 0; i <= partitionsAhead; i++) {
+            createPartition(pinned, current.plusMonths(i));
+        }
+
+        long dropped = 0;
+        for (var name : pinned.queryForList(PARTITIONS, String.class)) {
+            var matcher = PARTITION_NAME.matcher(name);
+            if (!matcher.matches()) {
+                continue;
+            }
+            // Every token in the partition expired before the start of the current month
+            var month = YearMonth.parse(matcher.group(1), PARTITION_SUFFIX);
+            if (month.isBefore(current)) {
+                pinned.execute("DROP TABLE IF EXISTS " + name);
+                log.info("Dropped expired refresh token partition {}", name);
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    private void createPartition(JdbcTemplate pinned, YearMonth month) {
+        var name = "refresh_tokens_p" + month.format(PARTITION_SUFFIX);
+        try {
+            pinned.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF refresh_tokens FOR VALUES FROM ('"
+                    + month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')");
+        } catch (DataAccessException e) {
+            log.warn("Could not create refresh token partition {}: {}", name, e.getMessage());
+        }
+    }
+
+    private static boolean sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
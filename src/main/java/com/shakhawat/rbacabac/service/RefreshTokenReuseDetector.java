@@ -0,0 +1,75 @@
+package com.shakhawat.rbacabac.service;
+
+import com.shakhawat.rbacabac.util.ExpiringCache;
+import com.shakhawat.rbacabac.util.GenerationalBloomFilter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers refresh tokens this node has rotated or revoked, keyed by their SHA-256 hex hash.
+ * <p>
+ * A bloom filter of recently revoked hashes tells whether a presented token may be a replay; a
+ * small exact set of hashes whose family has already been revoked lets repeated replays be
+ * rejected without touching the database at all. State is per node: a token revoked elsewhere
+ * is still caught by the database path, just not in memory.
+ */
+@Component
+public class RefreshTokenReuseDetector {
+
+    private final boolean enabled;
+    private final GenerationalBloomFilter revoked;
+    private final ExpiringCache<String, Boolean> handled;
+    private final LongAdder rejected = new LongAdder();
+
+    public RefreshTokenReuseDetector(@Value("${jwt.refresh-reuse.enabled:true}") boolean enabled,
+                                     @Value("${jwt.refresh-reuse.expected-rotations:1000000}") long expectedRotations,
+                                     @Value("${jwt.refresh-reuse.false-positive-rate:0.000001}") double falsePositiveRate,
+                                     @Value("${jwt.refresh-reuse.handled.max-size:100000}") int handledMaxSize,
+                                     @Value("${jwt.refresh-reuse.handled.ttl:1h}") Duration handledTtl,
+                                     MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.revoked = new GenerationalBloomFilter(expectedRotations, falsePositiveRate);
+        this.handled = new ExpiringCache<>(handledMaxSize, handledTtl.toMillis());
+        handled.registerMetrics(meterRegistry, "refresh-token-reuse");
+        FunctionCounter.builder("jwt.refresh.reuse.rejected", rejected, LongAdder::sum).register(meterRegistry);
+    }
+
+    public void recordRevoked(String tokenHash) {
+        if (enabled) {
+            revoked.add(high(tokenHash), low(tokenHash));
+        }
+    }
+
+    public boolean mightBeRevoked(String tokenHash) {
+        return enabled && revoked.mightContain(high(tokenHash), low(tokenHash));
+    }
+
+    // The token's family is already revoked, so a replay needs no further work
+    public boolean isHandled(String tokenHash) {
+        if (enabled && handled.get(tokenHash) != null) {
+            rejected.increment();
+            return true;
+        }
+        return false;
+    }
+
+    public void markHandled(String tokenHash) {
+        if (enabled) {
+            handled.put(tokenHash, Boolean.TRUE);
+        }
+    }
+
+    // The hash is already uniformly distributed, so its first 128 bits serve as the two bloom hashes
+    private static long high(String tokenHash) {
+        return Long.parseUnsignedLong(tokenHash, 0, 16, 16);
+    }
+
+    private static long low(String tokenHash) {
+        return Long.parseUnsignedLong(tokenHash, 16, 32, 16);
+    }
+}
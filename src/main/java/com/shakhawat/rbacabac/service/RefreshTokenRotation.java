@@ -0,0 +1,16 @@
+package com.shakhawat.rbacabac.service;
+
+import java.util.List;
+
+/**
+ * Result of a refresh token rotation: the new refresh token and what is needed to mint an access token.
+ */
+public record RefreshTokenRotation(
+        Long employeeId,
+        String email,
+        String department,
+        String position,
+        List<Long> roleIds,
+        String refreshToken
+) {
+}
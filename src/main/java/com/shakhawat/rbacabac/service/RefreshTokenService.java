@@ -5,15 +5,26 @@ import com.shakhawat.rbacabac.exception.ResourceNotFoundException;
 import com.shakhawat.rbacabac.exception.UnauthorizedException;
 import com.shakhawat.rbacabac.repository.EmployeeRepository;
 import com.shakhawat.rbacabac.repository.RefreshTokenRepository;
+import com.shakhawat.rbacabac.security.AccessTokenDenylist;
+import com.shakhawat.rbacabac.security.ClientIpResolver;
+import com.shakhawat.rbacabac.security.TokensRevokedEvent;
 import com.shakhawat.rbacabac.util.TokenGenerator;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
 
 @Slf4j
 @Service
@@ -21,14 +32,96 @@ import java.time.LocalDateTime;
 @Transactional
 public class RefreshTokenService {
 
+    /*
+     * Revokes the presented token and inserts its successor in one statement. SKIP LOCKED makes a
+     * concurrent rotation of the same token match nothing instead of queueing behind the row lock.
+     */
+    private static final String ROTATE = """
+            WITH old AS (
+                SELECT id, employee_id, family_id FROM refresh_tokens
+                WHERE token_hash = ? AND revoked = false AND expiry_date > ?
+                FOR UPDATE SKIP LOCKED
+            ), revoked AS (
+                UPDATE refresh_tokens rt SET revoked = true, last_used_at = ?
+                FROM old WHERE rt.id = old.id
+                RETURNING rt.employee_id, rt.family_id
+            ), created AS (
+                INSERT INTO refresh_tokens (token_hash, employee_id, family_id, expiry_date, revoked, created_at, ip_address, user_agent)
+                SELECT ?, employee_id, family_id, ?, false, ?, ?, ? FROM revoked
+                RETURNING employee_id
+            )
+            SELECT e.id, e.email, e.department, e.position,
+                   ARRAY(SELECT er.role_id FROM employee_roles er WHERE er.employee_id = e.id) AS role_ids
+            FROM created JOIN employees e ON e.id = created.employee_id
+            """;
+
+    /*
+     * Presenting an already revoked token means it leaked: revoke every live token descended from the
+     * same login. Tokens revoked within the grace period are reported but not treated as reused, so a
+     * client's double-submit of the token it is rotating does not revoke its family. No row means the
+     * token is not revoked at all.
+     */
+    private static final String REVOKE_FAMILY_ON_REUSE = """
+            WITH presented AS (
+                SELECT employee_id, family_id, (last_used_at IS NULL OR last_used_at < ?) AS reused
+                FROM refresh_tokens
+                WHERE token_hash = ? AND revoked = true
+            ), family AS (
+                UPDATE refresh_tokens rt SET revoked = true
+                FROM presented WHERE presented.reused AND rt.family_id = presented.family_id AND rt.revoked = false
+                RETURNING rt.id
+            )
+            SELECT presented.employee_id, presented.reused, (SELECT count(*) FROM family) AS revoked FROM presented
+            """;
+
+    /*
+     * The plaintext token column is only read to hash tokens issued before token_hash existed. Hibernate's
+     * schema update never relaxes constraints, so its NOT NULL and unique constraint are dropped here.
+     */
+    private static final String RELAX_PLAINTEXT_TOKEN = """
+            DO $$
+            DECLARE
+                unique_name text;
+            BEGIN
+                IF EXISTS (SELECT 1 FROM information_schema.columns
+                           WHERE table_schema = current_schema() AND table_name = 'refresh_tokens'
+                             AND column_name = 'token' AND is_nullable = 'NO') THEN
+                    ALTER TABLE refresh_tokens ALTER COLUMN token DROP NOT NULL;
+                END IF;
+                FOR unique_name IN
+                    SELECT con.conname FROM pg_constraint con
+                    JOIN pg_attribute att ON att.attrelid = con.conrelid AND att.attnum = ANY (con.conkey)
+                    WHERE con.conrelid = to_regclass('refresh_tokens') AND con.contype = 'u'
+                      AND att.attname = 'token' AND cardinality(con.conkey) = 1
+                LOOP
+                    EXECUTE format('ALTER TABLE refresh_tokens DROP CONSTRAINT %I', unique_name);
+                END LOOP;
+            END $$
+            """;
+
+    private record FamilyRevocation(Long employeeId, boolean reused, long revoked) {
+    }
+
     private final RefreshTokenRepository refreshTokenRepository;
     private final EmployeeRepository employeeRepository;
     private final TokenGenerator tokenGenerator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JdbcTemplate jdbcTemplate;
+    private final RefreshTokenReuseDetector reuseDetector;
+    private final AccessTokenDenylist accessTokenDenylist;
+    private final ClientIpResolver clientIpResolver;
 
     @Value("${jwt.refresh-expiration:604800000}") // 7 days in milliseconds
     private long refreshTokenExpiration;
 
-    public RefreshToken createRefreshToken(Long employeeId, HttpServletRequest request) {
+    @Value("${jwt.refresh-reuse.grace-period:10s}")
+    private Duration reuseGracePeriod;
+
+    /**
+     * Issues a refresh token for a new login. Only its hash is stored, so the returned plaintext is
+     * the only copy.
+     */
+    public String createRefreshToken(Long employeeId, HttpServletRequest request) {
         var employee = employeeRepository.findById(employeeId)
                 .orElseThrow(() -> new ResourceNotFoundException("Employee not found"));
 
@@ -37,7 +130,8 @@ public class RefreshTokenService {
                 .plusSeconds(refreshTokenExpiration / 1000);
 
         var refreshToken = RefreshToken.builder()
-                .token(token)
+                .tokenHash(tokenGenerator.hashToken(token))
+                .familyId(UUID.randomUUID().toString())
                 .employee(employee)
                 .expiryDate(expiryDate)
                 .revoked(false)
@@ -45,60 +139,138 @@ public class RefreshTokenService {
                 .userAgent(request.getHeader("User-Agent"))
                 .build();
 
-        var savedToken = refreshTokenRepository.save(refreshToken);
+        refreshTokenRepository.save(refreshToken);
         log.info("Refresh token created for employee: {}", employeeId);
 
-        return savedToken;
+        return token;
     }
 
-    public RefreshToken verifyRefreshToken(String token) {
-        var refreshToken = refreshTokenRepository.findByToken(token)
-                .orElseThrow(() -> new UnauthorizedException("Invalid refresh token"));
-
-        if (refreshToken.getRevoked()) {
-            log.warn("Attempted to use revoked refresh token");
+    // Family revocations must survive the UnauthorizedException they end in
+    @Transactional(noRollbackFor = UnauthorizedException.class)
+    public RefreshTokenRotation rotateRefreshToken(String token, HttpServletRequest request) {
+        var tokenHash = tokenGenerator.hashToken(token);
+        if (reuseDetector.isHandled(tokenHash)) {
             throw new UnauthorizedException("Refresh token has been revoked");
         }
-
-        if (refreshToken.isExpired()) {
-            refreshTokenRepository.delete(refreshToken);
-            log.warn("Attempted to use expired refresh token");
-            throw new UnauthorizedException("Refresh token has expired");
+        // A bloom hit may be a false positive; only a revoked row, reused or not, ends the request here
+        if (reuseDetector.mightBeRevoked(tokenHash) && revokeFamilyOnReuse(tokenHash) != null) {
+            throw new UnauthorizedException("Refresh token has been revoked");
         }
 
-        // Update last used timestamp
-        refreshToken.setLastUsedAt(LocalDateTime.now());
-        refreshTokenRepository.save(refreshToken);
+        var now = LocalDateTime.now();
+        var newToken = tokenGenerator.generateRefreshToken();
 
-        return refreshToken;
+        var rotations = jdbcTemplate.query(ROTATE,
+                (rs, rowNum) -> new RefreshTokenRotation(
+                        rs.getLong("id"),
+                        rs.getString("email"),
+                        rs.getString("department"),
+                        rs.getString("position"),
+                        List.of((Long[]) rs.getArray("role_ids").getArray()),
+                        newToken),
+                tokenHash,
+                Timestamp.valueOf(now),
+                Timestamp.valueOf(now),
+                tokenGenerator.hashToken(newToken),
+                Timestamp.valueOf(now.plusSeconds(refreshTokenExpiration / 1000)),
+                Timestamp.valueOf(now),
+                getClientIP(request),
+                request.getHeader("User-Agent"));
+
+        if (rotations.isEmpty()) {
+            throw rotationFailure(tokenHash);
+        }
+
+        var rotation = rotations.getFirst();
+        // No TokensRevokedEvent: access tokens minted earlier stay valid, so there is nothing to evict
+        reuseDetector.recordRevoked(tokenHash);
+        log.info("Refresh token rotated for employee: {}", rotation.employeeId());
+        return rotation;
     }
 
     public void revokeRefreshToken(String token) {
-        var refreshToken = refreshTokenRepository.findByToken(token)
+        var tokenHash = tokenGenerator.hashToken(token);
+        var refreshToken = refreshTokenRepository.findByTokenHash(tokenHash)
                 .orElseThrow(() -> new ResourceNotFoundException("Refresh token not found"));
 
         refreshToken.setRevoked(true);
         refreshTokenRepository.save(refreshToken);
+        reuseDetector.recordRevoked(tokenHash);
+        eventPublisher.publishEvent(new TokensRevokedEvent(refreshToken.getEmployee().getId()));
         log.info("Refresh token revoked");
     }
 
     public void revokeAllUserTokens(Long employeeId) {
         refreshTokenRepository.revokeAllByEmployeeId(employeeId);
+        accessTokenDenylist.revokeIssuedBefore(employeeId, Instant.now());
+        eventPublisher.publishEvent(new TokensRevokedEvent(employeeId));
         log.info("All refresh tokens revoked for employee: {}", employeeId);
     }
 
-    @Scheduled(cron = "0 0 2 * * ?") // Run daily at 2 AM
-    public void cleanupExpiredTokens() {
-        log.info("Running cleanup of expired refresh tokens");
-        refreshTokenRepository.deleteExpiredTokens(LocalDateTime.now());
-        log.info("Expired refresh tokens cleaned up");
+    // Tokens issued before the token_hash and family_id columns existed
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillTokenColumns() {
+        jdbcTemplate.execute(RELAX_PLAINTEXT_TOKEN);
+        var hashed = refreshTokenRepository.backfillTokenHashes();
+        if (hashed > 0) {
+            log.info("Backfilled token hashes and cleared plaintext for {} refresh tokens", hashed);
+        }
+        var grouped = refreshTokenRepository.backfillFamilyIds();
+        if (grouped > 0) {
+            log.info("Backfilled family ids for {} refresh tokens", grouped);
+        }
     }
 
-    private String getClientIP(HttpServletRequest request) {
-        var xfHeader = request.getHeader("X-Forwarded-For");
-        if (xfHeader == null) {
-            return request.getRemoteAddr();
+    /**
+     * Returns {@code null} if the token is not revoked, otherwise whether it was reused and how many
+     * tokens of its family that revoked.
+     */
+    private FamilyRevocation revokeFamilyOnReuse(String tokenHash) {
+        var revocations = jdbcTemplate.query(REVOKE_FAMILY_ON_REUSE,
+                (rs, rowNum) -> new FamilyRevocation(rs.getLong("employee_id"), rs.getBoolean("reused"), rs.getLong("revoked")),
+                Timestamp.valueOf(LocalDateTime.now().minus(reuseGracePeriod)), tokenHash);
+        if (revocations.isEmpty()) {
+            return null;
+        }
+
+        var revocation = revocations.getFirst();
+        reuseDetector.recordRevoked(tokenHash);
+        if (!revocation.reused()) {
+            log.warn("Attempted to use revoked refresh token");
+            return revocation;
+        }
+
+        reuseDetector.markHandled(tokenHash);
+        // Access tokens minted from the stolen token cannot be told apart from the others
+        accessTokenDenylist.revokeIssuedBefore(revocation.employeeId(), Instant.now());
+        if (revocation.revoked() > 0) {
+            eventPublisher.publishEvent(new TokensRevokedEvent(revocation.employeeId()));
+        }
+        log.warn("Refresh token reuse detected for employee {}: revoked {} tokens of its family",
+                revocation.employeeId(), revocation.revoked());
+        return revocation;
+    }
+
+    // Only runs when rotation matched nothing, to report why
+    private UnauthorizedException rotationFailure(String tokenHash) {
+        var refreshToken = refreshTokenRepository.findByTokenHash(tokenHash);
+        if (refreshToken.isEmpty()) {
+            return new UnauthorizedException("Invalid refresh token");
+        }
+        if (refreshToken.get().getRevoked()) {
+            // Rotated on another node or before a restart, so the in-memory filter did not know it
+            revokeFamilyOnReuse(tokenHash);
+            return new UnauthorizedException("Refresh token has been revoked");
+        }
+        if (refreshToken.get().isExpired()) {
+            log.warn("Attempted to use expired refresh token");
+            return new UnauthorizedException("Refresh token has expired");
         }
-        return xfHeader.split(",")[0];
+        log.warn("Concurrent rotation of the same refresh token rejected");
+        return new UnauthorizedException("Refresh token is already being used");
+    }
+
+    private String getClientIP(HttpServletRequest request) {
+        return clientIpResolver.resolve(request);
     }
 }
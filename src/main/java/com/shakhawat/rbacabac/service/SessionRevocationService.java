@@ -0,0 +1,230 @@
+package com.shakhawat.rbacabac.service;
+
+import com.shakhawat.rbacabac.dto.SessionRevocationRequest;
+import com.shakhawat.rbacabac.dto.SessionRevocationStatus;
+import com.shakhawat.rbacabac.dto.SessionRevocationStatus.State;
+import com.shakhawat.rbacabac.exception.InvalidRequestException;
+import com.shakhawat.rbacabac.exception.ResourceNotFoundException;
+import com.shakhawat.rbacabac.security.AccessTokenDenylist;
+import com.shakhawat.rbacabac.security.AuthorizationSnapshotService;
+import com.shakhawat.rbacabac.security.AuthorizationVersionTracker;
+import com.shakhawat.rbacabac.util.ExpiringCache;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Revokes the sessions of every employee matching a selector (department, role, id list).
+ * <p>
+ * Employees are walked in id order, {@code chunk-size} at a time. Each chunk revokes all their
+ * refresh tokens and bumps their authorization versions in one auto-committed statement, so every
+ * node rejects their live access tokens once it polls {@link AuthorizationVersionTracker}. This node
+ * rejects them right away through {@link AccessTokenDenylist}.
+ * <p>
+ * Runs in the background and reports progress per job. Job status is kept in memory on the node
+ * that runs the job, for {@code job-retention}; other nodes do not know the job id.
+ */
+@Slf4j
+@Service
+public class SessionRevocationService {
+
+    private static final class Job {
+        final String id = UUID.randomUUID().toString();
+        final LocalDateTime startedAt = LocalDateTime.now();
+        final AtomicLong processed = new AtomicLong();
+        final AtomicLong revoked = new AtomicLong();
+        volatile long matched;
+        volatile State state = State.RUNNING;
+        volatile LocalDateTime finishedAt;
+        volatile String error;
+
+        SessionRevocationStatus status() {
+            return SessionRevocationStatus.builder()
+                    .jobId(id)
+                    .state(state)
+                    .matchedEmployees(matched)
+                    .processedEmployees(processed.get())
+                    .revokedTokens(revoked.get())
+                    .startedAt(startedAt.toString())
+                    .finishedAt(finishedAt != null ? finishedAt.toString() : null)
+                    .error(error)
+                    .build();
+        }
+    }
+
+    // The filters shared by the count and the chunk statements, with their arguments in order
+    private record Selection(String from, String where, List<Object> args) {
+    }
+
+    private record Revoked(Long employeeId, long tokens) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AuthorizationSnapshotService authorizationSnapshots;
+    private final AccessTokenDenylist accessTokenDenylist;
+    private final int chunkSize;
+    private final Duration pause;
+    private final ExpiringCache<String, Job> jobs;
+    private final ExecutorService executor;
+
+    public SessionRevocationService(JdbcTemplate jdbcTemplate,
+                                    AuthorizationSnapshotService authorizationSnapshots,
+                                    AccessTokenDenylist accessTokenDenylist,
+                                    @Value("${jwt.session-revocation.chunk-size:1000}") int chunkSize,
+                                    @Value("${jwt.session-revocation.pause:50ms}") Duration pause,
+                                    @Value("${jwt.session-revocation.job-retention:1h}") Duration jobRetention) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.authorizationSnapshots = authorizationSnapshots;
+        this.accessTokenDenylist = accessTokenDenylist;
+        this.chunkSize = chunkSize;
+        this.pause = pause;
+        this.jobs = new ExpiringCache<>(1000, jobRetention.toMillis());
+        this.executor = Executors.newSingleThreadExecutor(Thread.ofPlatform()
+                .name("session-revocation").daemon().factory());
+    }
+
+    public SessionRevocationStatus start(SessionRevocationRequest request) {
+        var selection = select(request);
+        var job = new Job();
+        jobs.put(job.id, job);
+        executor.execute(() -> run(job, selection));
+        log.info("Session revocation {} started for {}", job.id, request);
+        return job.status();
+    }
+
+    public SessionRevocationStatus status(String jobId) {
+        var job = jobs.get(jobId);
+        if (job == null) {
+            throw new ResourceNotFoundException("Session revocation job not found: " + jobId);
+        }
+        return job.status();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(Job job, Selection selection) {
+        try {
+            // Anything issued before the job started is revoked, tokens from later logins stay valid
+            var startedAt = Instant.now();
+            var matched = jdbcTemplate.queryForObject("SELECT count(*) FROM " + selection.from() + " WHERE " + selection.where(),
+                    Long.class, selection.args().toArray());
+            job.matched = matched != null ? matched : 0;
+
+            var sql = """
+                    WITH targets AS (
+                        SELECT e.id FROM %s
+                        WHERE %s AND e.id > ?
+                        ORDER BY e.id
+                        LIMIT ?
+                    ), revoked AS (
+                        UPDATE refresh_tokens rt SET revoked = true
+                        FROM targets WHERE rt.employee_id = targets.id AND rt.revoked = false
+                        RETURNING rt.id
+                    ), bumped AS (
+                        INSERT INTO authorization_versions (subject_id, version, changed_at)
+                        SELECT targets.id, 1, clock_timestamp() FROM targets
+                        ON CONFLICT (subject_id) DO UPDATE
+                        SET version = authorization_versions.version + 1, changed_at = clock_timestamp()
+                    )
+                    SELECT targets.id, (SELECT count(*) FROM revoked) AS revoked FROM targets ORDER BY targets.id
+                    """.formatted(selection.from(), selection.where());
+
+            long after = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                var args = new ArrayList<>(selection.args());
+                args.add(after);
+                args.add(chunkSize);
+                var chunk = jdbcTemplate.query(sql,
+                        (rs, rowNum) -> new Revoked(rs.getLong("id"), rs.getLong("revoked")), args.toArray());
+                if (chunk.isEmpty()) {
+                    break;
+                }
+
+                // Until the next version poll only the denylist covers this node
+                for (var revoked : chunk) {
+                    accessTokenDenylist.revokeIssuedBefore(revoked.employeeId(), startedAt);
+                }
+                job.revoked.addAndGet(chunk.getFirst().tokens());
+                job.processed.addAndGet(chunk.size());
+                after = chunk.getLast().employeeId();
+
+                if (chunk.size() < chunkSize) {
+                    break;
+                }
+                Thread.sleep(pause);
+            }
+            job.finishedAt = LocalDateTime.now();
+            job.state = State.COMPLETED;
+            log.info("Session revocation {} completed: {} employees, {} refresh tokens",
+                    job.id, job.processed.get(), job.revoked.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(job, "Interrupted");
+        } catch (RuntimeException e) {
+            log.error("Session revocation {} failed: {}", job.id, e.getMessage());
+            fail(job, e.getMessage());
+        }
+    }
+
+    private static void fail(Job job, String error) {
+        job.error = error;
+        job.finishedAt = LocalDateTime.now();
+        job.state = State.FAILED;
+    }
+
+    private Selection select(SessionRevocationRequest request) {
+        var from = new StringBuilder("employees e");
+        var conditions = new ArrayList<String>();
+        var args = new ArrayList<>();
+
+        if (request.getRole() != null) {
+            var grant = authorizationSnapshots.current().role(request.getRole());
+            if (grant == null || grant.roleId() == null) {
+                throw new InvalidRequestException("Role not found: " + request.getRole());
+            }
+            from.append(" JOIN employee_roles er ON er.employee_id = e.id AND er.role_id = ?");
+            args.add(grant.roleId());
+        }
+        if (request.getDepartment() != null && !request.getDepartment().isBlank()) {
+            conditions.add("e.department = ?");
+            args.add(request.getDepartment());
+        }
+        if (request.getEmployeeIds() != null && !request.getEmployeeIds().isEmpty()) {
+            // Passed as one array parameter, so the statement does not grow with the list
+            conditions.add("e.id = ANY (CAST(? AS BIGINT[]))");
+            args.add(toArrayLiteral(request.getEmployeeIds()));
+        }
+
+        if (args.isEmpty()) {
+            throw new InvalidRequestException("At least one of department, role or employeeIds is required");
+        }
+        return new Selection(from.toString(), conditions.isEmpty() ? "TRUE" : String.join(" AND ", conditions),
+                List.copyOf(args));
+    }
+
+    private static String toArrayLiteral(List<Long> ids) {
+        var literal = new StringBuilder(ids.size() * 8).append('{');
+        for (int i = 0; i < ids.size(); i++) {
+            if (i > 0) {
+                literal.append(',');
+            }
+            literal.append(ids.get(i));
+        }
+        return literal.append('}').toString();
+    }
+}
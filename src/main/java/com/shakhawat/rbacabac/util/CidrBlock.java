@@ -0,0 +1,72 @@
+package com.shakhawat.rbacabac.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * IPv4 or IPv6 network in CIDR notation, e.g. {@code 10.0.0.0/8} or {@code 2001:db8::/32}.
+ */
+public record CidrBlock(byte[] network, int prefixLength) {
+
+    public static CidrBlock parse(String cidr) {
+        var slash = cidr.indexOf('/');
+        var address = toBytes(slash >= 0 ? cidr.substring(0, slash) : cidr);
+        var prefix = slash >= 0 ? Integer.parseInt(cidr.substring(slash + 1).trim()) : address.length * 8;
+        if (prefix < 0 || prefix > address.length * 8) {
+            throw new IllegalArgumentException("Invalid prefix length in CIDR: " + cidr);
+        }
+        return new CidrBlock(mask(address, prefix), prefix);
+    }
+
+    public boolean contains(String address) {
+        try {
+            return contains(toBytes(address));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    public boolean contains(byte[] address) {
+        if (address.length != network.length) {
+            return false;
+        }
+        var fullBytes = prefixLength / 8;
+        for (int i = 0; i < fullBytes; i++) {
+            if (address[i] != network[i]) {
+                return false;
+            }
+        }
+        var remainingBits = prefixLength % 8;
+        if (remainingBits == 0) {
+            return true;
+        }
+        var bitMask = (byte) (0xFF << (8 - remainingBits));
+        return (address[fullBytes] & bitMask) == network[fullBytes];
+    }
+
+    // Only literal addresses are accepted, never a host name that would trigger a DNS lookup
+    public static byte[] toBytes(String address) {
+        if (address == null || address.isBlank()) {
+            throw new IllegalArgumentException("Not an IP address: " + address);
+        }
+        var literal = address.trim();
+        var ipv6 = literal.indexOf(':') >= 0;
+        if (!ipv6 && !literal.chars().allMatch(c -> c == '.' || (c >= '0' && c <= '9'))) {
+            throw new IllegalArgumentException("Not an IP address: " + address);
+        }
+        try {
+            return InetAddress.getByName(literal).getAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Not an IP address: " + address, e);
+        }
+    }
+
+    private static byte[] mask(byte[] address, int prefix) {
+        var masked = address.clone();
+        for (int i = 0; i < masked.length; i++) {
+            var bitsInByte = Math.max(0, Math.min(8, prefix - i * 8));
+            masked[i] &= (byte) (bitsInByte == 0 ? 0 : 0xFF << (8 - bitsInByte));
+        }
+        return masked;
+    }
+}
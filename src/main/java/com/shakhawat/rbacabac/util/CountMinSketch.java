@@ -0,0 +1,50 @@
+package com.shakhawat.rbacabac.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent count-min sketch: {@code depth} rows of {@code width} counters. An estimate never
+ * undercounts and overcounts by at most {@code e * total / width} with probability
+ * {@code 1 - e^-depth}, however many distinct keys are added; memory stays {@code width * depth}
+ * longs.
+ * <p>
+ * Callers pass two independent 64-bit hashes of the key, as for {@link GenerationalBloomFilter}.
+ */
+public final class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final AtomicLongArray counters;
+
+    public CountMinSketch(int width, int depth) {
+        if (width <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("width and depth must be positive");
+        }
+        this.width = width;
+        this.depth = depth;
+        this.counters = new AtomicLongArray(Math.multiplyExact(width, depth));
+    }
+
+    /**
+     * Adds {@code count} for the key and returns its new estimate.
+     */
+    public long add(long hash1, long hash2, long count) {
+        var estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.addAndGet(index(row, hash1, hash2), count));
+        }
+        return estimate;
+    }
+
+    public long estimate(long hash1, long hash2) {
+        var estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(index(row, hash1, hash2)));
+        }
+        return estimate;
+    }
+
+    private int index(int row, long hash1, long hash2) {
+        return row * width + (int) Math.floorMod(hash1 + row * hash2, (long) width);
+    }
+}
@@ -2,22 +2,28 @@ package com.shakhawat.rbacabac.util;
 
 import com.shakhawat.rbacabac.dto.EmployeeResponse;
 import com.shakhawat.rbacabac.entity.Employee;
+import com.shakhawat.rbacabac.security.AuthorizationSnapshotService;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import java.time.format.DateTimeFormatter;
 import java.util.stream.Collectors;
 
 @Component
+@RequiredArgsConstructor
 public class EmployeeMapper {
 
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
 
+    private final AuthorizationSnapshotService authorizationSnapshots;
+
     public EmployeeResponse toResponse(Employee employee) {
         if (employee == null) {
             return null;
         }
 
+        var snapshot = authorizationSnapshots.current();
         var roles = employee.getRoles().stream()
-                .map(role -> role.getName().name())
+                .map(role -> snapshot.nameOf(role).name())
                 .collect(Collectors.toSet());
 
         return EmployeeResponse.builder()
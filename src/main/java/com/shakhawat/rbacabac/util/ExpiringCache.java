@@ -0,0 +1,192 @@
+package com.shakhawat.rbacabac.util;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Small concurrent cache with per-entry expiry and a soft size bound.
+ * Expired entries are dropped on read; when the bound is exceeded a background thread
+ * sweeps expired entries first and then evicts the least recently read ones down to 90% of capacity.
+ */
+public class ExpiringCache<K, V> {
+
+    public record Stats(long hits, long misses, long evictions, int size) {
+        public double hitRatio() {
+            var total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAtMillis;
+        private volatile long accessedAtMillis;
+
+        Entry(V value, long expiresAtMillis, long now) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+            this.accessedAtMillis = now;
+        }
+
+        V value() {
+            return value;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAtMillis;
+        }
+    }
+
+    // One thread for every cache: trims are rare and short, and callers never wait for them
+    private static final ExecutorService TRIMMER = Executors.newSingleThreadExecutor(Thread.ofPlatform()
+            .name("expiring-cache-trim").daemon().factory());
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long defaultTtlMillis;
+
+    private final AtomicBoolean trimming = new AtomicBoolean();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ExpiringCache(int maxSize, long defaultTtlMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.defaultTtlMillis = defaultTtlMillis;
+    }
+
+    public V get(K key) {
+        var entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        var now = System.currentTimeMillis();
+        if (entry.isExpired(now)) {
+            if (entries.remove(key, entry)) {
+                evictions.increment();
+            }
+            misses.increment();
+            return null;
+        }
+        // Skipped within the same millisecond, so hot keys do not keep writing the field
+        if (entry.accessedAtMillis != now) {
+            entry.accessedAtMillis = now;
+        }
+        hits.increment();
+        return entry.value();
+    }
+
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        var value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        put(key, value, System.currentTimeMillis() + defaultTtlMillis);
+    }
+
+    public void put(K key, V value, long expiresAtMillis) {
+        var now = System.currentTimeMillis();
+        if (expiresAtMillis <= now) {
+            return;
+        }
+        entries.put(key, new Entry<>(value, expiresAtMillis, now));
+        if (entries.size() > maxSize && trimming.compareAndSet(false, true)) {
+            TRIMMER.execute(this::trim);
+        }
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public void invalidateIf(BiPredicate<? super K, ? super V> predicate) {
+        entries.entrySet().removeIf(e -> predicate.test(e.getKey(), e.getValue().value()));
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+    }
+
+    public void registerMetrics(MeterRegistry registry, String name) {
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+                .tag("cache", name).tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+                .tag("cache", name).tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum)
+                .tag("cache", name)
+                .register(registry);
+        Gauge.builder("cache.size", entries, Map::size)
+                .tag("cache", name)
+                .register(registry);
+    }
+
+    private void trim() {
+        try {
+            var now = System.currentTimeMillis();
+            var live = new ArrayList<Candidate<K, V>>(entries.size());
+            for (var e : entries.entrySet()) {
+                var entry = e.getValue();
+                if (entry.isExpired(now)) {
+                    if (entries.remove(e.getKey(), entry)) {
+                        evictions.increment();
+                    }
+                } else {
+                    // The stamp is copied, so reads during the sort cannot reorder the list
+                    live.add(new Candidate<>(e.getKey(), entry, entry.accessedAtMillis));
+                }
+            }
+
+            var excess = entries.size() - (int) (maxSize * 0.9);
+            if (excess <= 0) {
+                return;
+            }
+            live.sort(Comparator.comparingLong(Candidate::accessedAtMillis));
+            for (var i = 0; i < live.size() && excess > 0; i++) {
+                var oldest = live.get(i);
+                // An entry replaced since it was listed is a fresh one and stays
+                if (entries.remove(oldest.key(), oldest.entry())) {
+                    evictions.increment();
+                    excess--;
+                }
+            }
+        } finally {
+            trimming.set(false);
+        }
+    }
+
+    private record Candidate<K, V>(K key, Entry<V> entry, long accessedAtMillis) {
+    }
+}
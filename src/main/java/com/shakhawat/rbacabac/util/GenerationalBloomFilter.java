@@ -0,0 +1,82 @@
+package com.shakhawat.rbacabac.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent bloom filter that forgets: once the current generation has taken {@code capacity}
+ * entries it becomes the previous one and a fresh generation starts, so an entry is remembered
+ * for at least {@code capacity} and at most {@code 2 * capacity} insertions. Lookups check both
+ * generations, which roughly doubles the configured false positive rate.
+ * <p>
+ * Callers pass two independent 64-bit hashes of the element (e.g. the halves of a digest prefix);
+ * the probe positions are derived from them by double hashing.
+ */
+public final class GenerationalBloomFilter {
+
+    private static final class Generation {
+        final AtomicLongArray words;
+        final AtomicLong count = new AtomicLong();
+
+        Generation(int words) {
+            this.words = new AtomicLongArray(words);
+        }
+    }
+
+    private final long capacity;
+    private final long bits;
+    private final int hashes;
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    public GenerationalBloomFilter(long capacity, double falsePositiveRate) {
+        if (capacity <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("capacity must be positive and falsePositiveRate in (0, 1)");
+        }
+        var optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        var words = (int) Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64);
+        this.capacity = capacity;
+        this.bits = (long) words * 64;
+        this.hashes = Math.max(1, (int) Math.round((double) bits / capacity * Math.log(2)));
+        this.current = new Generation(words);
+        this.previous = new Generation(words);
+    }
+
+    public void add(long hash1, long hash2) {
+        var generation = current;
+        for (int i = 0; i < hashes; i++) {
+            var bit = Math.floorMod(hash1 + i * hash2, bits);
+            var word = (int) (bit >>> 6);
+            var mask = 1L << bit;
+            if ((generation.words.get(word) & mask) == 0) {
+                generation.words.getAndAccumulate(word, mask, (a, b) -> a | b);
+            }
+        }
+        if (generation.count.incrementAndGet() >= capacity) {
+            rotate(generation);
+        }
+    }
+
+    public boolean mightContain(long hash1, long hash2) {
+        return contains(current, hash1, hash2) || contains(previous, hash1, hash2);
+    }
+
+    private boolean contains(Generation generation, long hash1, long hash2) {
+        for (int i = 0; i < hashes; i++) {
+            var bit = Math.floorMod(hash1 + i * hash2, bits);
+            if ((generation.words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void rotate(Generation full) {
+        if (current != full) {
+            return;
+        }
+        // Previous first, so a reader never misses the generation being retired
+        previous = full;
+        current = new Generation(full.words.length());
+    }
+}
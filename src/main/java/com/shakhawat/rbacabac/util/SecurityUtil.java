@@ -1,13 +1,14 @@
 package com.shakhawat.rbacabac.util;
 
+import com.shakhawat.rbacabac.security.AuthorityRegistry;
+import com.shakhawat.rbacabac.security.AuthoritySet;
 import lombok.experimental.UtilityClass;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.GrantedAuthority;
 
-import java.util.Objects;
+import java.util.HashSet;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @UtilityClass
 public class SecurityUtil {
@@ -17,34 +18,50 @@ public class SecurityUtil {
         return auth != null ? auth.getName() : null;
     }
 
-    public Set<String> getCurrentUserRoles() {
+    public AuthoritySet getCurrentUserAuthorities() {
         var auth = SecurityContextHolder.getContext().getAuthentication();
 
         if (auth == null || !auth.isAuthenticated() || auth instanceof AnonymousAuthenticationToken) {
-            return Set.of();
+            return AuthoritySet.EMPTY;
         }
 
-        return auth.getAuthorities().stream()
-                .map(GrantedAuthority::getAuthority).filter(Objects::nonNull)
-                .filter(role -> role.startsWith("ROLE_"))
-                .collect(Collectors.toSet());
+        return AuthoritySet.from(auth);
     }
 
+    public Set<String> getCurrentUserRoles() {
+        var roles = new HashSet<String>();
+        for (GrantedAuthority authority : getCurrentUserAuthorities()) {
+            var name = authority.getAuthority();
+            if (name != null && name.startsWith("ROLE_")) {
+                roles.add(name);
+            }
+        }
+        return roles;
+    }
+
+    public boolean hasAuthority(String authority) {
+        return getCurrentUserAuthorities().has(authority);
+    }
 
     public boolean hasRole(String role) {
-        var roles = getCurrentUserRoles();
-        return roles.contains(role) || roles.contains("ROLE_" + role);
+        return hasRole(getCurrentUserAuthorities(), role);
     }
 
     public boolean hasAnyRole(String... roles) {
-        var userRoles = getCurrentUserRoles();
+        var authorities = getCurrentUserAuthorities();
 
         for (var role : roles) {
-            if (userRoles.contains(role) || userRoles.contains("ROLE_" + role)) {
+            if (hasRole(authorities, role)) {
                 return true;
             }
         }
 
         return false;
     }
+
+    private boolean hasRole(AuthoritySet authorities, String role) {
+        var name = role.startsWith("ROLE_") ? role : "ROLE_" + role;
+        var bit = AuthorityRegistry.bitOf(name);
+        return bit >= 0 ? authorities.hasBit(bit) : authorities.has(name);
+    }
 }
@@ -0,0 +1,113 @@
+package com.shakhawat.rbacabac.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel: {@value #LEVELS} levels of {@value #SLOTS} slots, where a slot on
+ * level {@code n} spans {@code SLOTS^n} ticks. A timer sits on the lowest level whose range covers
+ * its deadline and is moved one level down each time its slot comes up, so scheduling and expiry
+ * are O(1) per timer regardless of how many are pending.
+ * <p>
+ * Any thread may {@link #schedule}; timers are handed over through a queue and only the thread
+ * calling {@link #advance(long)} touches the wheel itself.
+ */
+public final class TimingWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+
+    private record Timer<T>(T element, long deadlineTick) {
+    }
+
+    private final long tickMillis;
+    private final long originMillis;
+    private final Consumer<T> onExpiry;
+    private final Queue<Timer<T>> incoming = new ConcurrentLinkedQueue<>();
+    private final List<List<List<Timer<T>>>> levels = new ArrayList<>(LEVELS);
+    private long currentTick;
+
+    public TimingWheel(long tickMillis, long originMillis, Consumer<T> onExpiry) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.originMillis = originMillis;
+        this.onExpiry = onExpiry;
+        for (int level = 0; level < LEVELS; level++) {
+            var slots = new ArrayList<List<Timer<T>>>(SLOTS);
+            for (int slot = 0; slot < SLOTS; slot++) {
+                slots.add(new ArrayList<>());
+            }
+            levels.add(slots);
+        }
+    }
+
+    /**
+     * Expires {@code element} at the first tick at or after {@code deadlineMillis}.
+     */
+    public void schedule(T element, long deadlineMillis) {
+        var ticks = Math.max(0, deadlineMillis - originMillis);
+        incoming.add(new Timer<>(element, (ticks + tickMillis - 1) / tickMillis));
+    }
+
+    /**
+     * Moves the wheel up to {@code nowMillis}, expiring every timer that is due. Single thread only.
+     */
+    public void advance(long nowMillis) {
+        for (var timer = incoming.poll(); timer != null; timer = incoming.poll()) {
+            place(timer);
+        }
+
+        var targetTick = (nowMillis - originMillis) / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // A higher level's slot comes up whenever all the levels below it wrap around
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level);
+                }
+            }
+            var due = levels.getFirst().get((int) (currentTick & (SLOTS - 1)));
+            for (var timer : due) {
+                onExpiry.accept(timer.element());
+            }
+            due.clear();
+        }
+    }
+
+    private void cascade(int level) {
+        var slot = levels.get(level).get((int) ((currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1)));
+        if (slot.isEmpty()) {
+            return;
+        }
+        var timers = new ArrayList<>(slot);
+        slot.clear();
+        for (var timer : timers) {
+            place(timer);
+        }
+    }
+
+    private void place(Timer<T> timer) {
+        var delay = timer.deadlineTick() - currentTick;
+        if (delay <= 0) {
+            onExpiry.accept(timer.element());
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            if (delay < 1L << (SLOT_BITS * (level + 1))) {
+                var index = (int) ((timer.deadlineTick() >>> (SLOT_BITS * level)) & (SLOTS - 1));
+                levels.get(level).get(index).add(timer);
+                return;
+            }
+        }
+        // Beyond the wheel's range: park it in the top slot that comes up last, it is re-placed from there
+        var top = LEVELS - 1;
+        var index = (int) (((currentTick >>> (SLOT_BITS * top)) - 1) & (SLOTS - 1));
+        levels.get(top).get(index).add(timer);
+    }
+}
@@ -1,8 +1,12 @@
 package com.shakhawat.rbacabac.util;
 
 import org.springframework.stereotype.Component;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.HexFormat;
 
 @Component
 public class TokenGenerator {
@@ -22,4 +26,14 @@ public class TokenGenerator {
     public String generatePasswordResetToken() {
         return generateRandomToken(24);
     }
+
+    // Lowercase hex SHA-256, identical to encode(sha256(convert_to(token, 'UTF8')), 'hex') in PostgreSQL
+    public String hashToken(String token) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
 }
@@ -0,0 +1,77 @@
+package com.shakhawat.rbacabac.util;
+
+import java.util.*;
+
+/**
+ * The {@code k} keys with the highest counts offered so far, kept in a min-heap. Offers at or below
+ * the current minimum of a full heap return after one volatile read, so feeding every request
+ * through it only takes the lock for keys that are, or are about to become, heavy hitters.
+ */
+public final class TopK<K> {
+
+    public record Entry<K>(K key, long count) {
+    }
+
+    private static final class Node<K> {
+        final K key;
+        long count;
+
+        Node(K key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+
+    private final int k;
+    private final PriorityQueue<Node<K>> heap;
+    private final Map<K, Node<K>> nodes;
+    private volatile long threshold;
+
+    public TopK(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        this.k = k;
+        this.heap = new PriorityQueue<>(k, Comparator.comparingLong(node -> node.count));
+        this.nodes = new HashMap<>(k * 2);
+    }
+
+    /**
+     * Records the key's latest count (e.g. a sketch estimate, which only grows).
+     */
+    public void offer(K key, long count) {
+        if (count <= threshold) {
+            return;
+        }
+        synchronized (this) {
+            var node = nodes.get(key);
+            if (node != null) {
+                heap.remove(node);
+                node.count = Math.max(node.count, count);
+                heap.add(node);
+            } else if (heap.size() < k) {
+                node = new Node<>(key, count);
+                nodes.put(key, node);
+                heap.add(node);
+            } else if (count > heap.peek().count) {
+                nodes.remove(heap.poll().key);
+                node = new Node<>(key, count);
+                nodes.put(key, node);
+                heap.add(node);
+            }
+            threshold = heap.size() < k ? 0 : heap.peek().count;
+        }
+    }
+
+    /**
+     * Returns the entries, highest count first.
+     */
+    public synchronized List<Entry<K>> snapshot() {
+        var entries = new ArrayList<Entry<K>>(heap.size());
+        for (var node : heap) {
+            entries.add(new Entry<>(node.key, node.count));
+        }
+        entries.sort(Comparator.comparingLong(Entry<K>::count).reversed());
+        return entries;
+    }
+}
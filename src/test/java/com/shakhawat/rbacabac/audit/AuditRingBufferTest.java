@@ -0,0 +1,137 @@
+package com.shakhawat.rbacabac.audit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditRingBufferTest {
+
+    @Test
+    void roundsCapacityUpToPowerOfTwo() {
+        assertThat(new AuditRingBuffer(4).capacity()).isEqualTo(4);
+        assertThat(new AuditRingBuffer(5).capacity()).isEqualTo(8);
+        assertThat(new AuditRingBuffer(65536).capacity()).isEqualTo(65536);
+    }
+
+    @Test
+    void rejectsClaimsWhenFullAndReusesSlotsAfterWraparound() {
+        var buffer = new AuditRingBuffer(4);
+        for (long expected = 0; expected < 4; expected++) {
+            var sequence = buffer.tryClaim();
+            assertThat(sequence).isEqualTo(expected);
+            publish(buffer, sequence, expected);
+        }
+        assertThat(buffer.tryClaim()).isEqualTo(-1);
+        assertThat(buffer.backlog()).isEqualTo(4);
+
+        assertThat(drain(buffer, 2)).containsExactly(0L, 1L);
+        var fifth = buffer.tryClaim();
+        var sixth = buffer.tryClaim();
+        assertThat(fifth).isEqualTo(4);
+        assertThat(sixth).isEqualTo(5);
+        assertThat(buffer.slot(fifth)).isSameAs(buffer.slot(0));
+        assertThat(buffer.tryClaim()).isEqualTo(-1);
+
+        publish(buffer, fifth, 4);
+        publish(buffer, sixth, 5);
+        assertThat(drain(buffer, 10)).containsExactly(2L, 3L, 4L, 5L);
+        assertThat(buffer.backlog()).isZero();
+    }
+
+    @Test
+    void drainStopsAtFirstUnpublishedSlot() {
+        var buffer = new AuditRingBuffer(8);
+        var first = buffer.tryClaim();
+        var second = buffer.tryClaim();
+        publish(buffer, second, 1);
+
+        assertThat(drain(buffer, 10)).isEmpty();
+
+        publish(buffer, first, 0);
+        assertThat(drain(buffer, 10)).containsExactly(0L, 1L);
+    }
+
+    @Test
+    void slotPublishedInEarlierLapIsNotReadAgain() {
+        var buffer = new AuditRingBuffer(2);
+        publish(buffer, buffer.tryClaim(), 0);
+        publish(buffer, buffer.tryClaim(), 1);
+        assertThat(drain(buffer, 10)).containsExactly(0L, 1L);
+
+        // Claimed into slot 0 again but not yet published: the old sequence there must not count
+        buffer.tryClaim();
+        assertThat(drain(buffer, 10)).isEmpty();
+    }
+
+    @Test
+    void concurrentProducersLoseNothingAndKeepTheirOwnOrder() throws InterruptedException {
+        var producers = 4;
+        var perProducer = 50_000;
+        var buffer = new AuditRingBuffer(64);
+        var start = new CountDownLatch(1);
+        var threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            var producer = p;
+            threads.add(Thread.ofPlatform().start(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < perProducer; i++) {
+                    long sequence;
+                    while ((sequence = buffer.tryClaim()) < 0) {
+                        Thread.onSpinWait();
+                    }
+                    var slot = buffer.slot(sequence);
+                    slot.subjectId = producer;
+                    slot.resourceId = i;
+                    buffer.publish(sequence);
+                }
+            }));
+        }
+
+        var lastSeen = new long[producers];
+        Arrays.fill(lastSeen, -1);
+        var outOfOrder = new AtomicBoolean();
+        var total = 0L;
+        start.countDown();
+        while (total < (long) producers * perProducer) {
+            total += buffer.drain(16, slot -> {
+                var producer = (int) slot.subjectId;
+                if (slot.resourceId != lastSeen[producer] + 1) {
+                    outOfOrder.set(true);
+                }
+                lastSeen[producer] = slot.resourceId;
+            });
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        assertThat(outOfOrder).isFalse();
+        assertThat(lastSeen).containsOnly(perProducer - 1L);
+        assertThat(buffer.backlog()).isZero();
+    }
+
+    private static void publish(AuditRingBuffer buffer, long sequence, long subjectId) {
+        buffer.slot(sequence).subjectId = subjectId;
+        buffer.publish(sequence);
+    }
+
+    private static List<Long> drain(AuditRingBuffer buffer, int max) {
+        var subjects = new ArrayList<Long>();
+        buffer.drain(max, slot -> subjects.add(slot.subjectId));
+        return subjects;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
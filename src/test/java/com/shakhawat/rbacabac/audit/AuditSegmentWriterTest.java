@@ -0,0 +1,85 @@
+package com.shakhawat.rbacabac.audit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditSegmentWriterTest {
+
+    // Fits two of the lines written below
+    private static final int SEGMENT_SIZE = 128;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rollsOverToNewSegmentWhenLineDoesNotFit() throws IOException {
+        try (var writer = new AuditSegmentWriter(directory, SEGMENT_SIZE, 100)) {
+            for (int i = 0; i < 9; i++) {
+                writer.append(entry(i, "self-access"));
+            }
+        }
+
+        var segments = segments();
+        assertThat(segments).hasSize(5);
+        for (var segment : segments) {
+            // Truncated to what was written, no zero-filled tail
+            assertThat(Files.size(segment)).isLessThanOrEqualTo(SEGMENT_SIZE);
+            assertThat(Files.readString(segment)).doesNotContain("\0").endsWith("\n");
+        }
+        assertThat(subjects(segments)).containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L);
+    }
+
+    @Test
+    void keepsOnlyNewestSegments() throws IOException {
+        try (var writer = new AuditSegmentWriter(directory, SEGMENT_SIZE, 2)) {
+            for (int i = 0; i < 9; i++) {
+                writer.append(entry(i, "self-access"));
+            }
+        }
+
+        var segments = segments();
+        assertThat(segments).hasSize(2);
+        assertThat(subjects(segments)).containsExactly(6L, 7L, 8L);
+    }
+
+    @Test
+    void quotesFieldsContainingSeparators() throws IOException {
+        try (var writer = new AuditSegmentWriter(directory, 4096, 10)) {
+            writer.append(entry(1, "a,\"b\""));
+            writer.append(new AuditEntry(0, 2, "VIEW", "employee", 42, false, null, 1000));
+        }
+
+        var lines = Files.readAllLines(segments().getFirst());
+        assertThat(lines).containsExactly(
+                "1970-01-01T00:00:00Z,1,VIEW,employee,42,PERMIT,\"a,\"\"b\"\"\",12",
+                "1970-01-01T00:00:00Z,2,VIEW,employee,42,DENY,,1");
+    }
+
+    private static AuditEntry entry(long subjectId, String policyId) {
+        return new AuditEntry(0, subjectId, "VIEW", "employee", 42, true, policyId, 12_000);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static List<Long> subjects(List<Path> segments) throws IOException {
+        var subjects = new ArrayList<Long>();
+        for (var segment : segments) {
+            for (var line : Files.readAllLines(segment)) {
+                subjects.add(Long.parseLong(line.split(",")[1]));
+            }
+        }
+        return subjects;
+    }
+}
@@ -0,0 +1,212 @@
+package com.shakhawat.rbacabac.config;
+
+import com.shakhawat.rbacabac.entity.RoleType;
+import com.shakhawat.rbacabac.exception.InvalidRequestException;
+import com.shakhawat.rbacabac.security.AuthorityRegistry;
+import com.shakhawat.rbacabac.security.AuthoritySet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RateLimitPolicyCompilerTest {
+
+    private static final AuthoritySet ANONYMOUS = AuthoritySet.EMPTY;
+    private static final AuthoritySet ADMIN = AuthoritySet.of(AuthorityRegistry.maskOf(RoleType.ROLE_ADMIN));
+
+    private SimpleMeterRegistry meterRegistry;
+    private RateLimitBucketStore store;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        store = new RateLimitBucketStore((client, spec) -> RateLimitBucket.local(RateLimitingService.createNewBucket(spec, 1.0)),
+                1000, Duration.ofMinutes(1), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.shutdown();
+    }
+
+    @Test
+    void firstDeclaredPolicyWinsBetweenLiteralAndWildcard() {
+        var literalFirst = compile(
+                rule("search", "/api/employees/search"),
+                rule("by-id", "/api/employees/{id}"),
+                rule("any", "/api/employees/*"));
+
+        assertThat(select(literalFirst, "/api/employees/search", "GET")).isEqualTo("search");
+        assertThat(select(literalFirst, "/api/employees/42", "GET")).isEqualTo("by-id");
+
+        var wildcardFirst = compile(
+                rule("any", "/api/employees/*"),
+                rule("by-id", "/api/employees/{id}"),
+                rule("search", "/api/employees/search"));
+
+        assertThat(select(wildcardFirst, "/api/employees/search", "GET")).isEqualTo("any");
+        assertThat(select(wildcardFirst, "/api/employees/42", "GET")).isEqualTo("any");
+    }
+
+    @Test
+    void wildcardMatchesExactlyOneSegment() {
+        var matcher = compile(rule("by-id", "/api/employees/{id}"));
+
+        assertThat(select(matcher, "/api/employees/42", "GET")).isEqualTo("by-id");
+        assertThat(select(matcher, "/api/employees", "GET")).isNull();
+        assertThat(select(matcher, "/api/employees/42/roles", "GET")).isNull();
+    }
+
+    @Test
+    void trailingDoubleWildcardMatchesItsNodeAndEverythingBelow() {
+        var matcher = compile(rule("api", "/api/**"));
+
+        assertThat(select(matcher, "/api", "GET")).isEqualTo("api");
+        assertThat(select(matcher, "/api/", "GET")).isEqualTo("api");
+        assertThat(select(matcher, "/api/employees", "GET")).isEqualTo("api");
+        assertThat(select(matcher, "/api/employees/42/roles", "GET")).isEqualTo("api");
+        assertThat(select(matcher, "/apix", "GET")).isNull();
+        assertThat(select(matcher, "/", "GET")).isNull();
+    }
+
+    @Test
+    void literalAndWildcardBranchesMergeWithDoubleWildcardBelowThem() {
+        var matcher = compile(
+                rule("roles", "/api/*/roles"),
+                rule("employees", "/api/employees/**"));
+
+        // Both patterns apply: declaration order decides
+        assertThat(select(matcher, "/api/employees/roles", "GET")).isEqualTo("roles");
+        assertThat(select(matcher, "/api/departments/roles", "GET")).isEqualTo("roles");
+        assertThat(select(matcher, "/api/employees", "GET")).isEqualTo("employees");
+        assertThat(select(matcher, "/api/employees/42", "GET")).isEqualTo("employees");
+        assertThat(select(matcher, "/api/employees/42/roles", "GET")).isEqualTo("employees");
+        assertThat(select(matcher, "/api/departments/42", "GET")).isNull();
+    }
+
+    @Test
+    void policyWithoutPathsMatchesEveryPath() {
+        var matcher = compile(rule("login", "/api/auth/login"), rule("general"));
+
+        assertThat(select(matcher, "/api/auth/login", "POST")).isEqualTo("login");
+        assertThat(select(matcher, "/api/auth/logout", "POST")).isEqualTo("general");
+        assertThat(select(matcher, "/", "GET")).isEqualTo("general");
+    }
+
+    @Test
+    void methodFilterFallsThroughToLaterPolicies() {
+        var matcher = compile(
+                rule("search", List.of("/api/employees/search"), List.of("GET"), List.of()),
+                rule("write", List.of(), List.of("post", "PUT"), List.of()),
+                rule("general"));
+
+        assertThat(select(matcher, "/api/employees/search", "GET")).isEqualTo("search");
+        assertThat(select(matcher, "/api/employees/search", "POST")).isEqualTo("write");
+        assertThat(select(matcher, "/api/employees/search", "DELETE")).isEqualTo("general");
+        // Methods outside the known set share one slot and only match policies without a method filter
+        assertThat(select(matcher, "/api/employees/search", "PROPFIND")).isEqualTo("general");
+    }
+
+    @Test
+    void roleFilterIsCheckedAtRequestTime() {
+        var matcher = compile(
+                rule("admin", List.of("/api/**"), List.of(), List.of(RoleType.ROLE_ADMIN, RoleType.ROLE_HR)),
+                rule("api", "/api/**"));
+
+        assertThat(matcher.select("/api/employees", "GET", ADMIN).id()).isEqualTo("admin");
+        assertThat(matcher.select("/api/employees", "GET", ANONYMOUS).id()).isEqualTo("api");
+        assertThat(matcher.select("/api/employees", "GET",
+                AuthoritySet.of(AuthorityRegistry.maskOf(RoleType.ROLE_EMPLOYEE))).id()).isEqualTo("api");
+    }
+
+    @Test
+    void policiesWithEqualSpecsShareBuckets() {
+        var first = compile(rule("login", "/api/auth/login"), rule("general"));
+        var second = compile(rule("login", "/api/auth/refresh"), rule("general"));
+
+        // Same id and bandwidths: changing only a policy's paths keeps its clients' remaining tokens
+        assertThat(first.select("/api/auth/login", "POST", ANONYMOUS).buckets())
+                .isSameAs(second.select("/api/auth/refresh", "POST", ANONYMOUS).buckets());
+        assertThat(first.select("/", "GET", ANONYMOUS).buckets())
+                .isSameAs(second.select("/", "GET", ANONYMOUS).buckets());
+        assertThat(first.select("/", "GET", ANONYMOUS).buckets())
+                .isNotSameAs(first.select("/api/auth/login", "POST", ANONYMOUS).buckets());
+    }
+
+    @Test
+    void rejectsInvalidRulesBeforeBindingAnyBuckets() {
+        var bound = new ArrayList<String>();
+
+        assertThatThrownBy(() -> RateLimitPolicyCompiler.compile(List.of(rule("a", "/a"), rule("a", "/b")), 1,
+                spec -> {
+                    bound.add(spec.policyId());
+                    return store.bucketsFor(spec);
+                }))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageContaining("Duplicate");
+        assertThatThrownBy(() -> compile(rule("a", "/api/**/roles")))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageContaining("'**'");
+        assertThatThrownBy(() -> compile(rule("a", "api")))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageContaining("must start with '/'");
+        assertThatThrownBy(() -> compile(new RateLimitRule("a", List.of(), List.of(), List.of(), List.of())))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageContaining("at least one bandwidth");
+        assertThat(bound).isEmpty();
+        assertThat(meterRegistry.find("ratelimit.buckets").gauges()).isEmpty();
+    }
+
+    @Test
+    void rejectedReloadKeepsTheCurrentPolicies() {
+        var backend = new SharedRateLimitBackend(null, null, meterRegistry, false, 10, 0.1, Duration.ofSeconds(1),
+                Duration.ofMillis(50), Duration.ofSeconds(10), 1.0, 1, 100);
+        var properties = new RateLimitProperties();
+        properties.setPolicies(List.of(rule("login", "/api/auth/login"), rule("general")));
+        // Rejected before anything is stored, so no database is needed
+        var service = new RateLimitingService(properties, backend, new HeavyHitterProperties(), null, 1000,
+                Duration.ofMinutes(1), meterRegistry);
+        try {
+            var loaded = service.current();
+            var client = RateLimitingService.ClientKey.ip("192.0.2.1");
+            var login = service.select("/api/auth/login", "POST", ANONYMOUS);
+            assertThat(service.tryConsume(client, login)).isTrue();
+
+            assertThatThrownBy(() -> service.replace(List.of(rule("login", "/api/**/login"))))
+                    .isInstanceOf(InvalidRequestException.class);
+
+            assertThat(service.current()).isSameAs(loaded);
+            assertThat(service.select("/api/auth/login", "POST", ANONYMOUS)).isSameAs(login);
+            assertThat(service.getAvailableTokens(client, login)).isEqualTo(9);
+            assertThat(meterRegistry.find("ratelimit.buckets").tag("policy", "general").gauge()).isNotNull();
+        } finally {
+            service.shutdown();
+            backend.shutdown();
+        }
+    }
+
+    private RateLimitRouteMatcher compile(RateLimitRule... rules) {
+        return RateLimitPolicyCompiler.compile(List.of(rules), 1, store::bucketsFor);
+    }
+
+    private static String select(RateLimitRouteMatcher matcher, String path, String method) {
+        var policy = matcher.select(path, method, ANONYMOUS);
+        return policy != null ? policy.id() : null;
+    }
+
+    private static RateLimitRule rule(String id, String... paths) {
+        return rule(id, List.of(paths), List.of(), List.of());
+    }
+
+    private static RateLimitRule rule(String id, List<String> paths, List<String> methods, List<RoleType> roles) {
+        return new RateLimitRule(id, paths, methods, roles,
+                List.of(new RateLimitRule.BandwidthLimit(10, Duration.ofMinutes(1))));
+    }
+}
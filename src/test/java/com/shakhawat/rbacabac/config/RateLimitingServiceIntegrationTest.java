@@ -0,0 +1,181 @@
+package com.shakhawat.rbacabac.config;
+
+import com.shakhawat.rbacabac.config.RateLimitingService.ClientKey;
+import com.shakhawat.rbacabac.exception.InvalidRequestException;
+import com.shakhawat.rbacabac.security.AuthoritySet;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.postgresql.PostgreSQLContainer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Several services sharing one database stand in for the nodes of a cluster.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class RateLimitingServiceIntegrationTest {
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(50);
+
+    @Container
+    static final PostgreSQLContainer POSTGRES = new PostgreSQLContainer("postgres:16-alpine");
+
+    private final List<RateLimitingService> services = new ArrayList<>();
+    private SharedRateLimitBackend backend;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(),
+                POSTGRES.getPassword()));
+        jdbcTemplate.execute("DROP TABLE IF EXISTS rate_limit_policy");
+        // Buckets stay local, only the policies are shared
+        backend = new SharedRateLimitBackend(null, null, new SimpleMeterRegistry(), false, 10, 0.1,
+                Duration.ofSeconds(1), Duration.ofMillis(50), Duration.ofSeconds(10), 1.0, 1, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(RateLimitingService::shutdown);
+        backend.shutdown();
+    }
+
+    @Test
+    void startsWithTheConfiguredPoliciesUntilReplacementsAreStored() {
+        var service = start();
+
+        assertThat(policyIds(service)).containsExactly("configured");
+    }
+
+    @Test
+    void replacementReachesOtherNodesAndLaterStarts() {
+        var first = start();
+        var second = start();
+        var generation = second.current().generation();
+
+        first.replace(List.of(rule("replaced", "/api/auth/login", Duration.ofMinutes(1))));
+
+        assertThat(policyIds(first)).containsExactly("replaced");
+        await(() -> second.current().generation() > generation);
+        assertThat(policyIds(second)).containsExactly("replaced");
+        // The stored policies take precedence over the configured ones after a restart
+        var restarted = start();
+        assertThat(policyIds(restarted)).containsExactly("replaced");
+        assertThat(restarted.current().source().getFirst().getBandwidths())
+                .containsExactly(new RateLimitRule.BandwidthLimit(10, Duration.ofMinutes(1)));
+
+        second.replace(List.of(rule("replaced-again", "/api/auth/login", Duration.ofMinutes(1))));
+        await(() -> policyIds(first).equals(List.of("replaced-again")));
+        assertThat(jdbcTemplate.queryForObject("SELECT revision FROM rate_limit_policy", Long.class)).isEqualTo(2);
+    }
+
+    @Test
+    void replacementKeepsTheBucketsOfUnchangedPolicies() {
+        var meterRegistry = new SimpleMeterRegistry();
+        var service = start(meterRegistry);
+        service.replace(List.of(rule("login", "/api/auth/login", Duration.ofMinutes(1)),
+                rule("general", "/**", Duration.ofMinutes(1))));
+        var client = ClientKey.ip("192.0.2.1");
+        assertThat(service.tryConsume(client, login(service))).isTrue();
+
+        service.replace(List.of(rule("login", "/api/auth/login", Duration.ofMinutes(1))));
+
+        assertThat(service.getAvailableTokens(client, login(service))).isEqualTo(9);
+        assertThat(meterRegistry.find("ratelimit.buckets").tag("policy", "general").gauge()).isNull();
+        assertThat(meterRegistry.find("ratelimit.buckets").tag("policy", "login").gauge().value()).isEqualTo(1);
+
+        // A changed bandwidth is a new bucket
+        service.replace(List.of(rule("login", "/api/auth/login", Duration.ofMinutes(2))));
+        assertThat(service.getAvailableTokens(client, login(service))).isEqualTo(10);
+    }
+
+    @Test
+    void rejectedReplacementIsNotStored() {
+        var service = start();
+
+        assertThatThrownBy(() -> service.replace(List.of(rule("invalid", "/api/**/login", Duration.ofMinutes(1)))))
+                .isInstanceOf(InvalidRequestException.class);
+
+        assertThat(policyIds(service)).containsExactly("configured");
+        assertThat(jdbcTemplate.queryForList("SELECT revision FROM rate_limit_policy", Long.class)).isEmpty();
+    }
+
+    @Test
+    void storedPoliciesThatNoLongerCompileAreSkipped() {
+        var service = start();
+        service.replace(List.of(rule("replaced", "/api/auth/login", Duration.ofMinutes(1))));
+        var generation = service.current().generation();
+
+        // Written by hand, as if by a node whose compiler accepted something this one rejects
+        jdbcTemplate.update("UPDATE rate_limit_policy SET revision = revision + 1, document = ?",
+                "[{\"id\":\"broken\",\"paths\":[\"/api/**/login\"],\"bandwidths\":[{\"capacity\":1,\"refill\":\"PT1M\"}]}]");
+
+        var restarted = start();
+        assertThat(policyIds(restarted)).containsExactly("configured");
+        sleep(POLL_INTERVAL.multipliedBy(4));
+        assertThat(service.current().generation()).isEqualTo(generation);
+        assertThat(policyIds(service)).containsExactly("replaced");
+
+        // Valid policies after the broken revision are picked up again
+        restarted.replace(List.of(rule("fixed", "/api/auth/login", Duration.ofMinutes(1))));
+        await(() -> policyIds(service).equals(List.of("fixed")));
+    }
+
+    private RateLimitingService start() {
+        return start(new SimpleMeterRegistry());
+    }
+
+    private RateLimitingService start(MeterRegistry meterRegistry) {
+        var properties = new RateLimitProperties();
+        properties.setPollInterval(POLL_INTERVAL);
+        properties.setPolicies(List.of(rule("configured", "/api/auth/login", Duration.ofMinutes(1))));
+        var service = new RateLimitingService(properties, backend, new HeavyHitterProperties(), jdbcTemplate, 1000,
+                Duration.ofMinutes(1), meterRegistry);
+        services.add(service);
+        service.initialize();
+        return service;
+    }
+
+    private static RateLimitPolicy login(RateLimitingService service) {
+        return service.select("/api/auth/login", "POST", AuthoritySet.EMPTY);
+    }
+
+    private static RateLimitRule rule(String id, String path, Duration refill) {
+        return new RateLimitRule(id, List.of(path), List.of(), List.of(),
+                List.of(new RateLimitRule.BandwidthLimit(10, refill)));
+    }
+
+    private static List<String> policyIds(RateLimitingService service) {
+        return service.current().source().stream().map(RateLimitRule::getId).toList();
+    }
+
+    private static void await(BooleanSupplier condition) {
+        var deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met within 5s").isLessThan(deadline);
+            sleep(POLL_INTERVAL);
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.shakhawat.rbacabac.config;
+
+import com.shakhawat.rbacabac.config.RateLimitPolicy.BandwidthSpec;
+import com.shakhawat.rbacabac.config.RateLimitPolicy.BucketSpec;
+import com.shakhawat.rbacabac.config.RateLimitingService.ClientKey;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.postgresql.PostgreSQLContainer;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs reservations against a real Postgres. Elapsed time is simulated by moving
+ * {@code refilled_at} back, so refill amounts are exact up to the few milliseconds a statement takes.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class SharedRateLimitBackendIntegrationTest {
+
+    private static final String KEY = "login|ip:192.0.2.1";
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    // Ten tokens, one per second
+    private static final BucketSpec SPEC = spec(new BandwidthSpec(10, Duration.ofSeconds(10)));
+
+    @Container
+    static final PostgreSQLContainer POSTGRES = new PostgreSQLContainer("postgres:16-alpine");
+
+    private JdbcTemplate jdbcTemplate;
+    private SharedRateLimitBackend backend;
+
+    @BeforeEach
+    void setUp() {
+        var dataSource = new DriverManagerDataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS rate_limit_buckets");
+        // A generous timeout, so a slow container never switches the backend to local buckets
+        backend = new SharedRateLimitBackend(jdbcTemplate, new DataSourceTransactionManager(dataSource),
+                new SimpleMeterRegistry(), true, 10, 0.1, Duration.ofSeconds(1), Duration.ofSeconds(5),
+                Duration.ofSeconds(10), 1.0, 2, 100);
+        backend.createTable();
+    }
+
+    @AfterEach
+    void tearDown() {
+        backend.shutdown();
+    }
+
+    @Test
+    void newBucketStartsFull() {
+        var reservation = backend.reserve(KEY, SPEC, 4);
+
+        assertThat(reservation.granted()).isEqualTo(4);
+        assertThat(reservation.remaining()).isEqualTo(6);
+        assertThat(reservation.nanosToRefill()).isZero();
+        assertThat(reservation.nanosToReset()).isEqualTo(4 * NANOS_PER_SECOND);
+    }
+
+    @Test
+    void emptyBucketGrantsNothingAndReportsTheWaitForOneToken() {
+        assertThat(backend.reserve(KEY, SPEC, 10).granted()).isEqualTo(10);
+
+        var reservation = backend.reserve(KEY, SPEC, 1);
+
+        assertThat(reservation.granted()).isZero();
+        assertThat(reservation.remaining()).isZero();
+        assertThat(reservation.nanosToRefill()).isBetween(1L, NANOS_PER_SECOND);
+        assertThat(reservation.nanosToReset()).isBetween(9 * NANOS_PER_SECOND, 10 * NANOS_PER_SECOND);
+    }
+
+    @Test
+    void refillsInProportionToElapsedTime() {
+        assertThat(backend.reserve(KEY, SPEC, 10).granted()).isEqualTo(10);
+        elapse(Duration.ofSeconds(5));
+
+        var reservation = backend.reserve(KEY, SPEC, 10);
+
+        assertThat(reservation.granted()).isEqualTo(5);
+        assertThat(reservation.remaining()).isZero();
+    }
+
+    @Test
+    void keepsFractionalTokensBetweenReservations() {
+        assertThat(backend.reserve(KEY, SPEC, 10).granted()).isEqualTo(10);
+        elapse(Duration.ofMillis(1500));
+        assertThat(backend.reserve(KEY, SPEC, 10).granted()).isEqualTo(1);
+
+        // The half token left over adds up with the next half second
+        elapse(Duration.ofMillis(500));
+        assertThat(backend.reserve(KEY, SPEC, 10).granted()).isEqualTo(1);
+    }
+
+    @Test
+    void refillIsCappedAtCapacity() {
+        assertThat(backend.reserve(KEY, SPEC, 10).granted()).isEqualTo(10);
+        elapse(Duration.ofHours(1));
+
+        var reservation = backend.reserve(KEY, SPEC, 20);
+
+        assertThat(reservation.granted()).isEqualTo(10);
+        assertThat(reservation.remaining()).isZero();
+    }
+
+    @Test
+    void mostRestrictiveBandwidthLimitsTheGrant() {
+        // 10 per minute with a burst cap of 3 per second
+        var spec = spec(new BandwidthSpec(10, Duration.ofMinutes(1)), new BandwidthSpec(3, Duration.ofSeconds(1)));
+
+        var first = backend.reserve(KEY, spec, 10);
+
+        assertThat(first.granted()).isEqualTo(3);
+        assertThat(first.remaining()).isZero();
+        // The minute bandwidth lacks three tokens at six seconds each
+        assertThat(first.nanosToReset()).isEqualTo(18 * NANOS_PER_SECOND);
+
+        elapse(Duration.ofSeconds(1));
+        assertThat(backend.reserve(KEY, spec, 10).granted()).isEqualTo(3);
+        elapse(Duration.ofSeconds(1));
+        // 4 left per minute (plus a third of a token), 3 per second
+        assertThat(backend.reserve(KEY, spec, 10).granted()).isEqualTo(3);
+        elapse(Duration.ofSeconds(1));
+        assertThat(backend.reserve(KEY, spec, 10).granted()).isEqualTo(1);
+    }
+
+    @Test
+    void changedBandwidthsGetTheirOwnRow() {
+        var client = ClientKey.ip("192.0.2.1");
+        var changed = spec(new BandwidthSpec(10, Duration.ofSeconds(10)), new BandwidthSpec(5, Duration.ofSeconds(1)));
+        var key = SharedRateLimitBackend.bucketKey(SPEC, client);
+        var changedKey = SharedRateLimitBackend.bucketKey(changed, client);
+
+        assertThat(key).isEqualTo("login[10/PT10S]|ip:192.0.2.1");
+        assertThat(changedKey).isEqualTo("login[10/PT10S,5/PT1S]|ip:192.0.2.1");
+        assertThat(SharedRateLimitBackend.bucketKey(spec(new BandwidthSpec(10, Duration.ofSeconds(10))), client))
+                .isEqualTo(key);
+
+        assertThat(backend.reserve(key, SPEC, 10).granted()).isEqualTo(10);
+        assertThat(backend.reserve(changedKey, changed, 10).granted()).isEqualTo(5);
+        // Nodes on either version of the policy never refill each other's bucket
+        assertThat(backend.reserve(key, SPEC, 10).granted()).isZero();
+        assertThat(backend.reserve(changedKey, changed, 10).granted()).isZero();
+    }
+
+    @Test
+    void expiresOnceTheBucketWouldHaveRefilled() {
+        backend.reserve(KEY, SPEC, 4);
+        backend.reserve("login|ip:192.0.2.2", SPEC, 1);
+
+        // Expiry is the refill time plus the longest refill duration
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT EXTRACT(EPOCH FROM expires_at - refilled_at) FROM rate_limit_buckets WHERE bucket_key = ?",
+                Double.class, KEY)).isEqualTo(10.0);
+
+        jdbcTemplate.update("UPDATE rate_limit_buckets SET expires_at = now() - interval '1 second' WHERE bucket_key = ?", KEY);
+        backend.deleteExpiredBuckets();
+
+        assertThat(jdbcTemplate.queryForList("SELECT bucket_key FROM rate_limit_buckets", String.class))
+                .containsExactly("login|ip:192.0.2.2");
+        // A deleted bucket is a full one
+        assertThat(backend.reserve(KEY, SPEC, 10).granted()).isEqualTo(10);
+    }
+
+    @Test
+    void failedReservationFallsBackToLocalBuckets() {
+        jdbcTemplate.execute("DROP TABLE rate_limit_buckets");
+
+        assertThat(backend.reserve(KEY, SPEC, 1)).isNull();
+        assertThat(backend.isDegraded()).isTrue();
+        // The cooldown skips the database entirely
+        backend.createTable();
+        assertThat(backend.reserve(KEY, SPEC, 1)).isNull();
+    }
+
+    private void elapse(Duration duration) {
+        jdbcTemplate.update("UPDATE rate_limit_buckets SET refilled_at = refilled_at - make_interval(secs => ?) "
+                + "WHERE bucket_key = ?", duration.toNanos() / 1e9, KEY);
+    }
+
+    private static BucketSpec spec(BandwidthSpec... bandwidths) {
+        return new BucketSpec("login", List.of(bandwidths));
+    }
+}
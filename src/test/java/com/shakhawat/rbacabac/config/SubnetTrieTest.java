@@ -0,0 +1,148 @@
+package com.shakhawat.rbacabac.config;
+
+import com.shakhawat.rbacabac.util.CidrBlock;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SubnetTrieTest {
+
+    private static final int[] IPV4 = {16, 24, 32};
+    private static final int[] IPV6 = {48, 64};
+    private static final long IDLE = 1_000;
+    private static final long[] IDLE_NANOS = {IDLE, IDLE, IDLE};
+    private static final IntFunction<Bucket> FACTORY = level -> Bucket.builder()
+            .addLimit(Bandwidth.builder().capacity(10).refillGreedy(10, Duration.ofMinutes(1)).build())
+            .build();
+
+    private final SubnetTrie trie = new SubnetTrie();
+
+    @Test
+    void createsOneNodePerLevelWithoutIntermediateBits() {
+        var buckets = path("10.0.0.1", IPV4, 0);
+
+        assertThat(trie.size()).isEqualTo(3);
+        assertThat(buckets).doesNotContainNull().doesNotHaveDuplicates();
+        assertThat(path("10.0.0.1", IPV4, 0)).containsExactly(buckets);
+        assertThat(trie.size()).isEqualTo(3);
+    }
+
+    @Test
+    void sharesEnclosingSubnetBuckets() {
+        var first = path("10.0.0.1", IPV4, 0);
+        var sameSubnet = path("10.0.0.200", IPV4, 0);
+        var sameSixteen = path("10.0.7.1", IPV4, 0);
+        var elsewhere = path("192.168.0.1", IPV4, 0);
+
+        assertThat(sameSubnet[0]).isSameAs(first[0]);
+        assertThat(sameSubnet[1]).isSameAs(first[1]);
+        assertThat(sameSubnet[2]).isNotSameAs(first[2]);
+        assertThat(sameSixteen[0]).isSameAs(first[0]);
+        assertThat(sameSixteen[1]).isNotSameAs(first[1]);
+        assertThat(elsewhere[0]).isNotSameAs(first[0]);
+    }
+
+    @Test
+    void branchesAtTheFirstDifferingBit() {
+        path("10.0.0.1", IPV4, 0);
+
+        // Differs at bit 24, right below the /24 node: a second child, no branch node
+        path("10.0.0.129", IPV4, 0);
+        assertThat(trie.size()).isEqualTo(4);
+
+        // Shares 30 bits with 10.0.0.1, which sits on the same side: split by a /30 branch node
+        path("10.0.0.2", IPV4, 0);
+        assertThat(trie.size()).isEqualTo(6);
+
+        // Descends through the /30 branch and splits its 10.0.0.2 side at bit 31
+        path("10.0.0.3", IPV4, 0);
+        assertThat(trie.size()).isEqualTo(8);
+    }
+
+    @Test
+    void pruneDropsIdleBucketsAndCollapsesBranchesLeftWithOneChild() {
+        var stale = path("10.0.0.1", IPV4, 0);
+        var active = path("10.0.0.2", IPV4, 500);
+        assertThat(trie.size()).isEqualTo(5);
+
+        assertThat(trie.prune(IDLE + 100, IDLE_NANOS, Long.MAX_VALUE)).isEqualTo(1);
+
+        // The stale /32 leaf is gone, and so is the /30 branch above it
+        assertThat(trie.size()).isEqualTo(3);
+        assertThat(path("10.0.0.2", IPV4, IDLE + 100)).containsExactly(active);
+        var recreated = path("10.0.0.1", IPV4, IDLE + 100);
+        assertThat(recreated[1]).isSameAs(stale[1]);
+        assertThat(recreated[2]).isNotSameAs(stale[2]);
+    }
+
+    @Test
+    void reinsertsALevelAboveANodeThatOutlivedIt() {
+        var original = path("10.0.0.1", IPV4, 0);
+
+        // Only the /24 level has gone idle: its node collapses and the /32 hangs off the /16
+        assertThat(trie.prune(100, new long[]{IDLE, 10, IDLE}, Long.MAX_VALUE)).isEqualTo(1);
+        assertThat(trie.size()).isEqualTo(2);
+
+        var buckets = path("10.0.0.1", IPV4, 100);
+        assertThat(trie.size()).isEqualTo(3);
+        assertThat(buckets[0]).isSameAs(original[0]);
+        assertThat(buckets[1]).isNotSameAs(original[1]);
+        assertThat(buckets[2]).isSameAs(original[2]);
+    }
+
+    @Test
+    void pruneOfEverythingEmptiesTheTrie() {
+        path("10.0.0.1", IPV4, 0);
+        path("10.0.0.2", IPV4, 0);
+        path("192.168.0.1", IPV4, 0);
+
+        assertThat(trie.prune(IDLE, IDLE_NANOS, Long.MAX_VALUE)).isEqualTo(7);
+        assertThat(trie.size()).isZero();
+    }
+
+    @Test
+    void capacityPruneOnlyDropsBucketsThatHaveRefilled() {
+        var used = path("10.0.0.1", IPV4, 0);
+        path("192.168.0.1", IPV4, 0);
+        assertThat(used[2].tryConsume(1)).isTrue();
+
+        // Far below the idle threshold, but past the capacity one
+        assertThat(trie.prune(100, new long[]{Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE}, 50)).isEqualTo(5);
+
+        assertThat(trie.size()).isEqualTo(1);
+        assertThat(path("10.0.0.1", IPV4, 100)[2]).isSameAs(used[2]);
+    }
+
+    @Test
+    void keysIpv6PrefixesAcrossBothHalves() {
+        var first = path("2001:db8:1:1::1", IPV6, 0);
+        var sameSixtyFour = path("2001:db8:1:1:ffff::1", IPV6, 0);
+        var sameFortyEight = path("2001:db8:1:8000::1", IPV6, 0);
+
+        assertThat(sameSixtyFour).containsExactly(first);
+        assertThat(sameFortyEight[0]).isSameAs(first[0]);
+        assertThat(sameFortyEight[1]).isNotSameAs(first[1]);
+        assertThat(trie.size()).isEqualTo(3);
+
+        // A /128 level below the /64s is keyed on the low half
+        var hosts = new int[]{48, 64, 128};
+        var host = path("2001:db8:1:1::1", hosts, 0);
+        var neighbour = path("2001:db8:1:1::2", hosts, 0);
+        assertThat(neighbour[1]).isSameAs(host[1]);
+        assertThat(neighbour[2]).isNotSameAs(host[2]);
+    }
+
+    private Bucket[] path(String address, int[] prefixes, long now) {
+        var key = ByteBuffer.wrap(Arrays.copyOf(CidrBlock.toBytes(address), 16));
+        var buckets = new Bucket[prefixes.length];
+        trie.path(key.getLong(0), key.getLong(8), prefixes, FACTORY, buckets, now);
+        return buckets;
+    }
+}
@@ -0,0 +1,219 @@
+package com.shakhawat.rbacabac.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shakhawat.rbacabac.config.HeavyHitterProperties;
+import com.shakhawat.rbacabac.config.HeavyHitterTracker;
+import com.shakhawat.rbacabac.config.RateLimitPolicy;
+import com.shakhawat.rbacabac.config.RateLimitProperties;
+import com.shakhawat.rbacabac.config.RateLimitRule;
+import com.shakhawat.rbacabac.config.RateLimitingService;
+import com.shakhawat.rbacabac.config.RateLimitingService.ClientKey;
+import com.shakhawat.rbacabac.config.SharedRateLimitBackend;
+import com.shakhawat.rbacabac.config.SubnetRateLimitProperties;
+import com.shakhawat.rbacabac.config.SubnetRateLimiter;
+import com.shakhawat.rbacabac.entity.RoleType;
+import com.shakhawat.rbacabac.security.AuthorityRegistry;
+import com.shakhawat.rbacabac.security.AuthoritySet;
+import com.shakhawat.rbacabac.security.ClientIpResolver;
+import com.shakhawat.rbacabac.security.UserPrincipal;
+import com.shakhawat.rbacabac.security.UserPrincipalAuthenticationToken;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitFilterTest {
+
+    private static final String LOGIN = "/api/auth/login";
+
+    private SharedRateLimitBackend backend;
+    private RateLimitingService rateLimitingService;
+    private StubHeavyHitterTracker heavyHitters;
+    private SubnetRateLimiter subnetRateLimiter;
+    private RateLimitFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        var meterRegistry = new SimpleMeterRegistry();
+        backend = new SharedRateLimitBackend(null, null, meterRegistry, false, 10, 0.1, Duration.ofSeconds(1),
+                Duration.ofMillis(50), Duration.ofSeconds(10), 1.0, 1, 100);
+
+        var properties = new RateLimitProperties();
+        properties.setPolicies(List.of(new RateLimitRule("login", List.of(LOGIN), List.of(), List.of(),
+                List.of(new RateLimitRule.BandwidthLimit(3, Duration.ofMinutes(1))))));
+        var heavyHitterProperties = new HeavyHitterProperties();
+        heavyHitterProperties.getEscalation().setEnabled(true);
+        heavyHitterProperties.getEscalation().setBandwidths(
+                List.of(new RateLimitRule.BandwidthLimit(2, Duration.ofMinutes(1))));
+        rateLimitingService = new RateLimitingService(properties, backend, heavyHitterProperties, null, 1000,
+                Duration.ofMinutes(1), meterRegistry);
+        heavyHitters = new StubHeavyHitterTracker(heavyHitterProperties);
+
+        var level = new SubnetRateLimitProperties.Level();
+        level.setPrefix(24);
+        level.setBandwidths(List.of(new RateLimitRule.BandwidthLimit(5, Duration.ofMinutes(1))));
+        var subnetProperties = new SubnetRateLimitProperties();
+        subnetProperties.setIpv4(List.of(level));
+        subnetRateLimiter = new SubnetRateLimiter(subnetProperties, meterRegistry);
+
+        filter = new RateLimitFilter(rateLimitingService, heavyHitters, subnetRateLimiter, new ClientIpResolver(List.of()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        rateLimitingService.shutdown();
+        heavyHitters.shutdown();
+        subnetRateLimiter.shutdown();
+        backend.shutdown();
+    }
+
+    @Test
+    void requestsNoPolicyMatchesPassWithoutHeaders() throws Exception {
+        var exchange = send("/api/employees", "192.0.2.1");
+
+        assertThat(exchange.passed()).isTrue();
+        assertThat(exchange.response().getHeaderNames()).isEmpty();
+    }
+
+    @Test
+    void eachRequestTakesOneTokenAndReportsWhatIsLeft() throws Exception {
+        for (var remaining = 2; remaining >= 0; remaining--) {
+            var exchange = send(LOGIN, "192.0.2.1");
+
+            assertThat(exchange.passed()).isTrue();
+            assertThat(exchange.response().getHeader("X-RateLimit-Limit")).isEqualTo("3");
+            assertThat(exchange.response().getHeader("X-RateLimit-Remaining")).isEqualTo(Integer.toString(remaining));
+            // One token refills every 20 seconds
+            assertThat(exchange.response().getHeader("X-RateLimit-Reset")).isEqualTo(Integer.toString((3 - remaining) * 20));
+            assertThat(exchange.response().getHeader("Retry-After")).isNull();
+        }
+
+        assertThat(rateLimitingService.getAvailableTokens(ClientKey.ip("192.0.2.1"), loginPolicy())).isZero();
+    }
+
+    @Test
+    void rejectionCarriesRetryAfterAndAJsonBody() throws Exception {
+        for (var i = 0; i < 3; i++) {
+            send(LOGIN, "192.0.2.1");
+        }
+
+        var exchange = send(LOGIN, "192.0.2.1");
+
+        assertThat(exchange.passed()).isFalse();
+        var response = exchange.response();
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getHeader("X-RateLimit-Remaining")).isEqualTo("0");
+        assertThat(response.getHeader("X-RateLimit-Reset")).isEqualTo("60");
+        assertThat(response.getHeader("Retry-After")).isEqualTo("20");
+        assertThat(response.getContentType()).startsWith("application/json");
+        assertThat(response.getContentLength()).isEqualTo(response.getContentAsByteArray().length);
+
+        var body = new ObjectMapper().readTree(response.getContentAsByteArray());
+        assertThat(body.get("success").asBoolean()).isFalse();
+        assertThat(body.get("message").asText()).isEqualTo("Rate limit exceeded. Please try again later.");
+        assertThat(body.get("details").asText()).isEqualTo("Limit: 3 requests per 1 minute");
+        assertThat(LocalDateTime.parse(body.get("timestamp").asText())).isBeforeOrEqualTo(LocalDateTime.now());
+    }
+
+    @Test
+    void authenticatedRequestsAreLimitedPerUserWhateverTheirAddress() throws Exception {
+        var principal = new UserPrincipal(42L, "user@example.com", null, "IT", "Engineer",
+                AuthoritySet.of(AuthorityRegistry.maskOf(RoleType.ROLE_EMPLOYEE)));
+        SecurityContextHolder.getContext().setAuthentication(new UserPrincipalAuthenticationToken(principal));
+
+        assertThat(send(LOGIN, "203.0.113.1").response().getHeader("X-RateLimit-Remaining")).isEqualTo("2");
+        assertThat(send(LOGIN, "203.0.113.2").response().getHeader("X-RateLimit-Remaining")).isEqualTo("1");
+
+        assertThat(rateLimitingService.getAvailableTokens(ClientKey.user("42"), loginPolicy())).isEqualTo(1);
+        assertThat(rateLimitingService.getAvailableTokens(ClientKey.ip("203.0.113.1"), loginPolicy())).isEqualTo(3);
+        // Subnet levels only apply to anonymous clients
+        assertThat(subnetRateLimiter.size()).isZero();
+    }
+
+    @Test
+    void escalatedClientsMustPassTheEscalationPolicyToo() throws Exception {
+        var client = ClientKey.ip("198.51.100.7");
+        heavyHitters.escalated.add(client);
+
+        // Headers report the escalation bucket while it is closer to rejecting than the route's
+        var first = send(LOGIN, "198.51.100.7").response();
+        assertThat(first.getHeader("X-RateLimit-Limit")).isEqualTo("2");
+        assertThat(first.getHeader("X-RateLimit-Remaining")).isEqualTo("1");
+        assertThat(send(LOGIN, "198.51.100.7").response().getHeader("X-RateLimit-Remaining")).isEqualTo("0");
+
+        var rejected = send(LOGIN, "198.51.100.7");
+
+        assertThat(rejected.passed()).isFalse();
+        assertThat(rejected.response().getHeader("X-RateLimit-Limit")).isEqualTo("2");
+        assertThat(new ObjectMapper().readTree(rejected.response().getContentAsByteArray()).get("details").asText())
+                .isEqualTo("Limit: 2 requests per 1 minute");
+        // The escalation bucket rejected first, so the route bucket kept its last token
+        assertThat(rateLimitingService.getAvailableTokens(client, loginPolicy())).isEqualTo(1);
+
+        // A client that is not escalated only answers to the route policy
+        assertThat(send(LOGIN, "198.51.100.8").response().getHeader("X-RateLimit-Limit")).isEqualTo("3");
+    }
+
+    @Test
+    void subnetLevelRejectsAnonymousClientsBeforeTheirRouteBucket() throws Exception {
+        for (var host = 1; host <= 5; host++) {
+            assertThat(send(LOGIN, "192.0.2." + host).passed()).isTrue();
+        }
+
+        var rejected = send(LOGIN, "192.0.2.6");
+
+        assertThat(rejected.passed()).isFalse();
+        assertThat(rejected.response().getHeader("X-RateLimit-Limit")).isEqualTo("5");
+        assertThat(rejected.response().getHeader("X-RateLimit-Remaining")).isEqualTo("0");
+        assertThat(new ObjectMapper().readTree(rejected.response().getContentAsByteArray()).get("details").asText())
+                .isEqualTo("Limit: 5 requests per 1 minute per /24 subnet");
+        assertThat(rateLimitingService.getAvailableTokens(ClientKey.ip("192.0.2.6"), loginPolicy())).isEqualTo(3);
+
+        // Another /24 has its own level bucket
+        assertThat(send(LOGIN, "192.0.3.1").passed()).isTrue();
+    }
+
+    private Exchange send(String path, String remoteAddress) throws Exception {
+        var request = new MockHttpServletRequest("POST", path);
+        request.setRemoteAddr(remoteAddress);
+        var response = new MockHttpServletResponse();
+        var chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+
+        return new Exchange(response, chain.getRequest() != null);
+    }
+
+    private RateLimitPolicy loginPolicy() {
+        return rateLimitingService.select(LOGIN, "POST", AuthoritySet.EMPTY);
+    }
+
+    private record Exchange(MockHttpServletResponse response, boolean passed) {
+    }
+
+    private static class StubHeavyHitterTracker extends HeavyHitterTracker {
+        private final Set<ClientKey> escalated = new HashSet<>();
+
+        StubHeavyHitterTracker(HeavyHitterProperties properties) {
+            super(properties, new SimpleMeterRegistry());
+        }
+
+        @Override
+        public boolean isEscalated(ClientKey client) {
+            return escalated.contains(client);
+        }
+    }
+}
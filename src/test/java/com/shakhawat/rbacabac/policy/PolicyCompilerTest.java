@@ -0,0 +1,215 @@
+package com.shakhawat.rbacabac.policy;
+
+import com.shakhawat.rbacabac.entity.Role;
+import com.shakhawat.rbacabac.entity.RoleType;
+import com.shakhawat.rbacabac.exception.InvalidRequestException;
+import com.shakhawat.rbacabac.security.AuthorityRegistry;
+import com.shakhawat.rbacabac.security.AuthoritySet;
+import com.shakhawat.rbacabac.security.AuthorizationSnapshot;
+import com.shakhawat.rbacabac.security.EmployeeAction;
+import com.shakhawat.rbacabac.security.UserPrincipal;
+import com.shakhawat.rbacabac.util.CidrBlock;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PolicyCompilerTest {
+
+    private static final UserPrincipal SUBJECT = new UserPrincipal(1L, "alice@example.com", null, "Engineering",
+            "Engineer", AuthoritySet.EMPTY);
+    private static final AuthoritySet ADMIN = AuthoritySet.of(AuthorityRegistry.maskOf(RoleType.ROLE_ADMIN));
+    private static final AuthoritySet HR = AuthoritySet.of(AuthorityRegistry.maskOf(RoleType.ROLE_HR));
+    private static final AuthoritySet MANAGER = AuthoritySet.of(AuthorityRegistry.maskOf(RoleType.ROLE_MANAGER));
+    private static final AuthoritySet EMPLOYEE = AuthoritySet.of(AuthorityRegistry.maskOf(RoleType.ROLE_EMPLOYEE));
+    // A Monday
+    private static final ZonedDateTime NOON = ZonedDateTime.of(2024, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    // The default hierarchy: ROLE_ADMIN > ROLE_HR > ROLE_MANAGER > ROLE_EMPLOYEE
+    private AuthorizationSnapshot snapshot = AuthorizationSnapshot.of(List.of(
+            role(1L, RoleType.ROLE_ADMIN, RoleType.ROLE_HR),
+            role(2L, RoleType.ROLE_HR, RoleType.ROLE_MANAGER),
+            role(3L, RoleType.ROLE_MANAGER, RoleType.ROLE_EMPLOYEE),
+            role(4L, RoleType.ROLE_EMPLOYEE, null)));
+
+    @Test
+    void firstApplicableRuleDecides() {
+        var denySelfFirst = compile(Effect.DENY,
+                rule("no-self-edit", Effect.DENY, List.of(EmployeeAction.MODIFY), null, resource(true, null, null), null),
+                rule("admin", Effect.PERMIT, List.of(), subject(RoleType.ROLE_ADMIN), null, null));
+
+        assertThat(denySelfFirst.evaluate(request(ADMIN, EmployeeAction.MODIFY, 1L, null)))
+                .isEqualTo(new PolicyDecision(false, "no-self-edit"));
+        assertThat(denySelfFirst.evaluate(request(ADMIN, EmployeeAction.MODIFY, 2L, null)))
+                .isEqualTo(new PolicyDecision(true, "admin"));
+        // The deny rule only lists MODIFY
+        assertThat(denySelfFirst.evaluate(request(ADMIN, EmployeeAction.VIEW, 1L, null)))
+                .isEqualTo(new PolicyDecision(true, "admin"));
+
+        var adminFirst = compile(Effect.DENY,
+                rule("admin", Effect.PERMIT, List.of(), subject(RoleType.ROLE_ADMIN), null, null),
+                rule("no-self-edit", Effect.DENY, List.of(EmployeeAction.MODIFY), null, resource(true, null, null), null));
+
+        assertThat(adminFirst.evaluate(request(ADMIN, EmployeeAction.MODIFY, 1L, null)))
+                .isEqualTo(new PolicyDecision(true, "admin"));
+    }
+
+    @Test
+    void rolesMatchEveryRoleAboveThemInTheCurrentHierarchy() {
+        var policy = compile(Effect.DENY,
+                rule("manager-view", Effect.PERMIT, List.of(EmployeeAction.VIEW), subject(RoleType.ROLE_MANAGER), null, null));
+
+        assertThat(policy.evaluate(request(MANAGER, EmployeeAction.VIEW, 2L, null)).permitted()).isTrue();
+        assertThat(policy.evaluate(request(HR, EmployeeAction.VIEW, 2L, null)).permitted()).isTrue();
+        assertThat(policy.evaluate(request(ADMIN, EmployeeAction.VIEW, 2L, null)).permitted()).isTrue();
+        assertThat(policy.evaluate(request(EMPLOYEE, EmployeeAction.VIEW, 2L, null)).permitted()).isFalse();
+
+        // Same compiled policy, HR moved out from above the managers
+        snapshot = snapshot.withInheritance(RoleType.ROLE_HR, RoleType.ROLE_EMPLOYEE)
+                .withInheritance(RoleType.ROLE_ADMIN, RoleType.ROLE_MANAGER);
+
+        assertThat(policy.evaluate(request(HR, EmployeeAction.VIEW, 2L, null)).permitted()).isFalse();
+        assertThat(policy.evaluate(request(ADMIN, EmployeeAction.VIEW, 2L, null)).permitted()).isTrue();
+        assertThat(policy.evaluate(request(MANAGER, EmployeeAction.VIEW, 2L, null)).permitted()).isTrue();
+    }
+
+    @Test
+    void defaultEffectAppliesWhenNoRuleMatches() {
+        var rules = new PolicyRule[]{rule("admin", Effect.PERMIT, List.of(), subject(RoleType.ROLE_ADMIN), null, null)};
+
+        assertThat(compile(Effect.DENY, rules).evaluate(request(EMPLOYEE, EmployeeAction.VIEW, 2L, null)))
+                .isEqualTo(new PolicyDecision(false, PolicyDecision.DEFAULT_POLICY_ID));
+        assertThat(compile(Effect.PERMIT, rules).evaluate(request(EMPLOYEE, EmployeeAction.VIEW, 2L, null)))
+                .isEqualTo(new PolicyDecision(true, PolicyDecision.DEFAULT_POLICY_ID));
+        assertThat(compile(Effect.DENY).evaluate(request(ADMIN, EmployeeAction.VIEW, 2L, null)).permitted()).isFalse();
+    }
+
+    @Test
+    void unnamedRulesAreNumberedByPosition() {
+        var policy = compile(Effect.DENY,
+                rule(null, Effect.PERMIT, List.of(), subject(RoleType.ROLE_ADMIN), null, null),
+                rule(" ", Effect.PERMIT, List.of(), subject(RoleType.ROLE_HR), null, null));
+
+        assertThat(policy.evaluate(request(HR, EmployeeAction.VIEW, 2L, null)).policyId()).isEqualTo("rule-2");
+    }
+
+    @Test
+    void selfMatchesTheSubjectsOwnId() {
+        var self = compile(Effect.DENY, rule("self", Effect.PERMIT, List.of(), null, resource(true, null, null), null));
+        var others = compile(Effect.DENY, rule("others", Effect.PERMIT, List.of(), null, resource(false, null, null), null));
+
+        assertThat(self.evaluate(request(EMPLOYEE, EmployeeAction.VIEW, 1L, null)).permitted()).isTrue();
+        assertThat(self.evaluate(request(EMPLOYEE, EmployeeAction.VIEW, 2L, null)).permitted()).isFalse();
+        assertThat(others.evaluate(request(EMPLOYEE, EmployeeAction.VIEW, 2L, null)).permitted()).isTrue();
+        // Self only compares ids, so no attributes need loading
+        assertThat(self.needsResource(EmployeeAction.VIEW)).isFalse();
+    }
+
+    @Test
+    void sameDepartmentAndActiveReadTheResourceAttributes() {
+        var policy = compile(Effect.DENY,
+                rule("colleagues", Effect.PERMIT, List.of(EmployeeAction.VIEW), null, resource(null, true, true), null));
+
+        assertThat(policy.needsResource(EmployeeAction.VIEW)).isTrue();
+        assertThat(policy.needsResource(EmployeeAction.MODIFY)).isFalse();
+
+        assertThat(evaluate(policy, new EmployeeAttributes(2L, "Engineering", "Engineer", true, 1000.0))).isTrue();
+        assertThat(evaluate(policy, new EmployeeAttributes(2L, "Sales", "Engineer", true, 1000.0))).isFalse();
+        assertThat(evaluate(policy, new EmployeeAttributes(2L, "Engineering", "Engineer", false, 1000.0))).isFalse();
+        assertThat(evaluate(policy, new EmployeeAttributes(2L, "Engineering", "Engineer", null, 1000.0))).isFalse();
+        // An unknown employee matches no attribute condition
+        assertThat(evaluate(policy, null)).isFalse();
+
+        var otherDepartments = compile(Effect.DENY,
+                rule("outsiders", Effect.PERMIT, List.of(), null, resource(null, false, null), null));
+        assertThat(evaluate(otherDepartments, new EmployeeAttributes(2L, "Sales", "Engineer", true, 1000.0))).isTrue();
+        assertThat(evaluate(otherDepartments, new EmployeeAttributes(2L, "Engineering", "Engineer", true, 1000.0)))
+                .isFalse();
+    }
+
+    @Test
+    void clientCidrsMatchTheRequestAddress() {
+        var environment = new PolicyRule.EnvironmentMatch(null, null, List.of("10.0.0.0/8", "2001:db8::/32"));
+        var policy = compile(Effect.DENY, rule("office", Effect.PERMIT, List.of(), null, null, environment));
+
+        assertThat(evaluate(policy, "10.1.2.3")).isTrue();
+        assertThat(evaluate(policy, "11.0.0.1")).isFalse();
+        assertThat(evaluate(policy, "2001:db8:ffff::1")).isTrue();
+        assertThat(evaluate(policy, "2001:db9::1")).isFalse();
+        assertThat(evaluate(policy, null)).isFalse();
+
+        // Environment conditions are read per request and never cached
+        assertThat(policy.needsEnvironment(EmployeeAction.VIEW)).isTrue();
+        assertThat(policy.isCacheable(EmployeeAction.VIEW)).isFalse();
+    }
+
+    @Test
+    void invalidEnvironmentIsRejectedWithTheRuleId() {
+        var cidr = new PolicyRule.EnvironmentMatch(null, null, List.of("10.0.0.0/33"));
+        assertThatThrownBy(() -> compile(Effect.DENY, rule("office", Effect.PERMIT, List.of(), null, null, cidr)))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageStartingWith("Rule office:");
+
+        var hours = new PolicyRule.EnvironmentMatch("9 to 5", null, null);
+        assertThatThrownBy(() -> compile(Effect.DENY, rule("office", Effect.PERMIT, List.of(), null, null, hours)))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessageContaining("hours must look like");
+    }
+
+    @Test
+    void compiledPolicyKeepsItsOwnCopyOfTheDocument() {
+        var rules = new ArrayList<PolicyRule>();
+        rules.add(rule("admin", Effect.PERMIT, List.of(), subject(RoleType.ROLE_ADMIN), null, null));
+        var document = new PolicyDocument(Effect.DENY, rules, true);
+        var policy = PolicyCompiler.compile(document, 1, () -> snapshot);
+
+        document.getRules().clear();
+        document.setDefaultEffect(Effect.PERMIT);
+
+        assertThat(policy.source().getRules()).hasSize(1);
+        assertThat(policy.source().getDefaultEffect()).isEqualTo(Effect.DENY);
+        assertThat(policy.evaluate(request(ADMIN, EmployeeAction.VIEW, 2L, null)).permitted()).isTrue();
+    }
+
+    private static boolean evaluate(CompiledPolicy policy, EmployeeAttributes resource) {
+        return policy.evaluate(request(EMPLOYEE, EmployeeAction.VIEW, 2L, resource)).permitted();
+    }
+
+    private static boolean evaluate(CompiledPolicy policy, String clientAddress) {
+        return policy.evaluate(new AccessRequest(SUBJECT, EMPLOYEE, EmployeeAction.VIEW, 2L, null, NOON,
+                clientAddress != null ? CidrBlock.toBytes(clientAddress) : null)).permitted();
+    }
+
+    private static AccessRequest request(AuthoritySet authorities, EmployeeAction action, Long resourceId,
+                                         EmployeeAttributes resource) {
+        return new AccessRequest(SUBJECT, authorities, action, resourceId, resource, NOON, null);
+    }
+
+    private CompiledPolicy compile(Effect defaultEffect, PolicyRule... rules) {
+        return PolicyCompiler.compile(new PolicyDocument(defaultEffect, List.of(rules), true), 1, () -> snapshot);
+    }
+
+    private static PolicyRule rule(String id, Effect effect, List<EmployeeAction> actions,
+                                   PolicyRule.SubjectMatch subject, PolicyRule.ResourceMatch resource,
+                                   PolicyRule.EnvironmentMatch environment) {
+        return new PolicyRule(id, effect, actions, subject, resource, environment, true);
+    }
+
+    private static Role role(Long id, RoleType name, RoleType inherits) {
+        return Role.builder().id(id).name(name).inherits(inherits).permissions(Set.of()).build();
+    }
+
+    private static PolicyRule.SubjectMatch subject(RoleType role) {
+        return new PolicyRule.SubjectMatch(List.of(role), null, null);
+    }
+
+    private static PolicyRule.ResourceMatch resource(Boolean self, Boolean sameDepartment, Boolean active) {
+        return new PolicyRule.ResourceMatch(self, sameDepartment, active, null, null, null);
+    }
+}
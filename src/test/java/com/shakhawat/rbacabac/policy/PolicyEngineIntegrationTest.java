@@ -0,0 +1,148 @@
+package com.shakhawat.rbacabac.policy;
+
+import com.shakhawat.rbacabac.entity.RoleType;
+import com.shakhawat.rbacabac.exception.InvalidRequestException;
+import com.shakhawat.rbacabac.security.AuthorizationSnapshotService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.postgresql.PostgreSQLContainer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Several engines sharing one database stand in for the nodes of a cluster.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class PolicyEngineIntegrationTest {
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(50);
+
+    @Container
+    static final PostgreSQLContainer POSTGRES = new PostgreSQLContainer("postgres:16-alpine");
+
+    private final List<PolicyEngine> engines = new ArrayList<>();
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(),
+                POSTGRES.getPassword()));
+        jdbcTemplate.execute("DROP TABLE IF EXISTS authorization_policy");
+    }
+
+    @AfterEach
+    void tearDown() {
+        engines.forEach(PolicyEngine::shutdown);
+    }
+
+    @Test
+    void startsWithTheConfiguredRulesUntilAPolicyIsStored() {
+        var engine = start();
+
+        assertThat(ruleIds(engine)).containsExactly("configured");
+    }
+
+    @Test
+    void replacementReachesOtherNodesAndLaterStarts() {
+        var first = start();
+        var second = start();
+        var generation = second.current().generation();
+
+        first.replace(document("replaced"));
+
+        assertThat(ruleIds(first)).containsExactly("replaced");
+        await(() -> second.current().generation() > generation);
+        assertThat(ruleIds(second)).containsExactly("replaced");
+        // The stored policy takes precedence over the configured rules after a restart
+        assertThat(ruleIds(start())).containsExactly("replaced");
+
+        second.replace(document("replaced-again"));
+        await(() -> ruleIds(first).equals(List.of("replaced-again")));
+        assertThat(jdbcTemplate.queryForObject("SELECT revision FROM authorization_policy", Long.class)).isEqualTo(2);
+    }
+
+    @Test
+    void rejectedReplacementIsNotStored() {
+        var engine = start();
+        var invalid = document("office");
+        invalid.getRules().getFirst().setEnvironment(new PolicyRule.EnvironmentMatch("always", null, null));
+
+        assertThatThrownBy(() -> engine.replace(invalid)).isInstanceOf(InvalidRequestException.class);
+
+        assertThat(ruleIds(engine)).containsExactly("configured");
+        assertThat(jdbcTemplate.queryForList("SELECT revision FROM authorization_policy", Long.class)).isEmpty();
+    }
+
+    @Test
+    void storedPolicyThatNoLongerCompilesIsSkipped() {
+        var engine = start();
+        engine.replace(document("replaced"));
+        var generation = engine.current().generation();
+
+        // Written by hand, as if by a node whose compiler accepted something this one rejects
+        jdbcTemplate.update("UPDATE authorization_policy SET revision = revision + 1, document = ?",
+                "{\"rules\":[{\"id\":\"broken\",\"environment\":{\"clientCidrs\":[\"10.0.0.0/33\"]}}]}");
+
+        var restarted = start();
+        assertThat(ruleIds(restarted)).containsExactly("configured");
+        sleep(POLL_INTERVAL.multipliedBy(4));
+        assertThat(engine.current().generation()).isEqualTo(generation);
+        assertThat(ruleIds(engine)).containsExactly("replaced");
+
+        // A valid revision after the broken one is picked up again
+        restarted.replace(document("fixed"));
+        await(() -> ruleIds(engine).equals(List.of("fixed")));
+    }
+
+    private PolicyEngine start() {
+        var properties = new PolicyProperties();
+        properties.setPollInterval(POLL_INTERVAL);
+        properties.setRules(document("configured").getRules());
+        // Nothing here evaluates a request, so no employees, client addresses or roles are needed
+        var engine = new PolicyEngine(properties, null, null, new AuthorizationSnapshotService(null, null), jdbcTemplate);
+        engines.add(engine);
+        engine.initialize();
+        return engine;
+    }
+
+    private static PolicyDocument document(String ruleId) {
+        var rule = new PolicyRule();
+        rule.setId(ruleId);
+        rule.setSubject(new PolicyRule.SubjectMatch(List.of(RoleType.ROLE_ADMIN), null, null));
+        var rules = new ArrayList<PolicyRule>();
+        rules.add(rule);
+        return new PolicyDocument(Effect.DENY, rules, true);
+    }
+
+    private static List<String> ruleIds(PolicyEngine engine) {
+        return engine.current().source().getRules().stream().map(PolicyRule::getId).toList();
+    }
+
+    private static void await(BooleanSupplier condition) {
+        var deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met within 5s").isLessThan(deadline);
+            sleep(POLL_INTERVAL);
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.shakhawat.rbacabac.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccessTokenDenylistTest {
+
+    private static final long LIFETIME_MILLIS = Duration.ofMinutes(5).toMillis();
+    private static final long EMPLOYEE = 7L;
+    // The wheel starts at construction time, not on a second boundary, so deadlines are checked a tick apart
+    private static final long TICK_MILLIS = 1000;
+
+    private AccessTokenDenylist denylist;
+    private Instant now;
+
+    @BeforeEach
+    void setUp() {
+        denylist = new AccessTokenDenylist(LIFETIME_MILLIS, Duration.ofMillis(TICK_MILLIS), new SimpleMeterRegistry());
+        // Time is moved by hand through advance(long)
+        denylist.shutdown();
+        now = Instant.ofEpochSecond(Instant.now().getEpochSecond());
+    }
+
+    @AfterEach
+    void tearDown() {
+        denylist.shutdown();
+    }
+
+    @Test
+    void deniesRevokedTokenUntilItExpires() {
+        var token = token("jti-1", now.minusSeconds(10), now.plusSeconds(60));
+        denylist.revoke(token);
+
+        assertThat(denylist.isRevoked(token)).isTrue();
+        assertThat(denylist.isRevoked(token("jti-2", now.minusSeconds(10), now.plusSeconds(60)))).isFalse();
+
+        denylist.advance(now.plusSeconds(60).toEpochMilli() - TICK_MILLIS);
+        assertThat(denylist.isRevoked(token)).isTrue();
+        denylist.advance(now.plusSeconds(60).toEpochMilli() + TICK_MILLIS);
+        assertThat(denylist.isRevoked(token)).isFalse();
+    }
+
+    @Test
+    void tokenWithoutIdRevokesEverythingTheSubjectHolds() {
+        var legacy = token(null, now.minusSeconds(10), null);
+        denylist.revoke(legacy);
+
+        assertThat(denylist.isRevoked(legacy)).isTrue();
+        assertThat(denylist.isRevoked(token("other", now.minusSeconds(5), now.plusSeconds(60)))).isTrue();
+    }
+
+    @Test
+    void notBeforeHasSecondPrecision() {
+        var threshold = now.plusMillis(700);
+        denylist.revokeIssuedBefore(EMPLOYEE, threshold);
+
+        assertThat(denylist.isRevoked(token("a", now.minusSeconds(1), null))).isTrue();
+        // Same second as the threshold: issue times carry no milliseconds, so these are not covered
+        assertThat(denylist.isRevoked(token("b", now, null))).isFalse();
+        assertThat(denylist.isRevoked(token("c", now.plusSeconds(1), null))).isFalse();
+        // No issue time at all cannot be proven newer
+        assertThat(denylist.isRevoked(token("d", null, null))).isTrue();
+    }
+
+    @Test
+    void subjectEntryExpiresOneTokenLifetimeAfterThreshold() {
+        denylist.revokeIssuedBefore(EMPLOYEE, now);
+        var old = token("a", now.minusSeconds(1), null);
+
+        denylist.advance(now.toEpochMilli() + LIFETIME_MILLIS - TICK_MILLIS);
+        assertThat(denylist.isRevoked(old)).isTrue();
+        denylist.advance(now.toEpochMilli() + LIFETIME_MILLIS + TICK_MILLIS);
+        assertThat(denylist.isRevoked(old)).isFalse();
+    }
+
+    @Test
+    void olderTimerDoesNotRemoveNewerRevocation() {
+        denylist.revokeIssuedBefore(EMPLOYEE, now);
+        var later = now.plusSeconds(120);
+        denylist.revokeIssuedBefore(EMPLOYEE, later);
+        var between = token("a", now.plusSeconds(60), null);
+
+        // The first revocation's timer fires, but the entry now holds the later threshold
+        denylist.advance(now.toEpochMilli() + LIFETIME_MILLIS + TICK_MILLIS);
+        assertThat(denylist.isRevoked(between)).isTrue();
+
+        denylist.advance(later.toEpochMilli() + LIFETIME_MILLIS + TICK_MILLIS);
+        assertThat(denylist.isRevoked(between)).isFalse();
+    }
+
+    @Test
+    void earlierThresholdDoesNotLowerExistingOne() {
+        denylist.revokeIssuedBefore(EMPLOYEE, now);
+        denylist.revokeIssuedBefore(EMPLOYEE, now.minusSeconds(60));
+
+        assertThat(denylist.isRevoked(token("a", now.minusSeconds(30), null))).isTrue();
+    }
+
+    private static AccessTokenClaims token(String tokenId, Instant issuedAt, Instant expiresAt) {
+        return new AccessTokenClaims(EMPLOYEE, "employee@company.com", "IT", "Engineer", List.of("ROLE_EMPLOYEE"),
+                0L, 0L, issuedAt, expiresAt, tokenId);
+    }
+}
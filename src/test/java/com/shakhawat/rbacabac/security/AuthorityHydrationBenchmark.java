@@ -0,0 +1,119 @@
+package com.shakhawat.rbacabac.security;
+
+import com.shakhawat.rbacabac.entity.Employee;
+import com.shakhawat.rbacabac.entity.Permission;
+import com.shakhawat.rbacabac.entity.Role;
+import com.shakhawat.rbacabac.entity.RoleType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Per-request authority hydration plus a "manager or above" check, before and after
+ * {@link AuthoritySet}. Run with the GC profiler ({@code -prof gc}) to compare
+ * {@code gc.alloc.rate.norm}; the main method below enables it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthorityHydrationBenchmark {
+
+    private static final long MANAGER_OR_ABOVE = AuthorityRegistry.maskOf(RoleType.ROLE_ADMIN)
+            | AuthorityRegistry.maskOf(RoleType.ROLE_MANAGER)
+            | AuthorityRegistry.maskOf(RoleType.ROLE_HR);
+
+    private Employee employee;
+    private AuthorizationSnapshot snapshot;
+    private AccessTokenClaims legacyClaims;
+    private AccessTokenClaims compactClaims;
+
+    @Setup
+    public void setUp() {
+        var permissions = Set.of(
+                Permission.builder().name("READ_EMPLOYEE").build(),
+                Permission.builder().name("CREATE_EMPLOYEE").build(),
+                Permission.builder().name("UPDATE_EMPLOYEE").build(),
+                Permission.builder().name("READ_ROLE").build()
+        );
+        var role = Role.builder().name(RoleType.ROLE_MANAGER).permissions(permissions).build();
+        employee = Employee.builder().id(2L).email("manager@company.com").roles(Set.of(role)).build();
+        snapshot = AuthorizationSnapshot.of(List.of(role));
+
+        var names = List.of("ROLE_MANAGER", "READ_EMPLOYEE", "CREATE_EMPLOYEE", "UPDATE_EMPLOYEE", "READ_ROLE");
+        var expiresAt = Instant.now().plusSeconds(300);
+        legacyClaims = new AccessTokenClaims(2L, "manager@company.com", "Operations", "Operations Manager",
+                names, 0L, 0L, Instant.now(), expiresAt, "legacy");
+        compactClaims = new AccessTokenClaims(2L, "manager@company.com", "Operations", "Operations Manager",
+                List.of(), AuthoritySet.of(0L, names).mask(), 0L, Instant.now(), expiresAt, "compact");
+    }
+
+    @Benchmark
+    public void legacyFromEmployee(Blackhole blackhole) {
+        var authorities = employee.getRoles().stream()
+                .flatMap(role -> {
+                    var roleAuth = new SimpleGrantedAuthority(role.getName().name());
+                    var permissionAuths = role.getPermissions().stream()
+                            .map(permission -> new SimpleGrantedAuthority(permission.getName()))
+                            .collect(Collectors.toSet());
+                    permissionAuths.add(roleAuth);
+                    return permissionAuths.stream();
+                })
+                .collect(Collectors.toSet());
+        var authentication = new UsernamePasswordAuthenticationToken(employee.getEmail(), null, authorities);
+        blackhole.consume(legacyIsManagerOrAbove(authentication));
+    }
+
+    @Benchmark
+    public void authoritySetFromEmployee(Blackhole blackhole) {
+        var authentication = new UserPrincipalAuthenticationToken(UserPrincipal.create(employee, snapshot));
+        blackhole.consume(AuthoritySet.from(authentication).hasAny(MANAGER_OR_ABOVE));
+    }
+
+    @Benchmark
+    public void legacyFromClaims(Blackhole blackhole) {
+        var authorities = legacyClaims.roles().stream()
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toSet());
+        var authentication = new UsernamePasswordAuthenticationToken(legacyClaims.email(), null, authorities);
+        blackhole.consume(legacyIsManagerOrAbove(authentication));
+    }
+
+    @Benchmark
+    public void authoritySetFromClaims(Blackhole blackhole) {
+        var authentication = new UserPrincipalAuthenticationToken(UserPrincipal.fromClaims(compactClaims));
+        blackhole.consume(AuthoritySet.from(authentication).hasAny(MANAGER_OR_ABOVE));
+    }
+
+    private static boolean legacyIsManagerOrAbove(Authentication auth) {
+        return hasRole(auth, "ROLE_ADMIN") || hasRole(auth, "ROLE_MANAGER") || hasRole(auth, "ROLE_HR");
+    }
+
+    private static boolean hasRole(Authentication auth, String role) {
+        return auth.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .anyMatch(a -> Objects.equals(a, role));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AuthorityHydrationBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
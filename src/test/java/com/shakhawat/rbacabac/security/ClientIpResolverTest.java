@@ -0,0 +1,77 @@
+package com.shakhawat.rbacabac.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClientIpResolverTest {
+
+    private final ClientIpResolver resolver = new ClientIpResolver(
+            List.of("127.0.0.1/32", "::1/128", "10.0.0.0/8", "2001:db8:ffff::/48", " "));
+
+    @Test
+    void ignoresForwardedHeaderFromUntrustedRemote() {
+        assertThat(resolve("203.0.113.5", "198.51.100.7")).isEqualTo("203.0.113.5");
+        assertThat(resolve("203.0.113.5", null)).isEqualTo("203.0.113.5");
+    }
+
+    @Test
+    void usesRemoteAddressWithoutForwardedHeader() {
+        assertThat(resolve("10.1.1.1", null)).isEqualTo("10.1.1.1");
+        assertThat(resolve("10.1.1.1", "  ")).isEqualTo("10.1.1.1");
+    }
+
+    @Test
+    void takesTheHopInFrontOfTheTrustedProxies() {
+        assertThat(resolve("127.0.0.1", "198.51.100.7")).isEqualTo("198.51.100.7");
+        // Skips every trusted hop from the right; what the client itself sent is left of its own address
+        assertThat(resolve("127.0.0.1", "6.6.6.6, 198.51.100.7, 10.1.1.1, 10.2.2.2")).isEqualTo("198.51.100.7");
+    }
+
+    @Test
+    void fallsBackToTheLeftmostHopWhenEveryHopIsTrusted() {
+        assertThat(resolve("127.0.0.1", "10.1.1.1, 10.2.2.2")).isEqualTo("10.1.1.1");
+    }
+
+    @Test
+    void stopsAtAHopThatIsNotAnAddress() {
+        assertThat(resolve("127.0.0.1", "unknown, 10.1.1.1")).isEqualTo("10.1.1.1");
+        // Host names are never looked up
+        assertThat(resolve("127.0.0.1", "localhost")).isEqualTo("127.0.0.1");
+        assertThat(resolve("127.0.0.1", "198.51.100.7, , ")).isEqualTo("198.51.100.7");
+    }
+
+    @Test
+    void handlesIpv6RemoteAndHops() {
+        assertThat(resolve("0:0:0:0:0:0:0:1", "2001:db8::7")).isEqualTo("2001:db8::7");
+        assertThat(resolve("::1", "2001:db8::7, 2001:db8:ffff::1, 10.1.1.1")).isEqualTo("2001:db8::7");
+        assertThat(resolve("2001:db8::8", "198.51.100.7")).isEqualTo("2001:db8::8");
+    }
+
+    @Test
+    void resolvesToBytes() {
+        assertThat(resolveBytes("127.0.0.1", "198.51.100.7")).containsExactly(198, 51, 100, 7);
+        assertThat(resolveBytes("::1", "2001:db8::7")).hasSize(16);
+        assertThat(resolveBytes("not-an-address", null)).isNull();
+    }
+
+    private String resolve(String remote, String forwarded) {
+        return resolver.resolve(request(remote, forwarded));
+    }
+
+    private byte[] resolveBytes(String remote, String forwarded) {
+        return resolver.resolveBytes(request(remote, forwarded));
+    }
+
+    private static MockHttpServletRequest request(String remote, String forwarded) {
+        var request = new MockHttpServletRequest();
+        request.setRemoteAddr(remote);
+        if (forwarded != null) {
+            request.addHeader("X-Forwarded-For", forwarded);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,234 @@
+package com.shakhawat.rbacabac.security;
+
+import com.shakhawat.rbacabac.audit.AuditPipeline;
+import com.shakhawat.rbacabac.audit.AuditProperties;
+import com.shakhawat.rbacabac.entity.Role;
+import com.shakhawat.rbacabac.entity.RoleType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.util.SimpleMethodInvocation;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompiledAuthorizationManagerTest {
+
+    private static final Authentication ADMIN = authentication(AuthorityRegistry.maskOf(RoleType.ROLE_ADMIN));
+    private static final Authentication MANAGER = authentication(AuthorityRegistry.maskOf(RoleType.ROLE_MANAGER));
+    private static final Authentication HR = authentication(AuthorityRegistry.maskOf(RoleType.ROLE_HR));
+    private static final Authentication EMPLOYEE = authentication(AuthorityRegistry.maskOf(RoleType.ROLE_EMPLOYEE));
+    private static final Authentication READER = authentication(1L << AuthorityRegistry.bitOf("READ_EMPLOYEE"));
+
+    private RecordingEvaluator evaluator;
+    private SwappableSnapshots snapshots;
+    private CompiledAuthorizationManager manager;
+
+    @BeforeEach
+    void setUp() {
+        evaluator = new RecordingEvaluator();
+        snapshots = new SwappableSnapshots();
+        snapshots.snapshot = AuthorizationSnapshot.of(List.of(
+                role(1L, RoleType.ROLE_ADMIN, RoleType.ROLE_MANAGER),
+                role(2L, RoleType.ROLE_MANAGER, RoleType.ROLE_EMPLOYEE),
+                role(3L, RoleType.ROLE_EMPLOYEE, null),
+                role(4L, RoleType.ROLE_HR, RoleType.ROLE_EMPLOYEE)));
+        // Never started, so recording a decision is a no-op
+        var audit = new AuditPipeline(new AuditProperties(),
+                new StaticListableBeanFactory().getBeanProvider(JdbcTemplate.class), new SimpleMeterRegistry());
+        var beans = new StaticListableBeanFactory(Map.of(
+                "evaluator", evaluator, "snapshots", snapshots, "audit", audit));
+        manager = new CompiledAuthorizationManager(beans.getBeanProvider(EmployeePermissionEvaluator.class),
+                beans.getBeanProvider(AuthorizationSnapshotService.class), beans.getBeanProvider(AuditPipeline.class));
+    }
+
+    @Test
+    void methodAnnotationsReplaceClassAnnotations() {
+        // @CanReadEmployee on the method: the class-level admin requirement no longer applies
+        assertThat(granted(READER, new AdminController(), "read")).isTrue();
+        assertThat(granted(ADMIN, new AdminController(), "read")).isFalse();
+    }
+
+    @Test
+    void unannotatedMethodsInheritTheClassRule() {
+        assertThat(granted(ADMIN, new AdminController(), "manage")).isTrue();
+        assertThat(granted(MANAGER, new AdminController(), "manage")).isFalse();
+        assertThat(granted(null, new AdminController(), "manage")).isFalse();
+    }
+
+    @Test
+    void methodsWithoutAnyRuleArePermitted() {
+        assertThat(granted(null, new AliasController(), "open")).isTrue();
+    }
+
+    @Test
+    void aliasesResolveThroughTheirMetaAnnotations() {
+        assertThat(granted(ADMIN, new AliasController(), "admin")).isTrue();
+        assertThat(granted(MANAGER, new AliasController(), "admin")).isFalse();
+
+        assertThat(granted(READER, new AliasController(), "read")).isTrue();
+        assertThat(granted(EMPLOYEE, new AliasController(), "read")).isFalse();
+    }
+
+    @Test
+    void roleOrAboveFollowsHierarchyChanges() {
+        assertThat(granted(MANAGER, new AliasController(), "managers")).isTrue();
+        assertThat(granted(ADMIN, new AliasController(), "managers")).isTrue();
+        assertThat(granted(HR, new AliasController(), "managers")).isFalse();
+        assertThat(granted(EMPLOYEE, new AliasController(), "managers")).isFalse();
+
+        // The rule is compiled once; the hierarchy is read from whatever snapshot is current
+        snapshots.snapshot = snapshots.snapshot
+                .withInheritance(RoleType.ROLE_HR, RoleType.ROLE_MANAGER)
+                .withInheritance(RoleType.ROLE_ADMIN, RoleType.ROLE_EMPLOYEE);
+
+        assertThat(granted(HR, new AliasController(), "managers")).isTrue();
+        assertThat(granted(ADMIN, new AliasController(), "managers")).isFalse();
+        assertThat(granted(MANAGER, new AliasController(), "managers")).isTrue();
+    }
+
+    @Test
+    void employeeAccessBindsTheNamedParameter() {
+        evaluator.permitted = true;
+
+        assertThat(granted(EMPLOYEE, new AliasController(), "view", 42L)).isTrue();
+        assertThat(granted(EMPLOYEE, new AdminController(), "update", "note", 7L)).isTrue();
+
+        assertThat(evaluator.checks).containsExactly(
+                new Check(EMPLOYEE, EmployeeAction.VIEW, 42L),
+                new Check(EMPLOYEE, EmployeeAction.MODIFY, 7L));
+
+        evaluator.permitted = false;
+        assertThat(granted(ADMIN, new AdminController(), "update", "note", 7L)).isFalse();
+    }
+
+    @Test
+    void employeeAccessRunsOnlyAfterTheOtherChecksPass() {
+        evaluator.permitted = true;
+
+        assertThat(granted(EMPLOYEE, new GuardedController(), "update", 5L)).isFalse();
+        assertThat(evaluator.checks).isEmpty();
+
+        assertThat(granted(HR, new GuardedController(), "update", 5L)).isTrue();
+        assertThat(evaluator.checks).containsExactly(new Check(HR, EmployeeAction.MODIFY, 5L));
+    }
+
+    @Test
+    void unknownIdParameterFailsCompilation() {
+        assertThatThrownBy(() -> granted(ADMIN, new BrokenController(), "view", 1L))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("'employeeId'");
+    }
+
+    private boolean granted(Authentication authentication, Object controller, String methodName, Object... arguments) {
+        var method = findMethod(controller.getClass(), methodName);
+        return manager.authorize(() -> authentication, new SimpleMethodInvocation(controller, method, arguments))
+                .isGranted();
+    }
+
+    private static Method findMethod(Class<?> type, String name) {
+        for (var method : type.getDeclaredMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    private static Authentication authentication(long mask) {
+        return new UserPrincipalAuthenticationToken(
+                new UserPrincipal(1L, "user@example.com", null, "IT", "Engineer", AuthoritySet.of(mask)));
+    }
+
+    private static Role role(Long id, RoleType name, RoleType inherits) {
+        return Role.builder().id(id).name(name).inherits(inherits).permissions(Set.of()).build();
+    }
+
+    @RequiresRole(RoleType.ROLE_ADMIN)
+    static class AdminController {
+        @CanReadEmployee
+        public void read() {
+        }
+
+        public void manage() {
+        }
+
+        @EmployeeAccess(value = EmployeeAction.MODIFY, idParam = "employeeId")
+        public void update(String note, Long employeeId) {
+        }
+    }
+
+    static class AliasController {
+        @IsAdmin
+        public void admin() {
+        }
+
+        @CanReadEmployee
+        public void read() {
+        }
+
+        @IsManagerOrAbove
+        public void managers() {
+        }
+
+        @EmployeeAccess(EmployeeAction.VIEW)
+        public void view(Long id) {
+        }
+
+        public void open() {
+        }
+    }
+
+    static class GuardedController {
+        @RequiresRole(RoleType.ROLE_HR)
+        @EmployeeAccess(EmployeeAction.MODIFY)
+        public void update(Long id) {
+        }
+    }
+
+    static class BrokenController {
+        @EmployeeAccess(value = EmployeeAction.VIEW, idParam = "employeeId")
+        public void view(Long id) {
+        }
+    }
+
+    private record Check(Authentication authentication, EmployeeAction action, Long employeeId) {
+    }
+
+    private static class RecordingEvaluator extends EmployeePermissionEvaluator {
+        private final List<Check> checks = new ArrayList<>();
+        private boolean permitted;
+
+        RecordingEvaluator() {
+            super(null, null, null, null);
+        }
+
+        @Override
+        public boolean check(Authentication auth, EmployeeAction action, Long employeeId) {
+            checks.add(new Check(auth, action, employeeId));
+            return permitted;
+        }
+    }
+
+    private static class SwappableSnapshots extends AuthorizationSnapshotService {
+        private volatile AuthorizationSnapshot snapshot;
+
+        SwappableSnapshots() {
+            super(null, null);
+        }
+
+        @Override
+        public AuthorizationSnapshot current() {
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.shakhawat.rbacabac.security;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-request cost of the previous verification path (new key and parser,
+ * signature verified twice) with the single-pass {@link JwtTokenProvider#parseAccessToken},
+ * with and without the {@link VerifiedTokenCache}.
+ * Run with {@code ./mvnw test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.shakhawat.rbacabac.security.JwtTokenProviderBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtTokenProviderBenchmark {
+
+    private static final String SECRET = "404E635266556A586E3272357538782F413F4428472B4B6250645367566B5970";
+
+    private JwtTokenProvider tokenProvider;
+    private JwtTokenProvider cachingTokenProvider;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        // Never initialized, so it needs no database and every version stays 0
+        var versionTracker = new AuthorizationVersionTracker(null, event -> {}, Duration.ofSeconds(1), Duration.ofSeconds(10));
+        tokenProvider = new JwtTokenProvider(SECRET, 300_000, true, versionTracker,
+                new VerifiedTokenCache(false, 1, new SimpleMeterRegistry()));
+        cachingTokenProvider = new JwtTokenProvider(SECRET, 300_000, true, versionTracker,
+                new VerifiedTokenCache(true, 1_000, new SimpleMeterRegistry()));
+
+        var principal = new UserPrincipal(1L, "admin@company.com", null, "IT", "System Administrator",
+                AuthoritySet.of(0L, List.of("ROLE_ADMIN", "READ_EMPLOYEE", "UPDATE_EMPLOYEE")));
+        token = tokenProvider.generateToken(
+                new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
+
+    @Benchmark
+    public Long legacyValidateThenExtract() {
+        var valid = Jwts.parser()
+                .verifyWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .build()
+                .parseSignedClaims(token) != null;
+        if (!valid) {
+            return null;
+        }
+        var claims = Jwts.parser()
+                .verifyWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .build()
+                .parseSignedClaims(token)
+                .getPayload();
+        return Long.parseLong(claims.getSubject());
+    }
+
+    @Benchmark
+    public AccessTokenClaims singlePassParse() {
+        return tokenProvider.parseAccessToken(token).orElse(null);
+    }
+
+    @Benchmark
+    public AccessTokenClaims cachedParse() {
+        return cachingTokenProvider.parseAccessToken(token).orElse(null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtTokenProviderBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,148 @@
+package com.shakhawat.rbacabac.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.postgresql.PostgreSQLContainer;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the chunked purge against a real Postgres. Only {@code id} and {@code expiry_date} of
+ * {@code refresh_tokens} are involved, so the table is reduced to those.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class RefreshTokenPurgerIntegrationTest {
+
+    private static final long LOCK_KEY = 0x52544B5055524745L;
+    private static final int BATCH_SIZE = 10;
+
+    @Container
+    static final PostgreSQLContainer POSTGRES = new PostgreSQLContainer("postgres:16-alpine");
+
+    private JdbcTemplate jdbcTemplate;
+    private LocalDateTime now;
+
+    @BeforeEach
+    void setUp() {
+        var dataSource = new DriverManagerDataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS refresh_tokens, refresh_token_purge_watermark CASCADE");
+        jdbcTemplate.execute("CREATE TABLE refresh_tokens (id BIGSERIAL PRIMARY KEY, expiry_date TIMESTAMP NOT NULL)");
+        jdbcTemplate.execute("CREATE INDEX ON refresh_tokens (expiry_date)");
+        // Whole seconds, so values survive the round trip through TIMESTAMP unchanged
+        now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    @Test
+    void deletesOnlyExpiredRowsAndPersistsWatermark() {
+        insert(25, now.minusDays(3), Duration.ofMinutes(1));
+        insert(5, now.plusDays(1), Duration.ofMinutes(1));
+
+        var deleted = purger(Duration.ofMinutes(1), Duration.ofDays(1)).purge();
+
+        assertThat(deleted).isEqualTo(25);
+        assertThat(count()).isEqualTo(5);
+        assertThat(watermark()).isEqualTo(now.minusDays(3).plusMinutes(24));
+    }
+
+    @Test
+    void resumesFromWatermarkAfterTimeBudget() {
+        insert(25, now.minusDays(3), Duration.ofMinutes(1));
+        var budgetExhausted = purger(Duration.ZERO, Duration.ofDays(1));
+
+        // One full chunk, then the budget is spent
+        assertThat(budgetExhausted.purge()).isEqualTo(BATCH_SIZE);
+        assertThat(count()).isEqualTo(15);
+        assertThat(watermark()).isEqualTo(now.minusDays(3).plusMinutes(BATCH_SIZE - 1));
+
+        assertThat(budgetExhausted.purge()).isEqualTo(BATCH_SIZE);
+        assertThat(budgetExhausted.purge()).isEqualTo(5);
+        assertThat(budgetExhausted.purge()).isZero();
+        assertThat(count()).isZero();
+    }
+
+    @Test
+    void rescansLookbackBelowWatermark() {
+        insert(3, now.minusDays(1), Duration.ofMinutes(1));
+        var purger = purger(Duration.ofMinutes(1), Duration.ofHours(2));
+        assertThat(purger.purge()).isEqualTo(3);
+
+        // Written late by a node whose clock lagged: one within the lookback, one before it
+        insert(1, now.minusDays(1).minusHours(1), Duration.ZERO);
+        insert(1, now.minusDays(1).minusHours(3), Duration.ZERO);
+
+        assertThat(purger.purge()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT expiry_date FROM refresh_tokens", LocalDateTime.class))
+                .isEqualTo(now.minusDays(1).minusHours(3));
+    }
+
+    @Test
+    void skipsRunWhileAnotherNodeHoldsTheLock() throws Exception {
+        insert(3, now.minusDays(1), Duration.ofMinutes(1));
+
+        try (var connection = jdbcTemplate.getDataSource().getConnection();
+             var lock = connection.prepareStatement("SELECT pg_advisory_lock(?)")) {
+            lock.setLong(1, LOCK_KEY);
+            lock.execute();
+
+            assertThat(purger(Duration.ofMinutes(1), Duration.ofDays(1)).purge()).isEqualTo(-1);
+            assertThat(count()).isEqualTo(3);
+        }
+        // The lock went with the other session
+        assertThat(purger(Duration.ofMinutes(1), Duration.ofDays(1)).purge()).isEqualTo(3);
+    }
+
+    @Test
+    void dropsExpiredPartitionsAndCreatesUpcomingOnes() {
+        jdbcTemplate.execute("DROP TABLE refresh_tokens");
+        jdbcTemplate.execute("CREATE TABLE refresh_tokens (id BIGSERIAL, expiry_date TIMESTAMP NOT NULL) "
+                + "PARTITION BY RANGE (expiry_date)");
+        var current = YearMonth.now();
+        var expired = current.minusMonths(2);
+        jdbcTemplate.execute("CREATE TABLE " + partition(expired) + " PARTITION OF refresh_tokens FOR VALUES FROM ('"
+                + expired.atDay(1) + "') TO ('" + expired.plusMonths(1).atDay(1) + "')");
+        insert(3, expired.atDay(2).atStartOfDay(), Duration.ofHours(1));
+
+        var dropped = purger(Duration.ofMinutes(1), Duration.ofDays(1)).purge();
+
+        assertThat(dropped).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+                + "WHERE i.inhparent = 'refresh_tokens'::regclass ORDER BY 1", String.class))
+                .containsExactly(partition(current), partition(current.plusMonths(1)), partition(current.plusMonths(2)));
+    }
+
+    private RefreshTokenPurger purger(Duration maxDuration, Duration lookback) {
+        return new RefreshTokenPurger(jdbcTemplate, BATCH_SIZE, Duration.ZERO, maxDuration, lookback, 2);
+    }
+
+    private void insert(int rows, LocalDateTime first, Duration step) {
+        for (int i = 0; i < rows; i++) {
+            jdbcTemplate.update("INSERT INTO refresh_tokens (expiry_date) VALUES (?)",
+                    Timestamp.valueOf(first.plus(step.multipliedBy(i))));
+        }
+    }
+
+    private long count() {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM refresh_tokens", Long.class);
+    }
+
+    private LocalDateTime watermark() {
+        return jdbcTemplate.queryForObject("SELECT expiry_date FROM refresh_token_purge_watermark WHERE id = 1",
+                LocalDateTime.class);
+    }
+
+    private static String partition(YearMonth month) {
+        return "refresh_tokens_p" + month.format(DateTimeFormatter.ofPattern("yyyyMM"));
+    }
+}
@@ -0,0 +1,195 @@
+package com.shakhawat.rbacabac.service;
+
+import com.shakhawat.rbacabac.exception.UnauthorizedException;
+import com.shakhawat.rbacabac.repository.EmployeeRepository;
+import com.shakhawat.rbacabac.util.TokenGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.postgresql.PostgreSQLContainer;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs the single-statement rotation against a real Postgres, since SKIP LOCKED and the
+ * data-modifying CTEs cannot be exercised without one.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@SpringBootTest(properties = {"audit.enabled=false", "spring.jpa.show-sql=false"})
+class RefreshTokenRotationIntegrationTest {
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer POSTGRES = new PostgreSQLContainer("postgres:16-alpine");
+
+    @Autowired
+    RefreshTokenService refreshTokenService;
+
+    @Autowired
+    EmployeeRepository employeeRepository;
+
+    @Autowired
+    TokenGenerator tokenGenerator;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    DataSource dataSource;
+
+    private Long employeeId;
+    private MockHttpServletRequest request;
+
+    @BeforeEach
+    void setUp() {
+        employeeId = employeeRepository.findByEmail("employee@company.com").orElseThrow().getId();
+        request = new MockHttpServletRequest();
+        request.addHeader("User-Agent", "integration-test");
+    }
+
+    @Test
+    void rotationRevokesPresentedTokenAndIssuesSuccessorInSameFamily() {
+        var token = refreshTokenService.createRefreshToken(employeeId, request);
+
+        var rotation = refreshTokenService.rotateRefreshToken(token, request);
+
+        assertThat(rotation.employeeId()).isEqualTo(employeeId);
+        assertThat(rotation.email()).isEqualTo("employee@company.com");
+        assertThat(rotation.roleIds()).isNotEmpty();
+        assertThat(rotation.refreshToken()).isNotEqualTo(token);
+        assertThat(revoked(token)).isTrue();
+        assertThat(revoked(rotation.refreshToken())).isFalse();
+        assertThat(familyId(rotation.refreshToken())).isEqualTo(familyId(token));
+        // Only the hash is stored
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM refresh_tokens WHERE token IS NOT NULL", Long.class))
+                .isZero();
+    }
+
+    @Test
+    void rejectsUnknownToken() {
+        assertThatThrownBy(() -> refreshTokenService.rotateRefreshToken("not-a-token", request))
+                .isInstanceOf(UnauthorizedException.class)
+                .hasMessage("Invalid refresh token");
+    }
+
+    @Test
+    void rejectsExpiredToken() {
+        var token = refreshTokenService.createRefreshToken(employeeId, request);
+        jdbcTemplate.update("UPDATE refresh_tokens SET expiry_date = ? WHERE token_hash = ?",
+                Timestamp.valueOf(LocalDateTime.now().minusMinutes(1)), tokenGenerator.hashToken(token));
+
+        assertThatThrownBy(() -> refreshTokenService.rotateRefreshToken(token, request))
+                .isInstanceOf(UnauthorizedException.class)
+                .hasMessage("Refresh token has expired");
+        assertThat(revoked(token)).isFalse();
+    }
+
+    @Test
+    void replayWithinGracePeriodIsRejectedWithoutRevokingTheFamily() {
+        var token = refreshTokenService.createRefreshToken(employeeId, request);
+        var successor = refreshTokenService.rotateRefreshToken(token, request).refreshToken();
+
+        assertThatThrownBy(() -> refreshTokenService.rotateRefreshToken(token, request))
+                .isInstanceOf(UnauthorizedException.class)
+                .hasMessage("Refresh token has been revoked");
+        assertThat(revoked(successor)).isFalse();
+    }
+
+    @Test
+    void replayAfterGracePeriodRevokesTheFamily() {
+        var token = refreshTokenService.createRefreshToken(employeeId, request);
+        var successor = refreshTokenService.rotateRefreshToken(token, request).refreshToken();
+        jdbcTemplate.update("UPDATE refresh_tokens SET last_used_at = ? WHERE token_hash = ?",
+                Timestamp.valueOf(LocalDateTime.now().minusHours(1)), tokenGenerator.hashToken(token));
+
+        assertThatThrownBy(() -> refreshTokenService.rotateRefreshToken(token, request))
+                .isInstanceOf(UnauthorizedException.class)
+                .hasMessage("Refresh token has been revoked");
+        assertThat(revoked(successor)).isTrue();
+    }
+
+    @Test
+    void rotationOfLockedTokenSkipsInsteadOfWaiting() throws Exception {
+        var token = refreshTokenService.createRefreshToken(employeeId, request);
+
+        // Another transaction is in the middle of rotating the same token
+        try (var connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (var lock = connection.prepareStatement("SELECT id FROM refresh_tokens WHERE token_hash = ? FOR UPDATE")) {
+                lock.setString(1, tokenGenerator.hashToken(token));
+                lock.executeQuery().close();
+            }
+
+            assertThatThrownBy(() -> refreshTokenService.rotateRefreshToken(token, request))
+                    .isInstanceOf(UnauthorizedException.class)
+                    .hasMessage("Refresh token is already being used");
+            connection.rollback();
+        }
+
+        assertThat(revoked(token)).isFalse();
+    }
+
+    @Test
+    void concurrentDoubleSubmitRotatesExactlyOnce() throws Exception {
+        var token = refreshTokenService.createRefreshToken(employeeId, request);
+        var familyId = familyId(token);
+        var submits = 2;
+        var ready = new CountDownLatch(submits);
+        var go = new CountDownLatch(1);
+
+        var results = new ArrayList<Future<RefreshTokenRotation>>();
+        try (var executor = Executors.newFixedThreadPool(submits)) {
+            for (int i = 0; i < submits; i++) {
+                Callable<RefreshTokenRotation> submit = () -> {
+                    ready.countDown();
+                    go.await();
+                    return refreshTokenService.rotateRefreshToken(token, request);
+                };
+                results.add(executor.submit(submit));
+            }
+            ready.await();
+            go.countDown();
+        }
+
+        var succeeded = 0;
+        for (var result : results) {
+            try {
+                result.get();
+                succeeded++;
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(UnauthorizedException.class);
+            }
+        }
+        assertThat(succeeded).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM refresh_tokens WHERE family_id = ? AND revoked = false", Long.class, familyId))
+                .isEqualTo(1);
+    }
+
+    private boolean revoked(String token) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT revoked FROM refresh_tokens WHERE token_hash = ?", Boolean.class, tokenGenerator.hashToken(token)));
+    }
+
+    private String familyId(String token) {
+        return jdbcTemplate.queryForObject(
+                "SELECT family_id FROM refresh_tokens WHERE token_hash = ?", String.class, tokenGenerator.hashToken(token));
+    }
+}
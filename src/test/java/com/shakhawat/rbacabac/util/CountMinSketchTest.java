@@ -0,0 +1,101 @@
+package com.shakhawat.rbacabac.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.shakhawat.rbacabac.util.GenerationalBloomFilterTest.mix;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CountMinSketchTest {
+
+    private static final int WIDTH = 256;
+    private static final int DEPTH = 4;
+
+    @Test
+    void rejectsInvalidConfiguration() {
+        assertThatThrownBy(() -> new CountMinSketch(0, 4)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new CountMinSketch(256, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void countsExactlyWithoutCollisions() {
+        var sketch = new CountMinSketch(WIDTH, DEPTH);
+
+        assertThat(add(sketch, 1, 3)).isEqualTo(3);
+        assertThat(add(sketch, 1, 1)).isEqualTo(4);
+        assertThat(estimate(sketch, 1)).isEqualTo(4);
+        assertThat(estimate(sketch, 2)).isZero();
+    }
+
+    @Test
+    void neverUnderestimatesAndStaysWithinTheErrorBound() {
+        // Far more keys than counters per row, with a skewed distribution, so rows collide heavily
+        var sketch = new CountMinSketch(WIDTH, DEPTH);
+        var exact = new HashMap<Long, Long>();
+        var random = new Random(42);
+        long total = 0;
+        for (int i = 0; i < 200_000; i++) {
+            long key = (long) Math.pow(10_000, random.nextDouble());
+            var count = exact.merge(key, 1L, Long::sum);
+            assertThat(add(sketch, key, 1)).isGreaterThanOrEqualTo(count);
+            total++;
+        }
+
+        var bound = Math.E * total / WIDTH;
+        var withinBound = 0;
+        for (var entry : exact.entrySet()) {
+            var estimate = estimate(sketch, entry.getKey());
+            assertThat(estimate).as("key %d", entry.getKey()).isGreaterThanOrEqualTo(entry.getValue());
+            if (estimate - entry.getValue() <= bound) {
+                withinBound++;
+            }
+        }
+        // Each key is within the bound with probability 1 - e^-depth, about 98%
+        assertThat((double) withinBound / exact.size()).isGreaterThan(0.95);
+    }
+
+    @Test
+    void concurrentAddsAreNotLost() throws Exception {
+        var sketch = new CountMinSketch(WIDTH, DEPTH);
+        var threads = 8;
+        var addsPerKey = 10_000;
+        var keys = 64;
+
+        var results = new ArrayList<Future<?>>();
+        try (var executor = Executors.newFixedThreadPool(threads)) {
+            for (int t = 0; t < threads; t++) {
+                Callable<Void> adder = () -> {
+                    for (int i = 0; i < addsPerKey; i++) {
+                        for (long key = 0; key < keys; key++) {
+                            add(sketch, key, 1);
+                        }
+                    }
+                    return null;
+                };
+                results.add(executor.submit(adder));
+            }
+        }
+        for (var result : results) {
+            result.get();
+        }
+
+        for (long key = 0; key < keys; key++) {
+            assertThat(estimate(sketch, key)).isGreaterThanOrEqualTo((long) threads * addsPerKey);
+        }
+    }
+
+    private static long add(CountMinSketch sketch, long key, long count) {
+        return sketch.add(mix(key), mix(~key), count);
+    }
+
+    private static long estimate(CountMinSketch sketch, long key) {
+        return sketch.estimate(mix(key), mix(~key));
+    }
+}
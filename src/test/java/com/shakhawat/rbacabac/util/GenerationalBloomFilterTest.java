@@ -0,0 +1,92 @@
+package com.shakhawat.rbacabac.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GenerationalBloomFilterTest {
+
+    private static final int CAPACITY = 10_000;
+
+    @Test
+    void rejectsInvalidConfiguration() {
+        assertThatThrownBy(() -> new GenerationalBloomFilter(0, 0.01)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new GenerationalBloomFilter(100, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new GenerationalBloomFilter(100, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void hasNoFalseNegativesWithinOneGeneration() {
+        var filter = new GenerationalBloomFilter(CAPACITY, 0.01);
+        for (long key = 0; key < CAPACITY - 1; key++) {
+            add(filter, key);
+        }
+        for (long key = 0; key < CAPACITY - 1; key++) {
+            assertThat(mightContain(filter, key)).as("key %d", key).isTrue();
+        }
+    }
+
+    @Test
+    void remembersEntriesForAtLeastCapacityInsertionsAcrossRotation() {
+        var filter = new GenerationalBloomFilter(CAPACITY, 0.01);
+        // The first generation fills up and is retired, the second one is almost full
+        var total = 2L * CAPACITY - 1;
+        for (long key = 0; key < total; key++) {
+            add(filter, key);
+        }
+        for (long key = total - CAPACITY; key < total; key++) {
+            assertThat(mightContain(filter, key)).as("key %d", key).isTrue();
+        }
+        // Still in the retired generation
+        assertThat(mightContain(filter, 0)).isTrue();
+    }
+
+    @Test
+    void forgetsEntriesAfterTwoGenerations() {
+        var filter = new GenerationalBloomFilter(CAPACITY, 0.000001);
+        add(filter, 0);
+        for (long key = 1; key < 2L * CAPACITY; key++) {
+            add(filter, key);
+        }
+
+        // Its generation was retired twice over; a false positive here is a one in a million chance
+        assertThat(mightContain(filter, 0)).isFalse();
+        assertThat(mightContain(filter, 2L * CAPACITY - 1)).isTrue();
+    }
+
+    @Test
+    void keepsFalsePositiveRateNearConfiguredRate() {
+        var rate = 0.01;
+        var filter = new GenerationalBloomFilter(CAPACITY, rate);
+        // Both generations full: the worst case, about twice the configured rate
+        for (long key = 0; key < 2L * CAPACITY - 1; key++) {
+            add(filter, key);
+        }
+
+        var probes = 100_000;
+        var falsePositives = 0;
+        for (long key = 1_000_000; key < 1_000_000 + probes; key++) {
+            if (mightContain(filter, key)) {
+                falsePositives++;
+            }
+        }
+        assertThat((double) falsePositives / probes).isLessThan(3 * rate);
+    }
+
+    private static void add(GenerationalBloomFilter filter, long key) {
+        filter.add(mix(key), mix(~key));
+    }
+
+    private static boolean mightContain(GenerationalBloomFilter filter, long key) {
+        return filter.mightContain(mix(key), mix(~key));
+    }
+
+    // SplitMix64 finalizer, standing in for the digest halves callers pass
+    static long mix(long value) {
+        var z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
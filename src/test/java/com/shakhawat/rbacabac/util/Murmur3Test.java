@@ -0,0 +1,46 @@
+package com.shakhawat.rbacabac.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Murmur3Test {
+
+    @Test
+    void matchesTheReferenceImplementation() {
+        assertThat(Murmur3.hash128(new byte[0], 0)).isEqualTo(new Murmur3.Hash128(0, 0));
+        // A 5-byte tail only
+        assertThat(Murmur3.hash128(bytes("hello"), 0))
+                .isEqualTo(new Murmur3.Hash128(0xcbd8a7b341bd9b02L, 0x5b1e906a48ae1d19L));
+        // Two full blocks and an 11-byte tail
+        assertThat(Murmur3.hash128(bytes("The quick brown fox jumps over the lazy dog"), 0))
+                .isEqualTo(new Murmur3.Hash128(0xe34bbc7bbc071b6cL, 0x7a433ca9c49a9347L));
+    }
+
+    @Test
+    void everyByteOfEveryLengthAffectsBothHalves() {
+        var h1s = new HashSet<Long>();
+        var h2s = new HashSet<Long>();
+        var count = 0;
+        for (int length = 1; length <= 40; length++) {
+            for (int position = 0; position < length; position++) {
+                var data = new byte[length];
+                data[position] = 1;
+                var hash = Murmur3.hash128(data, 0);
+                h1s.add(hash.h1());
+                h2s.add(hash.h2());
+                count++;
+            }
+        }
+
+        assertThat(h1s).hasSize(count);
+        assertThat(h2s).hasSize(count);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,113 @@
+package com.shakhawat.rbacabac.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TimingWheelTest {
+
+    // 64 slots on each of 4 levels
+    private static final long RANGE = 1L << 24;
+
+    private final List<String> expired = new ArrayList<>();
+    private TimingWheel<String> wheel;
+
+    @BeforeEach
+    void setUp() {
+        wheel = new TimingWheel<>(1, 0, expired::add);
+    }
+
+    @Test
+    void rejectsNonPositiveTick() {
+        assertThatThrownBy(() -> new TimingWheel<String>(0, 0, element -> { }))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void expiresOnDeadlineTickAndNotBefore() {
+        wheel.schedule("a", 10);
+
+        wheel.advance(9);
+        assertThat(expired).isEmpty();
+        wheel.advance(10);
+        assertThat(expired).containsExactly("a");
+    }
+
+    @Test
+    void roundsDeadlineUpToNextTick() {
+        var coarse = new TimingWheel<String>(10, 1000, expired::add);
+        coarse.schedule("a", 1015);
+
+        coarse.advance(1019);
+        assertThat(expired).isEmpty();
+        coarse.advance(1020);
+        assertThat(expired).containsExactly("a");
+    }
+
+    @Test
+    void cascadesTimersDownFromEveryLevel() {
+        // Level 1 from 64 ticks, level 2 from 4096, level 3 from 262144
+        var deadlines = new long[]{63, 64, 100, 4095, 4096, 5000, 262_143, 262_144, 300_000, RANGE - 1};
+        for (var deadline : deadlines) {
+            wheel.schedule("t" + deadline, deadline);
+        }
+
+        for (var deadline : deadlines) {
+            wheel.advance(deadline - 1);
+            assertThat(expired).as("before %d", deadline).doesNotContain("t" + deadline);
+            wheel.advance(deadline);
+            assertThat(expired).as("at %d", deadline).endsWith("t" + deadline);
+        }
+        assertThat(expired).hasSize(deadlines.length);
+    }
+
+    @Test
+    void cascadesTimersScheduledPartWayThroughRotation() {
+        wheel.advance(10);
+        // Lands in the level 1 slot that comes up next, even though its index equals the current one
+        wheel.schedule("a", 10 + 4095);
+        wheel.advance(4104);
+        assertThat(expired).isEmpty();
+        wheel.advance(4105);
+        assertThat(expired).containsExactly("a");
+    }
+
+    @Test
+    void keepsDeadlinesBeyondRangeUntilTheyAreDue() {
+        var far = RANGE + RANGE / 2;
+        wheel.schedule("far", far);
+
+        wheel.advance(far - 1);
+        assertThat(expired).isEmpty();
+        wheel.advance(far);
+        assertThat(expired).containsExactly("far");
+    }
+
+    @Test
+    void lateAdvanceExpiresEverythingDueExactlyOnce() {
+        wheel.schedule("a", 5);
+        wheel.schedule("b", 500);
+        wheel.schedule("c", 50_000);
+        wheel.schedule("d", 60_000);
+
+        wheel.advance(55_000);
+        assertThat(expired).containsExactly("a", "b", "c");
+        wheel.advance(100_000);
+        assertThat(expired).containsExactly("a", "b", "c", "d");
+    }
+
+    @Test
+    void expiresPastDeadlinesOnNextAdvance() {
+        wheel.advance(1000);
+        wheel.schedule("late", 200);
+        wheel.schedule("before-origin", -50);
+
+        wheel.advance(1000);
+        assertThat(expired).containsExactlyInAnyOrder("late", "before-origin");
+    }
+}
@@ -0,0 +1,99 @@
+package com.shakhawat.rbacabac.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TopKTest {
+
+    @Test
+    void rejectsInvalidConfiguration() {
+        assertThatThrownBy(() -> new TopK<String>(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void evictsTheLowestCountOnceFull() {
+        var top = new TopK<String>(3);
+        top.offer("a", 1);
+        top.offer("b", 2);
+        top.offer("c", 3);
+        assertThat(keys(top)).containsExactly("c", "b", "a");
+
+        top.offer("d", 4);
+        assertThat(keys(top)).containsExactly("d", "c", "b");
+
+        // At or below the minimum of a full heap: ignored, ties do not evict
+        top.offer("e", 1);
+        top.offer("f", 2);
+        assertThat(keys(top)).containsExactly("d", "c", "b");
+
+        // An evicted key comes back with a new count like any other
+        top.offer("a", 5);
+        assertThat(top.snapshot()).containsExactly(
+                new TopK.Entry<>("a", 5), new TopK.Entry<>("d", 4), new TopK.Entry<>("c", 3));
+    }
+
+    @Test
+    void updatesKeysAlreadyInTheHeap() {
+        var top = new TopK<String>(3);
+        top.offer("a", 1);
+        top.offer("b", 2);
+        top.offer("c", 3);
+
+        top.offer("a", 10);
+        assertThat(keys(top)).containsExactly("a", "c", "b");
+
+        // Counts only grow: a stale, lower count from a concurrent caller does not move the key back
+        top.offer("a", 7);
+        assertThat(top.snapshot().getFirst()).isEqualTo(new TopK.Entry<>("a", 10));
+        assertThat(top.snapshot()).hasSize(3);
+    }
+
+    @Test
+    void keepsTheHighestCountsUnderConcurrentOffers() throws Exception {
+        var k = 10;
+        var top = new TopK<Long>(k);
+        var keys = LongStream.range(0, 1000).boxed().toList();
+
+        var results = new ArrayList<Future<?>>();
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            for (int t = 0; t < 8; t++) {
+                var seed = t;
+                Callable<Void> offers = () -> {
+                    var shuffled = new ArrayList<>(keys);
+                    Collections.shuffle(shuffled, new Random(seed));
+                    for (var key : shuffled) {
+                        // Growing counts per key, as a sketch estimate would report them
+                        for (long count = 1; count <= key; count += 97) {
+                            top.offer(key, count);
+                        }
+                        top.offer(key, key);
+                    }
+                    return null;
+                };
+                results.add(executor.submit(offers));
+            }
+        }
+        for (var result : results) {
+            result.get();
+        }
+
+        assertThat(top.snapshot()).extracting(TopK.Entry::key)
+                .containsExactly(999L, 998L, 997L, 996L, 995L, 994L, 993L, 992L, 991L, 990L);
+        assertThat(top.snapshot()).allMatch(entry -> entry.count() == entry.key());
+    }
+
+    private static List<String> keys(TopK<String> top) {
+        return top.snapshot().stream().map(TopK.Entry::key).toList();
+    }
+}